@@ -0,0 +1,62 @@
+package net.stawrul.loadgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Klient HTTP API sklepu - zwraca tylko kod odpowiedzi, a ciało odpowiedzi jest odczytywane w całości i pomijane,
+ * aby połączenie mogło zostać ponownie użyte (keep-alive).
+ */
+public class ApiClient {
+
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    final String baseUrl;
+
+    /**
+     * @param baseUrl adres aplikacji, np. http://localhost:8080
+     */
+    public ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public int get(String path) throws IOException {
+        return send("GET", path, null);
+    }
+
+    public int post(String path, String json) throws IOException {
+        return send("POST", path, json);
+    }
+
+    private int send(String method, String path, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", "application/json");
+        if (json != null) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (input != null) {
+            try (InputStream response = input) {
+                byte[] buffer = new byte[8192];
+                while (response.read(buffer) >= 0) {
+                    //ciało odpowiedzi jest pomijane
+                }
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,123 @@
+package net.stawrul.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opóźnienia (histogramy HdrHistogram z dokładnością do mikrosekundy) i kody odpowiedzi dla każdej operacji.
+ */
+public class LatencyReport {
+
+    //kod "odpowiedzi" żądania zakończonego błędem połączenia
+    public static final int ERROR = -1;
+
+    //najdłuższe rejestrowane opóźnienie - 1 godzina (w mikrosekundach)
+    private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+
+    final long measureFrom;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * @param measureFrom początek pomiaru (System.nanoTime()) - od niego liczona jest przepustowość
+     */
+    public LatencyReport(long measureFrom) {
+        this.measureFrom = measureFrom;
+    }
+
+    void add(Operation operation) {
+        entries.put(operation.getName(), new Entry(operation.getRate()));
+    }
+
+    /**
+     * @param operation nazwa operacji
+     * @param status kod odpowiedzi HTTP lub {@link #ERROR}
+     * @param latencyNanos czas od zaplanowanego wysłania żądania do otrzymania odpowiedzi
+     * @param completedAt chwila otrzymania odpowiedzi (System.nanoTime())
+     */
+    public void record(String operation, int status, long latencyNanos, long completedAt) {
+        Entry entry = entries.get(operation);
+        entry.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_LATENCY));
+        entry.statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+        entry.lastCompletion.accumulateAndGet(completedAt, Math::max);
+    }
+
+    /**
+     * @param operation nazwa operacji
+     * @return opóźnienia odpowiedzi w mikrosekundach
+     */
+    public Histogram getLatencies(String operation) {
+        return entries.get(operation).latencies;
+    }
+
+    /**
+     * @param operation nazwa operacji
+     * @return liczba odpowiedzi na sekundę - od początku pomiaru do ostatniej odpowiedzi (mniejsza od częstości
+     * żądań, jeśli aplikacja nie nadąża z ich obsługą)
+     */
+    public double getThroughput(String operation) {
+        Entry entry = entries.get(operation);
+        long elapsed = entry.lastCompletion.get() - measureFrom;
+        return elapsed > 0 ? entry.latencies.getTotalCount() * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * @return raport w postaci tabeli tekstowej
+     */
+    public String format() {
+        Formatter table = new Formatter(new StringBuilder(), Locale.ROOT);
+        String row = "%-26s %9s %9s %9s %9s %9s %9s %9s  %s%n";
+        table.format(row, "operation", "target/s", "done/s", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms",
+                "statuses");
+        for (Map.Entry<String, Entry> operation : entries.entrySet()) {
+            Entry entry = operation.getValue();
+            Histogram latencies = entry.latencies;
+            table.format(row, operation.getKey(),
+                    String.format(Locale.ROOT, "%.1f", entry.rate),
+                    String.format(Locale.ROOT, "%.1f", getThroughput(operation.getKey())),
+                    latencies.getTotalCount(),
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()),
+                    statuses(entry));
+        }
+        return table.toString();
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    private static String statuses(Entry entry) {
+        StringJoiner statuses = new StringJoiner(" ");
+        new TreeMap<>(entry.statuses).forEach((status, count) ->
+                statuses.add((status == ERROR ? "error" : String.valueOf(status)) + "=" + count.sum()));
+        return statuses.toString();
+    }
+
+    /**
+     * Wyniki jednej operacji.
+     */
+    private static class Entry {
+        final double rate;
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        final AtomicLong lastCompletion = new AtomicLong();
+
+        Entry(double rate) {
+            this.rate = rate;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package net.stawrul.loadgen;
+
+import net.stawrul.BookshopApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generator obciążenia API sklepu.
+ * <p>
+ * Uruchamia aplikację z wbudowaną bazą danych Derby w pamięci (lub korzysta z instancji o podanym adresie), tworzy
+ * produkty, a następnie przez zadany czas wysyła ze stałymi częstościami (w pętli otwartej, zob.
+ * {@link OpenLoopRunner}) żądania:
+ * <pre>
+ * GET /books, GET /films, GET /CDs       - listy produktów
+ * GET /books/{id}                        - pojedynczy produkt
+ * POST /orders                           - zamówienie dostępnych produktów
+ * POST /orders stock-out                 - zamówienie produktu deficytowego (po wyczerpaniu stanu - odrzucone)
+ * POST /orders films+CDs                 - zamówienie filmu razem z płytą (niedozwolone)
+ * </pre>
+ * Na koniec wypisuje raport z przepustowością, percentylami opóźnień p50/p99/p99.9 i kodami odpowiedzi dla każdej
+ * operacji. Opcje opisuje {@link LoadOptions}.
+ */
+public class LoadGenerator {
+
+    //stan magazynu produktów, które nie powinny się wyczerpać w czasie pomiaru
+    private static final int UNLIMITED_AMOUNT = 1_000_000_000;
+
+    //co który produkt jest deficytowy
+    private static final int SCARCE_EVERY = 10;
+
+    //rodzaje produktów w pozycjach zamówień (ProductType)
+    private static final String[] TYPES = {"BOOK", "FILM", "CD"};
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        //pula połączeń keep-alive HttpURLConnection musi pomieścić połączenia wszystkich wątków
+        System.setProperty("http.maxConnections", String.valueOf(options.getThreads()));
+
+        ConfigurableApplicationContext context = options.getUrl() == null ? start(options) : null;
+        try {
+            String url = context == null ? options.getUrl() : "http://localhost:"
+                    + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            ApiClient api = new ApiClient(url);
+
+            System.out.println("Seeding " + options.getProducts() + " products at " + url);
+            Catalog catalog = Catalog.seed(api, options);
+
+            System.out.println("Running for " + options.getWarmup() + " s warmup + " + options.getDuration()
+                    + " s measurement");
+            LatencyReport report = new OpenLoopRunner(options.getThreads()).run(operations(api, catalog, options),
+                    TimeUnit.SECONDS.toNanos(options.getWarmup()), TimeUnit.SECONDS.toNanos(options.getDuration()));
+
+            String text = report.format();
+            System.out.println();
+            System.out.print(text);
+            if (options.getReport() != null) {
+                Files.write(Paths.get(options.getReport()), text.getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(LoadOptions options) {
+        return new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:derby:memory:loadgen;create=true",
+                        "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver",
+                        "spring.jpa.hibernate.ddl-auto=create-drop")
+                .run(options.getApplicationArgs().toArray(new String[0]));
+    }
+
+    static List<Operation> operations(ApiClient api, Catalog catalog, LoadOptions options) {
+        return Arrays.asList(
+                new Operation("GET /books", options.getCatalog(), () -> api.get("/books")),
+                new Operation("GET /films", options.getCatalog(), () -> api.get("/films")),
+                new Operation("GET /CDs", options.getCatalog(), () -> api.get("/CDs")),
+                new Operation("GET /books/{id}", options.getProduct(),
+                        () -> api.get("/books/" + random(catalog.books))),
+                new Operation("POST /orders", options.getOrders(), () -> {
+                    int type = ThreadLocalRandom.current().nextInt(3);
+                    List<UUID> products = type == 0 ? catalog.books : type == 1 ? catalog.films : catalog.cds;
+                    return api.post("/orders", order(line(TYPES[type], random(products),
+                            1 + ThreadLocalRandom.current().nextInt(3))));
+                }),
+                new Operation("POST /orders stock-out", options.getStockOuts(),
+                        () -> api.post("/orders", order(line("BOOK", random(catalog.scarceBooks), 1)))),
+                new Operation("POST /orders films+CDs", options.getConflicts(),
+                        () -> api.post("/orders", order(line("FILM", random(catalog.films), 1),
+                                line("CD", random(catalog.cds), 1)))));
+    }
+
+    private static String order(String... lines) {
+        return "{\"lines\":[" + String.join(",", lines) + "]}";
+    }
+
+    private static String line(String type, UUID productId, int quantity) {
+        return "{\"type\":\"" + type + "\",\"productId\":\"" + productId + "\",\"quantity\":" + quantity + "}";
+    }
+
+    private static UUID random(List<UUID> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    /**
+     * Identyfikatory utworzonych produktów.
+     */
+    static class Catalog {
+        final List<UUID> books = new ArrayList<>();
+        final List<UUID> films = new ArrayList<>();
+        final List<UUID> cds = new ArrayList<>();
+        final List<UUID> scarceBooks = new ArrayList<>();
+
+        static Catalog seed(ApiClient api, LoadOptions options) throws IOException {
+            Catalog catalog = new Catalog();
+            for (int n = 0; n < Math.max(options.getProducts(), 3 * SCARCE_EVERY); n++) {
+                UUID id = UUID.randomUUID();
+                boolean scarce = n / 3 % SCARCE_EVERY == 0;
+                int amount = scarce ? options.getScarceAmount() : UNLIMITED_AMOUNT;
+                String common = "\"id\":\"" + id + "\",\"title\":\"Product " + n + "\",\"amount\":" + amount;
+                switch (n % 3) {
+                    case 0:
+                        create(api, "/books", "{" + common + "}");
+                        (scarce ? catalog.scarceBooks : catalog.books).add(id);
+                        break;
+                    case 1:
+                        create(api, "/films", "{" + common + ",\"director\":\"Director " + n % 50
+                                + "\",\"durationTime\":" + (80 + n % 100) + "}");
+                        if (!scarce) {
+                            catalog.films.add(id);
+                        }
+                        break;
+                    default:
+                        create(api, "/CDs", "{" + common + ",\"author\":\"Author " + n % 50
+                                + "\",\"yearOfDistribution\":" + (1960 + n % 60) + "}");
+                        if (!scarce) {
+                            catalog.cds.add(id);
+                        }
+                }
+            }
+            return catalog;
+        }
+
+        private static void create(ApiClient api, String path, String json) throws IOException {
+            int status = api.post(path, json);
+            if (status != 201) {
+                throw new IOException("POST " + path + " returned " + status);
+            }
+        }
+    }
+}
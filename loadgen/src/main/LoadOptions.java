@@ -0,0 +1,116 @@
+package net.stawrul.loadgen;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Opcje generatora obciążenia, podawane jako argumenty nazwa=wartość (np. duration=60 orders=50). Argumenty
+ * zaczynające się od "--" nie są opcjami generatora - są przekazywane do uruchamianej aplikacji.
+ * <p>
+ * Częstości (liczba żądań na sekundę) dotyczą każdej operacji osobno i są stałe niezależnie od czasu odpowiedzi
+ * (obciążenie w pętli otwartej).
+ */
+@Getter
+public class LoadOptions {
+
+    private static final List<String> NAMES = Arrays.asList("url", "products", "scarce-amount", "duration", "warmup",
+            "threads", "catalog", "product", "orders", "stock-outs", "conflicts", "report");
+
+    //adres działającej instancji aplikacji - bez adresu aplikacja jest uruchamiana z wbudowaną bazą danych w pamięci
+    String url;
+
+    //liczba produktów tworzonych przed pomiarem (po równo książek, filmów i płyt)
+    int products = 300;
+
+    //stan magazynu produktów "deficytowych", które szybko się wyczerpują (pozostałe produkty mają stan nieograniczony)
+    int scarceAmount = 5;
+
+    //czas pomiaru i czas rozgrzewania przed pomiarem (sekundy)
+    int duration = 60;
+    int warmup = 10;
+
+    //liczba wątków wysyłających żądania
+    int threads = 64;
+
+    //GET /books, /films i /CDs (każda lista)
+    double catalog = 20;
+
+    //GET /books/{id}
+    double product = 100;
+
+    //POST /orders - zamówienia dostępnych produktów
+    double orders = 20;
+
+    //POST /orders - zamówienia produktów deficytowych (po wyczerpaniu stanu odrzucane)
+    double stockOuts = 2;
+
+    //POST /orders - zamówienia filmów razem z płytami (niedozwolone)
+    double conflicts = 1;
+
+    //plik, do którego jest zapisywany raport (oprócz standardowego wyjścia)
+    String report;
+
+    //argumenty przekazywane do aplikacji
+    final List<String> applicationArgs = new ArrayList<>();
+
+    public static LoadOptions parse(String... args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.applicationArgs.add(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            String name = separator > 0 ? arg.substring(0, separator) : arg;
+            if (!NAMES.contains(name)) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected name=value with one of "
+                        + NAMES + " or --application.property=value");
+            }
+            options.set(name, arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "url":
+                url = value;
+                break;
+            case "products":
+                products = Integer.parseInt(value);
+                break;
+            case "scarce-amount":
+                scarceAmount = Integer.parseInt(value);
+                break;
+            case "duration":
+                duration = Integer.parseInt(value);
+                break;
+            case "warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "catalog":
+                catalog = Double.parseDouble(value);
+                break;
+            case "product":
+                product = Double.parseDouble(value);
+                break;
+            case "orders":
+                orders = Double.parseDouble(value);
+                break;
+            case "stock-outs":
+                stockOuts = Double.parseDouble(value);
+                break;
+            case "conflicts":
+                conflicts = Double.parseDouble(value);
+                break;
+            default:
+                report = value;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package net.stawrul.loadgen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wysyłanie żądań w pętli otwartej - każde żądanie ma zaplanowaną chwilę wysłania (start + n / częstość), niezależną
+ * od czasu odpowiedzi na poprzednie żądania.
+ * <p>
+ * Opóźnienie jest liczone od zaplanowanej chwili wysłania, a nie od faktycznego wysłania. Jeśli aplikacja zwalnia
+ * i wszystkie wątki czekają na odpowiedzi, kolejne żądania czekają w kolejce, a czas oczekiwania jest wliczany do ich
+ * opóźnienia - tak jak odczułby go klient, który wysłał żądanie o czasie. Pomiar w pętli zamkniętej (następne żądanie
+ * po odpowiedzi na poprzednie) pomijałby te żądania, zaniżając wysokie percentyle (ang. coordinated omission).
+ */
+public class OpenLoopRunner {
+
+    final int threads;
+    final long drainNanos;
+
+    /**
+     * @param threads liczba wątków wysyłających żądania (ogranicza liczbę jednocześnie oczekujących odpowiedzi)
+     */
+    public OpenLoopRunner(int threads) {
+        this(threads, TimeUnit.MINUTES.toNanos(5));
+    }
+
+    /**
+     * @param threads liczba wątków wysyłających żądania (ogranicza liczbę jednocześnie oczekujących odpowiedzi)
+     * @param drainNanos czas oczekiwania na żądania z kolejki po zakończeniu pomiaru - niewysłane żądania są liczone
+     *                   jako błędy
+     */
+    public OpenLoopRunner(int threads, long drainNanos) {
+        this.threads = threads;
+        this.drainNanos = drainNanos;
+    }
+
+    /**
+     * @param operations rodzaje żądań i ich częstości
+     * @param warmupNanos czas rozgrzewania - odpowiedzi na żądania zaplanowane w tym czasie nie są uwzględniane
+     * @param durationNanos czas pomiaru
+     * @return opóźnienia i kody odpowiedzi na żądania zaplanowane w czasie pomiaru
+     */
+    public LatencyReport run(List<Operation> operations, long warmupNanos, long durationNanos)
+            throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "loadgen-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        LatencyReport report = new LatencyReport(measureFrom);
+
+        List<Thread> dispatchers = new ArrayList<>();
+        for (Operation operation : operations) {
+            if (operation.getRate() > 0) {
+                report.add(operation);
+                Thread dispatcher = new Thread(() -> dispatch(operation, start, measureFrom, end, workers, report),
+                        "loadgen-" + operation.getName());
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+                dispatchers.add(dispatcher);
+            }
+        }
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+
+        //żądania czekające w kolejce również są wysyłane - ich opóźnienie obejmuje czas oczekiwania
+        workers.shutdown();
+        if (!workers.awaitTermination(drainNanos, TimeUnit.NANOSECONDS)) {
+            //żądania, które nie zostały wysłane, są liczone jako błędy z opóźnieniem równym czasowi oczekiwania - ich
+            //pominięcie zaniżałoby wysokie percentyle tak jak pomiar w pętli zamkniętej
+            for (Runnable dropped : workers.shutdownNow()) {
+                ((Request) dropped).record(LatencyReport.ERROR);
+            }
+        }
+        return report;
+    }
+
+    private static void dispatch(Operation operation, long start, long measureFrom, long end, ExecutorService workers,
+                                 LatencyReport report) {
+        double interval = TimeUnit.SECONDS.toNanos(1) / operation.getRate();
+        for (long n = 0; ; n++) {
+            long intended = start + (long) (n * interval);
+            if (intended >= end) {
+                return;
+            }
+            for (long delay = intended - System.nanoTime(); delay > 0; delay = intended - System.nanoTime()) {
+                LockSupport.parkNanos(delay);
+            }
+            workers.execute(new Request(operation, intended, measureFrom, report));
+        }
+    }
+
+    //żądanie zaplanowane na chwilę intended
+    private static class Request implements Runnable {
+        final Operation operation;
+        final long intended;
+        final long measureFrom;
+        final LatencyReport report;
+
+        Request(Operation operation, long intended, long measureFrom, LatencyReport report) {
+            this.operation = operation;
+            this.intended = intended;
+            this.measureFrom = measureFrom;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            int status;
+            try {
+                status = operation.getRequest().execute();
+            } catch (IOException | RuntimeException e) {
+                status = LatencyReport.ERROR;
+            }
+            record(status);
+        }
+
+        void record(int status) {
+            long completed = System.nanoTime();
+            if (intended >= measureFrom) {
+                report.record(operation.getName(), status, completed - intended, completed);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.stawrul.loadgen;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Rodzaj żądania wysyłanego ze stałą częstością (np. "GET /books" 20 razy na sekundę).
+ */
+@Getter
+public class Operation {
+
+    /**
+     * Wysłanie jednego żądania.
+     */
+    @FunctionalInterface
+    public interface Request {
+
+        /**
+         * @return kod odpowiedzi HTTP
+         */
+        int execute() throws IOException;
+    }
+
+    //nazwa operacji w raporcie
+    final String name;
+
+    //liczba żądań na sekundę
+    final double rate;
+
+    final Request request;
+
+    public Operation(String name, double rate, Request request) {
+        this.name = name;
+        this.rate = rate;
+        this.request = request;
+    }
+}
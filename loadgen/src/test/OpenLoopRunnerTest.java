@@ -0,0 +1,74 @@
+package net.stawrul.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pomiar opóźnień w pętli otwartej.
+ */
+public class OpenLoopRunnerTest {
+
+    @Test
+    public void requestsQueuedBehindStalledRequest_includeWaitingTimeInLatency() throws Exception {
+        //Arrange
+        //jedno żądanie zatrzymuje jedyny wątek na 300 ms - w tym czasie zaplanowano ok. 30 kolejnych żądań
+        AtomicBoolean stalled = new AtomicBoolean();
+        Operation operation = new Operation("stall", 100, () -> {
+            if (stalled.compareAndSet(false, true)) {
+                sleep(300);
+            }
+            return 200;
+        });
+
+        //Act
+        LatencyReport report = new OpenLoopRunner(1).run(Collections.singletonList(operation), 0,
+                TimeUnit.SECONDS.toNanos(1));
+
+        //Assert
+        Histogram latencies = report.getLatencies("stall");
+        assertEquals(100, latencies.getTotalCount());
+        //pętla zamknięta zmierzyłaby jedno wolne żądanie (p99 = 300 ms tylko przy 1 żądaniu na 100) i pomijałaby
+        //oczekiwanie pozostałych - tu co najmniej kilka procent żądań czekało ponad 100 ms
+        assertTrue(latencies.getValueAtPercentile(95) >= TimeUnit.MILLISECONDS.toMicros(100));
+        assertTrue(latencies.getValueAtPercentile(50) < TimeUnit.MILLISECONDS.toMicros(100));
+        assertTrue(report.format(), report.format().contains("200=100"));
+    }
+
+    @Test
+    public void requestsNotSentBeforeDrainTimeout_areRecordedAsErrorsWithWaitingTime() throws Exception {
+        //Arrange
+        //pierwsze żądanie zatrzymuje jedyny wątek do przerwania - pozostałe czekają w kolejce do końca pomiaru
+        AtomicBoolean stalled = new AtomicBoolean();
+        Operation operation = new Operation("stall", 100, () -> {
+            if (stalled.compareAndSet(false, true)) {
+                sleep(TimeUnit.MINUTES.toMillis(1));
+            }
+            return 200;
+        });
+
+        //Act
+        LatencyReport report = new OpenLoopRunner(1, TimeUnit.MILLISECONDS.toNanos(200))
+                .run(Collections.singletonList(operation), 0, TimeUnit.MILLISECONDS.toNanos(500));
+
+        //Assert
+        Histogram latencies = report.getLatencies("stall");
+        assertEquals(50, latencies.getTotalCount());
+        assertTrue(report.format(), report.format().contains("error=49"));
+        //ostatnie żądanie zaplanowano tuż przed końcem pomiaru - czekało co najmniej do upływu czasu oczekiwania
+        assertTrue(latencies.getMinValue() >= TimeUnit.MILLISECONDS.toMicros(200));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
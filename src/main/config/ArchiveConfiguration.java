@@ -0,0 +1,38 @@
+package net.stawrul.config;
+
+import net.stawrul.services.OrderArchiver;
+import net.stawrul.storage.OrderArchive;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Konfiguracja archiwizacji starych zamówień.
+ * <p>
+ * Włączana właściwością bookshop.archive.enabled=true, np.:
+ * <pre>
+ * bookshop.archive.enabled=true
+ * bookshop.archive.dir=/var/lib/bookshop/archive
+ * bookshop.archive.max-age-days=365
+ * </pre>
+ * Zamówienia starsze niż bookshop.archive.max-age-days są okresowo (co bookshop.archive.interval-millis) przenoszone
+ * przez {@link OrderArchiver} z bazy danych do plików segmentów archiwum (nie większych niż
+ * bookshop.archive.segment-size-mb). Zarchiwizowane zamówienia są nadal dostępne pod adresem /orders/{id}.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty("bookshop.archive.enabled")
+public class ArchiveConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public OrderArchive orderArchive(@Value("${bookshop.archive.dir:archive}") String directory,
+                                     @Value("${bookshop.archive.segment-size-mb:64}") long segmentSizeMb)
+            throws IOException {
+        return new OrderArchive(Paths.get(directory), segmentSizeMb * 1024 * 1024);
+    }
+}
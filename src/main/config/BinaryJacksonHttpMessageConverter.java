@@ -0,0 +1,20 @@
+package net.stawrul.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+/**
+ * Konwerter HTTP dla binarnych formatów danych obsługiwanych przez Jacksona (CBOR, Smile).
+ * <p>
+ * Format jest wyznaczany przez fabrykę (JsonFactory) przekazanego obiektu ObjectMapper, np.
+ * new ObjectMapper(new CBORFactory()).
+ */
+public class BinaryJacksonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public BinaryJacksonHttpMessageConverter(ObjectMapper objectMapper, MediaType mediaType) {
+        super(objectMapper, mediaType);
+        //dane binarne - bez parametru charset w nagłówku Content-Type
+        setDefaultCharset(null);
+    }
+}
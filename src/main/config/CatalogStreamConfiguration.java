@@ -0,0 +1,37 @@
+package net.stawrul.config;
+
+import net.stawrul.controllers.CatalogStreamServlet;
+import net.stawrul.services.CatalogSnapshots;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguracja strumieniowych odczytów katalogu ({@link CatalogStreamServlet}) pod adresami /stream/*.
+ * <p>
+ * Odczyty korzystają z migawek katalogu, więc są dostępne w trybie migawek, np.:
+ * <pre>
+ * bookshop.catalog.snapshot.enabled=true
+ * bookshop.catalog.stream.timeout-millis=60000
+ * server.tomcat.max-connections=20000
+ * </pre>
+ * Servlet działa obok DispatcherServlet (poza Spring MVC) - obsługa żądania kończy się po rozpoczęciu nieblokującego
+ * zapisu odpowiedzi.
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.catalog.snapshot.enabled")
+public class CatalogStreamConfiguration {
+
+    @Bean
+    public ServletRegistrationBean catalogStreamServlet(
+            CatalogSnapshots catalogSnapshots,
+            @Value("${bookshop.catalog.stream.timeout-millis:60000}") long timeoutMillis) {
+        ServletRegistrationBean registration = new ServletRegistrationBean(
+                new CatalogStreamServlet(catalogSnapshots, timeoutMillis), "/stream/*");
+        registration.setName("catalogStream");
+        registration.setAsyncSupported(true);
+        return registration;
+    }
+}
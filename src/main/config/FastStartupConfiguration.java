@@ -0,0 +1,79 @@
+package net.stawrul.config;
+
+import net.stawrul.model.Book;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.type.MethodMetadata;
+
+/**
+ * Konfiguracja profilu "fast" skracającego czas uruchamiania aplikacji.
+ * <p>
+ * Profil:
+ * - oznacza wszystkie komponenty aplikacji jako leniwie inicjalizowane (tworzone przy pierwszym użyciu),
+ * - zawęża skanowanie klas encyjnych do pakietu net.stawrul.model,
+ * - wyłącza przetwarzanie schematu i odczyt metadanych JDBC przez Hibernate (application-fast.properties).
+ * <p>
+ * Komponenty, które muszą powstać przy starcie (np. zadania @Scheduled), należy oznaczyć adnotacją @Lazy(false).
+ */
+@Configuration
+@Profile("fast")
+@EntityScan(basePackageClasses = Book.class)
+public class FastStartupConfiguration {
+
+    /**
+     * Procesor ustawiający leniwą inicjalizację wszystkich definicji komponentów.
+     * <p>
+     * Pomijane są komponenty infrastrukturalne frameworka oraz komponenty z jawnie podaną adnotacją @Lazy.
+     * Metoda jest statyczna, aby procesor mógł zostać utworzony przed pozostałymi komponentami konfiguracji.
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyInitializationPostProcessor() {
+        return (ConfigurableListableBeanFactory beanFactory) -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition.getRole() != BeanDefinition.ROLE_INFRASTRUCTURE && !hasExplicitLazy(definition)) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    /**
+     * Zakończenie działania aplikacji zaraz po uruchomieniu.
+     * <p>
+     * Używane przez profil Maven "appcds" do przebiegu treningowego, w którym JVM zapisuje archiwum
+     * współdzielonych klas (-XX:ArchiveClassesAtExit).
+     */
+    @Lazy(false)
+    @Configuration
+    @ConditionalOnProperty("bookshop.startup.exit-when-ready")
+    static class ExitWhenReady {
+
+        @EventListener
+        public void onReady(ApplicationReadyEvent event) {
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+    private static boolean hasExplicitLazy(BeanDefinition definition) {
+        if (!(definition instanceof AnnotatedBeanDefinition)) {
+            return false;
+        }
+        AnnotatedBeanDefinition annotated = (AnnotatedBeanDefinition) definition;
+        MethodMetadata factoryMethod = annotated.getFactoryMethodMetadata();
+        return factoryMethod != null
+                ? factoryMethod.isAnnotated(Lazy.class.getName())
+                : annotated.getMetadata().isAnnotated(Lazy.class.getName());
+    }
+}
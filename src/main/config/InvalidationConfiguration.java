@@ -0,0 +1,60 @@
+package net.stawrul.config;
+
+import net.stawrul.invalidation.InvalidationBus;
+import net.stawrul.invalidation.InvalidationTransport;
+import net.stawrul.invalidation.LoopbackTransport;
+import net.stawrul.invalidation.MulticastTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Konfiguracja magistrali unieważnień ({@link InvalidationBus}) dla kilku instancji aplikacji korzystających z tej
+ * samej bazy danych.
+ * <p>
+ * Włączana wyborem transportu we właściwości bookshop.invalidation.transport:
+ * <pre>
+ * # UDP multicast - instancje w tej samej sieci lokalnej lub na jednej maszynie
+ * bookshop.invalidation.transport=multicast
+ * bookshop.invalidation.group=239.255.42.99
+ * bookshop.invalidation.port=4446
+ * bookshop.invalidation.ttl=1
+ *
+ * # instancje w jednej maszynie wirtualnej (np. w testach)
+ * bookshop.invalidation.transport=loopback
+ * bookshop.invalidation.channel=bookshop
+ * </pre>
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.invalidation.transport")
+public class InvalidationConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public InvalidationTransport invalidationTransport(
+            @Value("${bookshop.invalidation.transport}") String transport,
+            @Value("${bookshop.invalidation.channel:bookshop}") String channel,
+            @Value("${bookshop.invalidation.group:239.255.42.99}") String group,
+            @Value("${bookshop.invalidation.port:4446}") int port,
+            @Value("${bookshop.invalidation.ttl:1}") int timeToLive) throws UnknownHostException {
+        switch (transport) {
+            case "loopback":
+                return new LoopbackTransport(channel);
+            case "multicast":
+                return new MulticastTransport(InetAddress.getByName(group), port, timeToLive);
+            default:
+                throw new IllegalArgumentException("Unknown invalidation transport: " + transport);
+        }
+    }
+
+    //komunikaty innych instancji muszą być odbierane od uruchomienia, również w profilu "fast"
+    @Bean
+    @Lazy(false)
+    public InvalidationBus invalidationBus(InvalidationTransport invalidationTransport) {
+        return new InvalidationBus(invalidationTransport);
+    }
+}
@@ -0,0 +1,34 @@
+package net.stawrul.config;
+
+import net.stawrul.services.JournaledOrders;
+import net.stawrul.storage.OrderJournal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Konfiguracja dziennika zamówień.
+ * <p>
+ * Włączana właściwością bookshop.journal.enabled=true, np.:
+ * <pre>
+ * bookshop.journal.enabled=true
+ * bookshop.journal.dir=/var/lib/bookshop/journal
+ * </pre>
+ * Przyjęte zamówienia są zapisywane w dzienniku (w segmentach o rozmiarze bookshop.journal.segment-size-mb), a klient
+ * otrzymuje odpowiedź 202 Accepted. Zamówienia są zapisywane w bazie danych w tle przez {@link JournaledOrders}.
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.journal.enabled")
+public class JournalConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public OrderJournal orderJournal(@Value("${bookshop.journal.dir:journal}") String directory,
+                                     @Value("${bookshop.journal.segment-size-mb:16}") int segmentSizeMb)
+            throws IOException {
+        return new OrderJournal(Paths.get(directory), segmentSizeMb * 1024 * 1024);
+    }
+}
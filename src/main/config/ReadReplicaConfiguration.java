@@ -0,0 +1,96 @@
+package net.stawrul.config;
+
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.datasource.RoutingDataSource;
+import net.stawrul.datasource.RoutingDataSource.Route;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Konfiguracja rozdzielenia odczytów i zapisów pomiędzy główną bazę danych a replikę.
+ * <p>
+ * Włączana podaniem adresu repliki, np. dla dwóch lokalnych instancji Derby:
+ * <pre>
+ * spring.datasource.url=jdbc:derby://localhost:1527/bookshop
+ * bookshop.datasource.replica.url=jdbc:derby://localhost:1528/bookshop
+ * </pre>
+ * Metody serwisów oznaczone @Transactional(readOnly = true) (listy i wyszukiwanie produktów) korzystają z repliki,
+ * pozostałe (m.in. placeOrder) - z głównej bazy danych. Klient może wymusić odczyt z głównej bazy dla pojedynczego
+ * żądania nagłówkiem "X-Read-Your-Writes: true" (np. strona potwierdzenia zamówienia).
+ * <p>
+ * Konfiguracja nie jest używana, jeśli włączony jest podział na partycje ({@link ShardingConfiguration}).
+ */
+@Configuration
+@ConditionalOnExpression("'${bookshop.datasource.replica.url:}' != '' and '${bookshop.sharding.urls:}' == ''")
+public class ReadReplicaConfiguration extends WebMvcConfigurerAdapter {
+
+    public static final String READ_YOUR_WRITES_HEADER = "X-Read-Your-Writes";
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties primaryDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("bookshop.datasource.replica")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * Źródło danych używane przez JPA - wybiera bazę danych w chwili pierwszego zapytania w transakcji.
+     * <p>
+     * Źródła danych głównej bazy i repliki nie są osobnymi komponentami - każdy komponent typu DataSource jest
+     * inicjalizowany przez DataSourceInitializer, który sam zależy od komponentu dataSource (cykliczna zależność).
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        DataSource primary = primaryDataSourceProperties().initializeDataSourceBuilder().build();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Route.PRIMARY, primary);
+        targets.put(Route.REPLICA, replicaDataSourceProperties().initializeDataSourceBuilder().build());
+
+        RoutingDataSource routing = new RoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptorAdapter() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (Boolean.parseBoolean(request.getHeader(READ_YOUR_WRITES_HEADER))) {
+                    ReadYourWrites.request();
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                        Exception ex) {
+                ReadYourWrites.clear();
+            }
+        });
+    }
+}
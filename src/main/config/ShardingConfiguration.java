@@ -0,0 +1,113 @@
+package net.stawrul.config;
+
+import net.stawrul.datasource.ShardRoutingDataSource;
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.Book;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Konfiguracja podziału magazynu na partycje (ang. sharding) pomiędzy kilka baz danych.
+ * <p>
+ * Włączana podaniem listy adresów baz danych, np. dla kilku wbudowanych instancji Derby:
+ * <pre>
+ * bookshop.sharding.urls=jdbc:derby:memory:shard0;create=true,jdbc:derby:memory:shard1;create=true
+ * bookshop.sharding.create-schema=true
+ * </pre>
+ * Dla serwerów sieciowych Derby należy dodatkowo podać bookshop.sharding.driver-class-name
+ * (org.apache.derby.jdbc.ClientDriver) oraz ewentualnie bookshop.sharding.username i bookshop.sharding.password.
+ * Każda partycja zawiera pełny schemat bazy danych. Produkty są przypisane do partycji według identyfikatora (zob.
+ * {@link Shards#shardOf}), a zamówienie jest zapisywane w częściach - w każdej partycji, której produkty obejmuje.
+ * <p>
+ * Konfiguracja wyklucza się z rozdzieleniem odczytów i zapisów ({@link ReadReplicaConfiguration}).
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.sharding.urls")
+public class ShardingConfiguration {
+
+    @Value("${bookshop.sharding.urls}")
+    String[] urls;
+
+    @Value("${bookshop.sharding.driver-class-name:}")
+    String driverClassName;
+
+    @Value("${bookshop.sharding.username:}")
+    String username;
+
+    @Value("${bookshop.sharding.password:}")
+    String password;
+
+    private final List<DataSource> shardDataSources = new ArrayList<>();
+
+    @Bean
+    @Primary
+    public DataSource dataSource() {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < urls.length; shard++) {
+            DataSourceBuilder builder = DataSourceBuilder.create().url(urls[shard].trim());
+            if (!driverClassName.isEmpty()) {
+                builder.driverClassName(driverClassName);
+            }
+            if (!username.isEmpty()) {
+                builder.username(username).password(password);
+            }
+            DataSource shardDataSource = builder.build();
+            shardDataSources.add(shardDataSource);
+            targets.put(shard, shardDataSource);
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(shardDataSources.get(0));
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public Shards shards(PlatformTransactionManager transactionManager) {
+        return new Shards(urls.length, transactionManager);
+    }
+
+    /**
+     * Utworzenie (lub uzupełnienie) schematu bazy danych w każdej partycji - Hibernate tworzy schemat tylko w bazie
+     * domyślnej. Przydatne przede wszystkim dla wbudowanych baz danych w testach.
+     */
+    @Bean
+    @ConditionalOnProperty("bookshop.sharding.create-schema")
+    public SmartInitializingSingleton shardSchemaInitializer(EntityManagerFactoryBuilder builder,
+                                                             JpaProperties jpaProperties) {
+        return () -> {
+            for (int shard = 0; shard < shardDataSources.size(); shard++) {
+                DataSource shardDataSource = shardDataSources.get(shard);
+                Map<String, String> properties = jpaProperties.getHibernateProperties(shardDataSource);
+                properties.put("hibernate.hbm2ddl.auto", "update");
+
+                LocalContainerEntityManagerFactoryBean factory = builder
+                        .dataSource(shardDataSource)
+                        .packages(Book.class)
+                        .persistenceUnit("shard" + shard)
+                        .properties(properties)
+                        .build();
+                factory.afterPropertiesSet();
+                factory.destroy();
+            }
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package net.stawrul.config;
+
+import net.stawrul.datasource.SlowQueryLog;
+import net.stawrul.datasource.StatementOrigin;
+import net.stawrul.datasource.StatementTimingDataSource;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+/**
+ * Konfiguracja rejestrowania czasów zapytań SQL i wolnych zapytań ({@link SlowQueryLog}), dostępnych pod adresem
+ * GET /admin/slow-queries.
+ * <p>
+ * Włączana właściwością bookshop.slow-queries.enabled=true, np.:
+ * <pre>
+ * bookshop.slow-queries.enabled=true
+ * bookshop.slow-queries.threshold-millis=100
+ * bookshop.slow-queries.capacity=20
+ * bookshop.slow-queries.plans=false
+ * </pre>
+ * Mierzone są zapytania wykonywane przez główne źródło danych (bean "dataSource", również przy replice i podziale na
+ * partycje). Akcja kontrolera, która wykonała zapytanie, jest zapamiętywana przez interceptor Spring MVC.
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.slow-queries.enabled")
+public class SlowQueryLogConfiguration extends WebMvcConfigurerAdapter {
+
+    @Bean
+    public SlowQueryLog slowQueryLog(@Value("${bookshop.slow-queries.threshold-millis:100}") long thresholdMillis,
+                                     @Value("${bookshop.slow-queries.capacity:20}") int capacity) {
+        return new SlowQueryLog(thresholdMillis, capacity);
+    }
+
+    /**
+     * Opakowanie głównego źródła danych - metoda statyczna, aby post-procesor nie wymagał wcześniejszego utworzenia
+     * konfiguracji. Pozostałe źródła danych (np. replika) są już opakowane pośrednio, przez źródło "dataSource".
+     */
+    @Bean
+    public static BeanPostProcessor statementTimingPostProcessor(
+            ObjectFactory<SlowQueryLog> slowQueryLog,
+            @Value("${bookshop.slow-queries.plans:false}") boolean capturePlans) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || !beanName.equals("dataSource")) {
+                    return bean;
+                }
+                return new StatementTimingDataSource((DataSource) bean, slowQueryLog.getObject(), capturePlans);
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptorAdapter() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                //wzorzec adresu akcji (np. "GET /books/{id}"), a nie adres żądania - zapytania z różnymi
+                //identyfikatorami trafiają do tej samej akcji
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                StatementOrigin.set(request.getMethod() + " "
+                        + (pattern != null ? pattern : request.getRequestURI()));
+                return true;
+            }
+
+            @Override
+            public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                                       Object handler) {
+                StatementOrigin.clear();
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                        Exception ex) {
+                StatementOrigin.clear();
+            }
+        });
+    }
+}
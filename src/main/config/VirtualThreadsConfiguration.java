@@ -0,0 +1,169 @@
+package net.stawrul.config;
+
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.datasource.StatementOrigin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.WebMvcRegistrations;
+import org.springframework.boot.autoconfigure.web.WebMvcRegistrationsAdapter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wykonywanie metod kontrolerów w wątkach wirtualnych.
+ * <p>
+ * Włączane właściwością bookshop.virtual-threads.enabled=true. Wymaga uruchomienia aplikacji na JDK 21 lub nowszym
+ * (zob. profil Maven "virtual-threads") - na starszym JDK ustawienie jest pomijane z ostrzeżeniem w logu.
+ * <p>
+ * Wątek serwera odczytuje żądanie, a następnie przekazuje wywołanie metody kontrolera - wraz z wywołaniami JPA i JDBC
+ * wykonywanymi przez serwisy (np. {@link net.stawrul.services.OrdersService}) - do nowego wątku wirtualnego, tak jak
+ * w przypadku metody zwracającej {@link Callable}. Wątek serwera wraca do puli, zanim żądanie zostanie obsłużone, więc
+ * server.tomcat.max-threads przestaje ograniczać liczbę żądań czekających na bazę danych. Ograniczeniem staje się
+ * server.tomcat.max-connections oraz rozmiar puli połączeń z bazą danych (spring.datasource.tomcat.max-active), który
+ * należy odpowiednio zwiększyć.
+ * <p>
+ * Pula wątków Tomcata nie jest zastępowana wątkami wirtualnymi, ponieważ Tomcat 8.5 obsługuje żądanie w bloku
+ * synchronized - na JDK starszym niż 24 wątek wirtualny blokowałby wtedy wątek nośny przez całe żądanie.
+ * <p>
+ * Metody zwracające wynik asynchroniczny (np. {@link StreamingResponseBody}) są wywoływane bez zmian.
+ * <p>
+ * Wywołania przekazane do wątków wirtualnych mają własny limit czasu (bookshop.virtual-threads.request-timeout-millis,
+ * domyślnie -1, czyli bez limitu) zamiast domyślnego limitu żądań asynchronicznych serwera (30 s w Tomcacie). Bez
+ * wątków wirtualnych czas obsługi żądania nie jest ograniczony, a po upływie limitu klient otrzymałby błąd, podczas gdy
+ * metoda kontrolera nadal by działała - np. długi eksport zamówień (GET /orders/export) lub zmiana stanu tysięcy
+ * produktów (PATCH /stock).
+ */
+@Configuration
+@ConditionalOnProperty("bookshop.virtual-threads.enabled")
+public class VirtualThreadsConfiguration extends WebMvcConfigurerAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadsConfiguration.class);
+
+    //typy wyników metod obsługiwanych asynchronicznie przez Spring MVC
+    private static final Class<?>[] ASYNC_RESULT_TYPES = {
+            Callable.class, WebAsyncTask.class, DeferredResult.class, ListenableFuture.class, CompletionStage.class,
+            ResponseBodyEmitter.class, StreamingResponseBody.class
+    };
+
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    //limit czasu wywołań metod kontrolerów w wątkach wirtualnych (wartość niedodatnia - bez limitu)
+    final long requestTimeoutMillis;
+
+    public VirtualThreadsConfiguration(
+            @Value("${bookshop.virtual-threads.request-timeout-millis:-1}") long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        if (executor == null) {
+            log.warn("Virtual threads are not available on Java {}, handling requests on server threads",
+                    System.getProperty("java.version"));
+        }
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        if (executor != null) {
+            configurer.setTaskExecutor(new ConcurrentTaskExecutor(executor));
+        }
+    }
+
+    @Bean
+    public WebMvcRegistrations virtualThreadsMvcRegistrations() {
+        return new WebMvcRegistrationsAdapter() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return executor == null ? null : new VirtualThreadHandlerAdapter(requestTimeoutMillis);
+            }
+        };
+    }
+
+    /**
+     * @return wykonawca tworzący nowy wątek wirtualny dla każdego zadania lub null, jeśli JDK nie obsługuje wątków
+     * wirtualnych (aplikacja jest kompilowana dla Javy 8, więc fabryka jest pobierana przez refleksję)
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adapter zwracający wywołanie metody kontrolera jako {@link WebAsyncTask} z limitem czasu requestTimeoutMillis -
+     * Spring MVC wykonuje je przy użyciu wykonawcy z {@link #configureAsyncSupport}, a wynik zapisuje tak, jakby zwróciła
+     * go metoda kontrolera.
+     */
+    static class VirtualThreadHandlerAdapter extends RequestMappingHandlerAdapter {
+
+        final long requestTimeoutMillis;
+
+        VirtualThreadHandlerAdapter(long requestTimeoutMillis) {
+            this.requestTimeoutMillis = requestTimeoutMillis;
+        }
+
+        @Override
+        protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+            if (returnsAsyncResult(handlerMethod.getReturnType())) {
+                return super.createInvocableHandlerMethod(handlerMethod);
+            }
+            return new ServletInvocableHandlerMethod(handlerMethod) {
+                @Override
+                protected Object doInvoke(Object... args) {
+                    //ustawienia wątku serwera (odczyt z głównej bazy danych, akcja kontrolera wykonująca zapytania) są
+                    //przenoszone do wątku wirtualnego
+                    boolean readYourWrites = ReadYourWrites.isRequested();
+                    String origin = StatementOrigin.current();
+                    ReadYourWrites.clear();
+                    StatementOrigin.clear();
+                    return new WebAsyncTask<>(requestTimeoutMillis, () -> {
+                        if (readYourWrites) {
+                            ReadYourWrites.request();
+                        }
+                        StatementOrigin.set(origin);
+                        try {
+                            return super.doInvoke(args);
+                        } finally {
+                            ReadYourWrites.clear();
+                            StatementOrigin.clear();
+                        }
+                    });
+                }
+            };
+        }
+
+        private static boolean returnsAsyncResult(MethodParameter returnType) {
+            ResolvableType type = ResolvableType.forMethodParameter(returnType);
+            if (HttpEntity.class.isAssignableFrom(type.resolve(Object.class))) {
+                type = type.as(HttpEntity.class).getGeneric(0);
+            }
+            Class<?> resultClass = type.resolve(Object.class);
+            for (Class<?> asyncType : ASYNC_RESULT_TYPES) {
+                if (asyncType.isAssignableFrom(resultClass)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
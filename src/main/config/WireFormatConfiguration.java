@@ -0,0 +1,48 @@
+package net.stawrul.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+/**
+ * Obsługa binarnych formatów danych w żądaniach i odpowiedziach wszystkich kontrolerów.
+ * <p>
+ * Oprócz domyślnego formatu JSON klient może wysyłać i odbierać dane w formatach:
+ * - CBOR (Content-Type/Accept: application/cbor),
+ * - Smile (Content-Type/Accept: application/x-jackson-smile).
+ * Konwertery binarne są dodawane za konwerterem JSON, więc klienci, którzy nie wskazali konkretnego formatu, nadal
+ * otrzymują JSON.
+ */
+@Configuration
+public class WireFormatConfiguration extends WebMvcConfigurerAdapter {
+
+    public static final MediaType APPLICATION_CBOR = new MediaType("application", "cbor");
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    //Konfiguracja Jacksona z aplikacji (ta sama, co dla formatu JSON)
+    final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    public WireFormatConfiguration(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.objectMapperBuilder = objectMapperBuilder;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new BinaryJacksonHttpMessageConverter(objectMapper(new CBORFactory()), APPLICATION_CBOR));
+        converters.add(new BinaryJacksonHttpMessageConverter(objectMapper(new SmileFactory()), APPLICATION_SMILE));
+    }
+
+    private ObjectMapper objectMapper(JsonFactory factory) {
+        ObjectMapper objectMapper = new ObjectMapper(factory);
+        objectMapperBuilder.configure(objectMapper);
+        return objectMapper;
+    }
+}
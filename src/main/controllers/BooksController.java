@@ -2,12 +2,16 @@ package net.stawrul.controllers;
 
 import net.stawrul.model.Book;
 import net.stawrul.services.BooksService;
+import net.stawrul.services.CatalogQuery;
+import net.stawrul.services.CatalogSnapshots;
+import net.stawrul.services.CoalescedReads;
+import net.stawrul.services.exceptions.InvalidQueryException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
 import java.net.URI;
-import java.util.List;
 import java.util.UUID;
 
 import static org.springframework.http.HttpStatus.CONFLICT;
@@ -25,10 +29,18 @@ public class BooksController {
     //Komponent realizujący logikę biznesową operacji na książkach
     final BooksService booksService;
 
-    //Instancja klasy BooksService zostanie dostarczona przez framework Spring
+    //Komponent przechowujący gotowe, zserializowane listy produktów
+    final CatalogSnapshots catalogSnapshots;
+
+    //Komponent łączący współbieżne odczyty tych samych danych w jedno zapytanie
+    final CoalescedReads coalescedReads;
+
+    //Instancje klas BooksService, CatalogSnapshots i CoalescedReads zostaną dostarczone przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
-    public BooksController(BooksService booksService) {
+    public BooksController(BooksService booksService, CatalogSnapshots catalogSnapshots, CoalescedReads coalescedReads) {
         this.booksService = booksService;
+        this.catalogSnapshots = catalogSnapshots;
+        this.coalescedReads = coalescedReads;
     }
 
     /**
@@ -36,13 +48,29 @@ public class BooksController {
      *
      * Żądanie:
      * GET /books
+     * GET /books?inStock=true&amp;sort=title&amp;page=0&amp;size=20
+     *
+     * Parametry żądania ({@link CatalogQuery}) pozwalają wybrać tylko pasujące książki, posortować je według tytułu
+     * i pobrać jedną stronę wyników.
      *
-     * @return lista książek
+     * W trybie migawek katalogu odpowiedź jest wysyłana bezpośrednio z gotowej, zserializowanej listy.
+     *
+     * @param request bieżące żądanie (nagłówki Accept i Accept-Encoding)
+     * @param query kryteria wyszukiwania (bez parametrów - cały katalog)
+     * @return lista książek lub odpowiedź 400 Bad Request dla nieprawidłowych kryteriów
      */
     @GetMapping
-    public List<Book> listBooks() {
-
-        return booksService.findAll();
+    public ResponseEntity<?> listBooks(HttpServletRequest request, CatalogQuery query) {
+        if (!query.isEmpty()) {
+            try {
+                //wyszukiwanie według kryteriów zawsze odpytuje bazę danych (migawka zawiera tylko cały katalog)
+                return ResponseEntity.ok(coalescedReads.findMatching(booksService, query));
+            } catch (InvalidQueryException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        ResponseEntity<byte[]> snapshot = SnapshotResponses.of(catalogSnapshots.get(Book.class), request);
+        return snapshot != null ? snapshot : ResponseEntity.ok(coalescedReads.read(Book.class, Book.FIND_ALL, booksService::findAll));
     }
 
     /**
@@ -92,7 +120,7 @@ public class BooksController {
     @GetMapping("/{id}")
     public ResponseEntity<Book> getBook(@PathVariable UUID id) {
         //wyszukanie książki w bazie danych
-        Book book = booksService.find(id);
+        Book book = coalescedReads.find(booksService, id);
 
         //W warstwie biznesowej brak książki o podanym id jest sygnalizowany wartością null. Jeśli książka nie została
         //znaleziona zwracana jest odpowiedź 404 Not Found. W przeciwnym razie klient otrzymuje odpowiedź 200 OK
@@ -2,12 +2,16 @@ package net.stawrul.controllers;
 
 import net.stawrul.model.CD;
 import net.stawrul.services.CDsService;
+import net.stawrul.services.CatalogQuery;
+import net.stawrul.services.CatalogSnapshots;
+import net.stawrul.services.CoalescedReads;
+import net.stawrul.services.exceptions.InvalidQueryException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
 import java.net.URI;
-import java.util.List;
 import java.util.UUID;
 
 import static org.springframework.http.HttpStatus.CONFLICT;
@@ -25,10 +29,18 @@ public class CDsController {
     //Komponent realizujący logikę biznesową operacji na płytach
     final CDsService cdsService;
 
-    //Instancja klasy CDsService zostanie dostarczona przez framework Spring
+    //Komponent przechowujący gotowe, zserializowane listy produktów
+    final CatalogSnapshots catalogSnapshots;
+
+    //Komponent łączący współbieżne odczyty tych samych danych w jedno zapytanie
+    final CoalescedReads coalescedReads;
+
+    //Instancje klas CDsService, CatalogSnapshots i CoalescedReads zostaną dostarczone przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
-    public CDsController(CDsService cdsService) {
+    public CDsController(CDsService cdsService, CatalogSnapshots catalogSnapshots, CoalescedReads coalescedReads) {
         this.cdsService = cdsService;
+        this.catalogSnapshots = catalogSnapshots;
+        this.coalescedReads = coalescedReads;
     }
 
     /**
@@ -36,12 +48,29 @@ public class CDsController {
      *
      * Żądanie:
      * GET /CDs
+     * GET /CDs?author=...&amp;yearOfDistribution=1999&amp;sort=title
+     *
+     * Parametry żądania ({@link CatalogQuery}) pozwalają wybrać tylko pasujące płyty, posortować je według tytułu
+     * i pobrać jedną stronę wyników.
      *
-     * @return lista płyt
+     * W trybie migawek katalogu odpowiedź jest wysyłana bezpośrednio z gotowej, zserializowanej listy.
+     *
+     * @param request bieżące żądanie (nagłówki Accept i Accept-Encoding)
+     * @param query kryteria wyszukiwania (bez parametrów - cały katalog)
+     * @return lista płyt lub odpowiedź 400 Bad Request dla nieprawidłowych kryteriów
      */
     @GetMapping
-    public List<CD> listCDs() {
-        return cdsService.findAll();
+    public ResponseEntity<?> listCDs(HttpServletRequest request, CatalogQuery query) {
+        if (!query.isEmpty()) {
+            try {
+                //wyszukiwanie według kryteriów zawsze odpytuje bazę danych (migawka zawiera tylko cały katalog)
+                return ResponseEntity.ok(coalescedReads.findMatching(cdsService, query));
+            } catch (InvalidQueryException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        ResponseEntity<byte[]> snapshot = SnapshotResponses.of(catalogSnapshots.get(CD.class), request);
+        return snapshot != null ? snapshot : ResponseEntity.ok(coalescedReads.read(CD.class, CD.FIND_ALL, cdsService::findAll));
     }
 
     /**
@@ -91,7 +120,7 @@ public class CDsController {
     @GetMapping("/{id}")
     public ResponseEntity<CD> getCD(@PathVariable UUID id) {
         //wyszukanie książki w bazie danych
-        CD cd = cdsService.find(id);
+        CD cd = coalescedReads.find(cdsService, id);
 
         //W warstwie biznesowej brak płyty o podanym id jest sygnalizowany wartością null. Jeśli płyta nie została
         //znaleziona zwracana jest odpowiedź 404 Not Found. W przeciwnym razie klient otrzymuje odpowiedź 200 OK
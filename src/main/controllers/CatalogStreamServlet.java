@@ -0,0 +1,143 @@
+package net.stawrul.controllers;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.services.CatalogSnapshots;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Strumieniowe odczyty katalogu w formacie NDJSON (jeden produkt w wierszu), bez blokowania wątków serwera.
+ * <p>
+ * Żądania:
+ * GET /stream/books
+ * GET /stream/films
+ * GET /stream/cds
+ * <p>
+ * Odpowiedź jest wysyłana z migawki katalogu ({@link CatalogSnapshots}) - odczyt nie wykonuje zapytań do bazy
+ * danych. Dane są zapisywane nieblokująco (Servlet 3.1): kolejny fragment trafia do gniazda dopiero wtedy, gdy klient
+ * odebrał poprzednie (ang. backpressure), a w czasie oczekiwania na wolnego klienta żaden wątek nie jest zajęty. Liczbę
+ * jednocześnie obsługiwanych czytelników ogranicza więc server.tomcat.max-connections, a nie liczba wątków serwera.
+ * Każdy czytelnik otrzymuje spójną migawkę z chwili rozpoczęcia odczytu.
+ */
+public class CatalogStreamServlet extends HttpServlet {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    //rozmiar fragmentu zapisywanego jednym wywołaniem write
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    private static final Map<String, Class<?>> PRODUCT_TYPES = new HashMap<>();
+
+    static {
+        PRODUCT_TYPES.put("/books", Book.class);
+        PRODUCT_TYPES.put("/films", Film.class);
+        PRODUCT_TYPES.put("/cds", CD.class);
+    }
+
+    final CatalogSnapshots catalogSnapshots;
+    final long timeoutMillis;
+
+    /**
+     * @param catalogSnapshots migawki katalogu
+     * @param timeoutMillis maksymalny czas wysyłania odpowiedzi (chroni przed klientami, którzy przestali odbierać dane)
+     */
+    public CatalogStreamServlet(CatalogSnapshots catalogSnapshots, long timeoutMillis) {
+        this.catalogSnapshots = catalogSnapshots;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Class<?> productType = PRODUCT_TYPES.get(request.getPathInfo());
+        if (productType == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        CatalogSnapshots.Snapshot snapshot = catalogSnapshots.get(productType);
+        if (snapshot == null) {
+            //migawka jest budowana w tle po uruchomieniu aplikacji
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        byte[] data = snapshot.getNdjson();
+        response.setContentType(APPLICATION_NDJSON);
+        response.setContentLength(data.length);
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(timeoutMillis);
+        async.addListener(new CompleteOnTimeout());
+        ServletOutputStream output = response.getOutputStream();
+        output.setWriteListener(new ChunkWriter(data, output, async));
+    }
+
+    /**
+     * Zapisywanie danych fragmentami, tak długo, jak gniazdo przyjmuje dane bez blokowania. Kontener wywołuje
+     * {@link #onWritePossible()} ponownie, gdy klient odbierze zaległe dane.
+     */
+    static class ChunkWriter implements WriteListener {
+        private final byte[] data;
+        private final ServletOutputStream output;
+        private final AsyncContext async;
+        private int position;
+
+        ChunkWriter(byte[] data, ServletOutputStream output, AsyncContext async) {
+            this.data = data;
+            this.output = output;
+            this.async = async;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            while (output.isReady()) {
+                if (position == data.length) {
+                    async.complete();
+                    return;
+                }
+                int length = Math.min(CHUNK_BYTES, data.length - position);
+                output.write(data, position, length);
+                position += length;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            //klient zamknął połączenie
+            async.complete();
+        }
+    }
+
+    private static class CompleteOnTimeout implements AsyncListener {
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            event.getAsyncContext().complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package net.stawrul.controllers;
 
 import net.stawrul.model.Film;
+import net.stawrul.services.CatalogQuery;
+import net.stawrul.services.CatalogSnapshots;
+import net.stawrul.services.CoalescedReads;
 import net.stawrul.services.FilmsService;
+import net.stawrul.services.exceptions.InvalidQueryException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
 import java.net.URI;
-import java.util.List;
 import java.util.UUID;
 
 import static org.springframework.http.HttpStatus.CONFLICT;
@@ -25,10 +29,18 @@ public class FilmsController {
     //Komponent realizujący logikę biznesową operacji na filmach
     final FilmsService filmsService;
 
-    //Instancja klasy FilmsService zostanie dostarczona przez framework Spring
+    //Komponent przechowujący gotowe, zserializowane listy produktów
+    final CatalogSnapshots catalogSnapshots;
+
+    //Komponent łączący współbieżne odczyty tych samych danych w jedno zapytanie
+    final CoalescedReads coalescedReads;
+
+    //Instancje klas FilmsService, CatalogSnapshots i CoalescedReads zostaną dostarczone przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
-    public FilmsController(FilmsService filmsService) {
+    public FilmsController(FilmsService filmsService, CatalogSnapshots catalogSnapshots, CoalescedReads coalescedReads) {
         this.filmsService = filmsService;
+        this.catalogSnapshots = catalogSnapshots;
+        this.coalescedReads = coalescedReads;
     }
 
     /**
@@ -36,12 +48,29 @@ public class FilmsController {
      *
      * Żądanie:
      * GET /films
+     * GET /films?director=...&amp;maxDurationTime=120&amp;sort=title
+     *
+     * Parametry żądania ({@link CatalogQuery}) pozwalają wybrać tylko pasujące filmy, posortować je według tytułu
+     * i pobrać jedną stronę wyników.
      *
-     * @return lista filmów
+     * W trybie migawek katalogu odpowiedź jest wysyłana bezpośrednio z gotowej, zserializowanej listy.
+     *
+     * @param request bieżące żądanie (nagłówki Accept i Accept-Encoding)
+     * @param query kryteria wyszukiwania (bez parametrów - cały katalog)
+     * @return lista filmów lub odpowiedź 400 Bad Request dla nieprawidłowych kryteriów
      */
     @GetMapping
-    public List<Film> listFilms() {
-        return filmsService.findAll();
+    public ResponseEntity<?> listFilms(HttpServletRequest request, CatalogQuery query) {
+        if (!query.isEmpty()) {
+            try {
+                //wyszukiwanie według kryteriów zawsze odpytuje bazę danych (migawka zawiera tylko cały katalog)
+                return ResponseEntity.ok(coalescedReads.findMatching(filmsService, query));
+            } catch (InvalidQueryException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        ResponseEntity<byte[]> snapshot = SnapshotResponses.of(catalogSnapshots.get(Film.class), request);
+        return snapshot != null ? snapshot : ResponseEntity.ok(coalescedReads.read(Film.class, Film.FIND_ALL, filmsService::findAll));
     }
 
     /**
@@ -91,7 +120,7 @@ public class FilmsController {
     @GetMapping("/{id}")
     public ResponseEntity<Film> getFilm(@PathVariable UUID id) {
         //wyszukanie filmu w bazie danych
-        Film film = filmsService.find(id);
+        Film film = coalescedReads.find(filmsService, id);
 
         //W warstwie biznesowej brak filmu o podanym id jest sygnalizowany wartością null. Jeśli film nie został
         //znaleziona zwracana jest odpowiedź 404 Not Found. W przeciwnym razie klient otrzymuje odpowiedź 200 OK
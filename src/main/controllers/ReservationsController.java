@@ -0,0 +1,114 @@
+package net.stawrul.controllers;
+
+import net.stawrul.model.Order;
+import net.stawrul.model.Reservation;
+import net.stawrul.services.ReservationsService;
+import net.stawrul.services.exceptions.OutOfStockException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * Kontroler zawierający akcje związane z rezerwacjami produktów.
+ *
+ * Parametr "/reservations" w adnotacji @RequestMapping określa prefix dla adresów wszystkich akcji kontrolera.
+ */
+@RestController
+@RequestMapping("/reservations")
+public class ReservationsController {
+
+    //Komponent realizujący logikę biznesową operacji na rezerwacjach
+    final ReservationsService reservationsService;
+
+    //Instancja klasy ReservationsService zostanie dostarczona przez framework Spring
+    //(wstrzykiwanie zależności przez konstruktor).
+    public ReservationsController(ReservationsService reservationsService) {
+        this.reservationsService = reservationsService;
+    }
+
+    /**
+     * Rezerwacja produktów.
+     *
+     * Żądanie:
+     * POST /reservations
+     *
+     * @param reservation rezerwowane produkty (listy books, films i cds - jak w zamówieniu)
+     * @param uriBuilder pomocniczy obiekt do budowania adresu wskazującego na nową rezerwację,
+     *                   zostanie wstrzyknięty przez framework Spring
+     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem rezerwacji i dane rezerwacji (w tym czas
+     * wygaśnięcia) lub odpowiedź 422 Unprocessable Entity, jeśli któryś z produktów nie jest dostępny
+     */
+    @PostMapping
+    public ResponseEntity<Reservation> addReservation(@RequestBody Reservation reservation,
+                                                      UriComponentsBuilder uriBuilder) {
+        try {
+            reservationsService.reserve(reservation);
+            URI location = uriBuilder.path("/reservations/{id}").buildAndExpand(reservation.getId()).toUri();
+            return ResponseEntity.created(location).body(reservation);
+
+        } catch (OutOfStockException e) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+    }
+
+    /**
+     * Pobieranie informacji o rezerwacji.
+     *
+     * Żądanie:
+     * GET /reservations/{id}
+     *
+     * @param id identyfikator rezerwacji
+     * @return odpowiedź 200 OK zawierająca dane rezerwacji lub odpowiedź 404 Not Found, jeśli rezerwacja nie istnieje
+     * lub wygasła
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Reservation> getReservation(@PathVariable UUID id) {
+        Reservation reservation = reservationsService.find(id);
+        return reservation != null ? ResponseEntity.ok(reservation) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Zwolnienie rezerwacji.
+     *
+     * Żądanie:
+     * DELETE /reservations/{id}
+     *
+     * @param id identyfikator rezerwacji
+     * @return odpowiedź 204 No Content lub odpowiedź 404 Not Found, jeśli rezerwacja nie istnieje lub wygasła
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteReservation(@PathVariable UUID id) {
+        return reservationsService.release(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Zamiana rezerwacji w zamówienie.
+     *
+     * Żądanie:
+     * POST /reservations/{id}/checkout
+     *
+     * @param id identyfikator rezerwacji
+     * @param uriBuilder pomocniczy obiekt do budowania adresu wskazującego na nowe zamówienie,
+     *                   zostanie wstrzyknięty przez framework Spring
+     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem nowego zamówienia, odpowiedź 404 Not Found,
+     * jeśli rezerwacja nie istnieje lub wygasła, lub odpowiedź 422 Unprocessable Entity, jeśli zamówienie zostało
+     * odrzucone
+     */
+    @PostMapping("/{id}/checkout")
+    public ResponseEntity<Void> checkout(@PathVariable UUID id, UriComponentsBuilder uriBuilder) {
+        try {
+            Order order = reservationsService.checkout(id);
+            if (order == null) {
+                return ResponseEntity.notFound().build();
+            }
+            URI location = uriBuilder.path("/orders/{id}").buildAndExpand(order.getId()).toUri();
+            return ResponseEntity.created(location).build();
+
+        } catch (OutOfStockException e) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+    }
+}
@@ -1,17 +1,35 @@
 package net.stawrul.controllers;
 
 import net.stawrul.model.Order;
+import net.stawrul.services.AdmissionLimiter;
+import net.stawrul.services.JournaledOrders;
+import net.stawrul.services.OrderCache;
 import net.stawrul.services.OrdersService;
+import net.stawrul.services.exceptions.InvalidOrderLineException;
+import net.stawrul.services.exceptions.InvalidQuantityException;
 import net.stawrul.services.exceptions.OutOfStockException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
 import static java.util.Objects.isNull;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 
 /**
  * Kontroler obejmujący akcje na zamówieniach.
@@ -19,19 +37,46 @@ import static java.util.Objects.isNull;
 @RestController
 public class ShopController {
 
+    //rozmiar bufora odpowiedzi eksportu - rekordy są wysyłane do klienta porcjami tej wielkości
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     //Komponent realizujący logikę biznesową operacji na zamówieniach
     final OrdersService ordersService;
 
-    //Instancja klasy OrdersService zostanie dostarczona przez framework Spring
+    //Komponent ograniczający liczbę jednocześnie realizowanych zamówień
+    final AdmissionLimiter admissionLimiter;
+
+    //Dziennik przyjętych zamówień - null, jeśli zamówienia są zapisywane w bazie danych bezpośrednio
+    JournaledOrders journaledOrders;
+
+    //Złożone zamówienia w formacie JSON - null poza kontekstem Springa (np. w testach jednostkowych)
+    OrderCache orderCache;
+
+    //Instancje klas OrdersService i AdmissionLimiter zostaną dostarczone przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
-    public ShopController(OrdersService ordersService) {
+    public ShopController(OrdersService ordersService, AdmissionLimiter admissionLimiter) {
         this.ordersService = ordersService;
+        this.admissionLimiter = admissionLimiter;
+    }
+
+    //Instancja klasy JournaledOrders jest dostarczana przez framework Spring tylko wtedy, gdy włączono dziennik
+    @Autowired(required = false)
+    public void setJournaledOrders(JournaledOrders journaledOrders) {
+        this.journaledOrders = journaledOrders;
+    }
+
+    @Autowired(required = false)
+    public void setOrderCache(OrderCache orderCache) {
+        this.orderCache = orderCache;
     }
 
 
     /**
      * Pobieranie listy wszystkich zamówień.
      *
+     * Lista jest budowana w pamięci w całości - do pobierania wszystkich zamówień (np. do rozliczeń) służy eksport
+     * GET /orders/export.
+     *
      * @return lista zamówień
      */
     @GetMapping("/orders")
@@ -39,17 +84,99 @@ public class ShopController {
         return ordersService.findAll();
     }
 
+    /**
+     * Eksport pozycji zamówień złożonych od podanej chwili - jeden rekord na pozycję zamówienia, w formacie NDJSON
+     * lub CSV.
+     *
+     * Żądanie:
+     * GET /orders/export?format=csv&amp;since=2026-10-18T00:00:00Z
+     *
+     * Rekordy są zapisywane w odpowiedzi w trakcie odczytu z bazy danych (zob.
+     * {@link OrdersService#exportLines(Date, OrdersService.LineConsumer)}), więc w przeciwieństwie do GET /orders
+     * eksport nie przechowuje w pamięci listy zamówień. Rekord zawiera identyfikator i datę złożenia zamówienia
+     * (ISO-8601, UTC), rodzaj i identyfikator produktu oraz liczbę sztuk.
+     *
+     * @param format ndjson (domyślnie) lub csv
+     * @param since najwcześniejsza data złożenia zamówienia (bez parametru - wszystkie zamówienia)
+     * @param response odpowiedź, w której są zapisywane rekordy
+     */
+    @GetMapping("/orders/export")
+    public void exportOrders(@RequestParam(defaultValue = "ndjson") String format,
+                             @RequestParam(required = false) Instant since,
+                             HttpServletResponse response) throws IOException {
+        boolean csv = format.equals("csv");
+        if (!csv && !format.equals("ndjson")) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        response.setContentType(csv ? "text/csv" : CatalogStreamServlet.APPLICATION_NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        if (csv) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.csv");
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8),
+                EXPORT_BUFFER_SIZE);
+        if (csv) {
+            out.write("orderId,creationDate,productType,productId,quantity\n");
+        }
+        //identyfikatory, daty w formacie ISO-8601, nazwy rodzajów produktów i liczby nie wymagają cytowania
+        //w CSV ani znaków ucieczki w JSON
+        ordersService.exportLines(since != null ? Date.from(since) : new Date(0), (orderId, creationDate, line) -> {
+            if (csv) {
+                out.write(orderId + "," + creationDate.toInstant() + "," + line.getType() + ","
+                        + line.getProductId() + "," + line.getQuantity() + "\n");
+            } else {
+                out.write("{\"orderId\":\"" + orderId + "\",\"creationDate\":\"" + creationDate.toInstant()
+                        + "\",\"productType\":\"" + line.getType() + "\",\"productId\":\"" + line.getProductId()
+                        + "\",\"quantity\":" + line.getQuantity() + "}\n");
+            }
+        });
+        out.flush();
+    }
+
     /**
      * Pobieranie informacji o pojedynczym zamówieniu.
+     * <p>
+     * Zamówienie przeniesione do archiwum zawiera tylko identyfikatory produktów. Złożone zamówienie jest wysyłane
+     * w formacie JSON z pamięci podręcznej ({@link OrderCache}), bez zapytań do bazy danych - chyba że klient preferuje
+     * inny format (np. CBOR).
      *
      * @param id identyfikator poszukiwanego zamówienia
-     * @return odpowiedź 200 OK zawierające dane zamówienia lub odpowiedź 404 Not Found, jeśli id nie występuje w bazie
-     * danych
+     * @param request bieżące żądanie (nagłówek Accept)
+     * @return odpowiedź 200 OK zawierające dane zamówienia, odpowiedź 202 Accepted z danymi zamówienia przyjętego do
+     * dziennika, ale jeszcze nie zapisanego w bazie danych, odpowiedź 422 Unprocessable Entity, jeśli przyjęte
+     * zamówienie zostało odrzucone, lub odpowiedź 404 Not Found, jeśli id nie występuje w bazie danych ani w archiwum
+     * zamówień
      */
     @GetMapping("/orders/{id}")
-    public ResponseEntity<Order> getOrder(@PathVariable UUID id) {
+    public ResponseEntity<?> getOrder(@PathVariable UUID id, HttpServletRequest request) {
+        boolean json = orderCache != null && SnapshotResponses.prefersJson(request.getHeader(HttpHeaders.ACCEPT));
+        if (json) {
+            byte[] cached = orderCache.get(id);
+            if (cached != null) {
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(cached);
+            }
+        }
+
+        if (journaledOrders != null) {
+            Order pending = journaledOrders.findPending(id);
+            if (pending != null) {
+                return ResponseEntity.accepted().body(pending);
+            }
+        }
+
         Order order = ordersService.find(id);
-        return isNull(order) ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+        if (isNull(order) && journaledOrders != null && journaledOrders.isRejected(id)) {
+            return ResponseEntity.unprocessableEntity().build();
+        }
+        if (isNull(order)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (orderCache != null) {
+            orderCache.put(order);
+        }
+        return ResponseEntity.ok(order);
     }
 
     /**
@@ -58,18 +185,40 @@ public class ShopController {
      * @param order zamówienie
      * @param uriBuilder pomocniczy obiekt do budowania adresu wskazującego na nowo dodane zamówienie,
      *                   zostanie wstrzyknięty przez framework Spring
-     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem nowego zamówienia lub odpowiedź 422
-     * Unprocessable Entity, jeśli zamówienie zostało odrzucone (np. z powodu braku produktów)
+     * @return odpowiedź 201 Created zawierająca nagłówek Location z adresem nowego zamówienia (202 Accepted, jeśli
+     * zamówienie zostało przyjęte do dziennika i zostanie zapisane w bazie danych w tle), odpowiedź 422
+     * Unprocessable Entity, jeśli zamówienie zostało odrzucone (np. z powodu braku produktów) lub odpowiedź 503
+     * Service Unavailable z nagłówkiem Retry-After, jeśli sklep jest przeciążony
      */
     @PostMapping("/orders")
-    public ResponseEntity<Void> addOrder(@RequestBody Order order, UriComponentsBuilder uriBuilder) {
+    public ResponseEntity<Void> addOrder(@RequestBody Order order, UriComponentsBuilder uriBuilder)
+            throws IOException {
+        AdmissionLimiter.Permit permit = admissionLimiter.tryAcquire();
+        if (permit == null) {
+            //limit jednocześnie realizowanych zamówień i kolejka oczekujących są pełne - żądanie jest odrzucane
+            //natychmiast, zamiast zajmować wątek serwera w oczekiwaniu na bazę danych
+            return ResponseEntity.status(SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionLimiter.getRetryAfterSeconds()))
+                    .build();
+        }
+
         try {
-            ordersService.placeOrder(order);
             URI location = uriBuilder.path("/orders/{id}").buildAndExpand(order.getId()).toUri();
+            if (journaledOrders != null) {
+                //zamówienie jest trwale zapisane w dzienniku - o jego przyjęciu lub odrzuceniu informuje adres location
+                journaledOrders.accept(order);
+                permit.succeeded();
+                return ResponseEntity.accepted().location(location).build();
+            }
+
+            ordersService.placeOrder(order);
+            permit.succeeded();
             return ResponseEntity.created(location).build();
 
-        } catch (OutOfStockException e) {
+        } catch (OutOfStockException | InvalidQuantityException | InvalidOrderLineException e) {
             return ResponseEntity.unprocessableEntity().build();
+        } finally {
+            permit.release();
         }
     }
 }
@@ -0,0 +1,68 @@
+package net.stawrul.controllers;
+
+import net.stawrul.datasource.SlowQueryLog;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kontroler udostępniający czasy wykonania zapytań SQL (zob. {@link net.stawrul.config.SlowQueryLogConfiguration}).
+ *
+ * Parametr "/admin/slow-queries" w adnotacji @RequestMapping określa prefix dla adresów wszystkich akcji kontrolera.
+ */
+@RestController
+@RequestMapping("/admin/slow-queries")
+@ConditionalOnProperty("bookshop.slow-queries.enabled")
+public class SlowQueriesController {
+
+    final SlowQueryLog slowQueryLog;
+
+    public SlowQueriesController(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Pobranie najwolniejszych zapytań i statystyk wszystkich zapytań.
+     *
+     * Żądanie:
+     * GET /admin/slow-queries?limit=10
+     *
+     * @param limit maksymalna liczba zapytań na każdej z list
+     * @return próg czasu wykonania (thresholdMillis), najwolniejsze zapytania wraz z rodzajami parametrów i akcją
+     * kontrolera, która je wykonała (slowest) oraz statystyki zapytań według łącznego czasu wykonania (statements)
+     */
+    @GetMapping
+    public Map<String, Object> slowQueries(@RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMillis", slowQueryLog.getThresholdMillis());
+        result.put("slowest", first(slowQueryLog.getSlowest(), limit));
+        result.put("statements", first(slowQueryLog.getStatements(), limit));
+        return result;
+    }
+
+    /**
+     * Wyczyszczenie zebranych statystyk (np. przed powtórzeniem pomiaru).
+     *
+     * Żądanie:
+     * DELETE /admin/slow-queries
+     *
+     * @return odpowiedź 204 No Content
+     */
+    @DeleteMapping
+    public ResponseEntity<Void> reset() {
+        slowQueryLog.reset();
+        return ResponseEntity.noContent().build();
+    }
+
+    private static <T> List<T> first(List<T> list, int limit) {
+        return list.subList(0, Math.max(0, Math.min(limit, list.size())));
+    }
+}
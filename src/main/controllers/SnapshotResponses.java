@@ -0,0 +1,125 @@
+package net.stawrul.controllers;
+
+import net.stawrul.services.CatalogSnapshots.Snapshot;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Locale;
+
+import static net.stawrul.config.WireFormatConfiguration.APPLICATION_CBOR;
+import static net.stawrul.config.WireFormatConfiguration.APPLICATION_SMILE;
+
+/**
+ * Budowanie odpowiedzi HTTP bezpośrednio z migawki katalogu (bez zapytań do bazy danych i serializacji).
+ */
+final class SnapshotResponses {
+
+    private SnapshotResponses() {
+    }
+
+    /**
+     * @param snapshot migawka listy produktów (może być null)
+     * @param request bieżące żądanie
+     * @return odpowiedź zawierająca migawkę lub null, jeśli migawka nie istnieje albo klient oczekuje formatu innego
+     * niż JSON (np. CBOR) - wtedy lista jest pobierana i serializowana w zwykły sposób
+     */
+    static ResponseEntity<byte[]> of(Snapshot snapshot, HttpServletRequest request) {
+        if (snapshot == null || !prefersJson(request.getHeader(HttpHeaders.ACCEPT))) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzippedJson());
+        }
+        return response.body(snapshot.getJson());
+    }
+
+    /**
+     * Negocjacja kompresji na podstawie wag (q) kodowań w nagłówku Accept-Encoding, np. "gzip;q=0" wyklucza gzip,
+     * a "*;q=0.5" dopuszcza gzip jako kodowanie niewymienione z nazwy.
+     *
+     * @param acceptEncoding nagłówek Accept-Encoding żądania (może być null)
+     * @return czy klient akceptuje kodowanie gzip (waga większa od zera) i nie preferuje odpowiedzi bez kompresji
+     * (kodowanie identity z większą wagą)
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        //-1 - kodowanie nie zostało wymienione w nagłówku
+        double gzip = -1;
+        double identity = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            double quality = quality(parameters);
+            switch (parameters[0].trim().toLowerCase(Locale.ROOT)) {
+                case "gzip":
+                case "x-gzip":
+                    gzip = quality;
+                    break;
+                case "identity":
+                    identity = quality;
+                    break;
+                case "*":
+                    any = quality;
+                    break;
+                default:
+            }
+        }
+        if (gzip < 0) {
+            gzip = Math.max(any, 0);
+        }
+        return gzip > 0 && gzip >= identity;
+    }
+
+    //waga kodowania - parametr q (domyślnie 1), nieprawidłowa wartość wyklucza kodowanie
+    private static double quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                try {
+                    double quality = Double.parseDouble(parameter.substring(2).trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @param accept nagłówek Accept żądania (może być null)
+     * @return czy klient akceptuje odpowiedź w formacie JSON i nie preferuje formatu binarnego (CBOR, Smile)
+     */
+    static boolean prefersJson(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return true;
+        }
+        try {
+            List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+            MediaType.sortBySpecificityAndQuality(accepted);
+            //pierwszy z akceptowanych formatów, w którym aplikacja może zwrócić listę produktów
+            for (MediaType mediaType : accepted) {
+                if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                    return true;
+                }
+                if (mediaType.includes(APPLICATION_CBOR) || mediaType.includes(APPLICATION_SMILE)) {
+                    return false;
+                }
+            }
+            return false;
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
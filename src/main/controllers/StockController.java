@@ -0,0 +1,102 @@
+package net.stawrul.controllers;
+
+import net.stawrul.model.StockAdjustment;
+import net.stawrul.services.HotStock;
+import net.stawrul.services.StockService;
+import net.stawrul.services.exceptions.DuplicateInRequestException;
+import net.stawrul.services.exceptions.StockAdjustmentException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Kontroler zawierający akcje związane ze stanem magazynu.
+ *
+ * Parametr "/stock" w adnotacji @RequestMapping określa prefix dla adresów wszystkich akcji kontrolera.
+ */
+@RestController
+@RequestMapping("/stock")
+public class StockController {
+
+    //Komponent realizujący logikę biznesową zmian stanu magazynu
+    final StockService stockService;
+
+    //Komponent realizujący tryb "hot" (stan produktu rozdzielony między liczniki cząstkowe)
+    final HotStock hotStock;
+
+    //Instancje klas StockService i HotStock zostaną dostarczone przez framework Spring
+    //(wstrzykiwanie zależności przez konstruktor).
+    public StockController(StockService stockService, HotStock hotStock) {
+        this.stockService = stockService;
+        this.hotStock = hotStock;
+    }
+
+    /**
+     * Zmiana stanu magazynu wielu produktów (np. przyjęcie dostawy).
+     *
+     * Żądanie:
+     * PATCH /stock
+     * [{"productId": "...", "delta": 25}, {"productId": "...", "delta": -1}]
+     *
+     * @param adjustments względne zmiany stanu - liczba sztuk jest zwiększana (lub zmniejszana) o delta, bez
+     *                    nadpisywania zmian wprowadzonych w międzyczasie przez zamówienia
+     * @return odpowiedź 204 No Content, jeśli wykonano wszystkie zmiany, odpowiedź 400 Bad Request, jeśli produkt
+     * występuje w żądaniu więcej niż raz, lub odpowiedź 422 Unprocessable Entity zawierająca identyfikatory produktów,
+     * które nie istnieją albo których stan stałby się ujemny (żadna zmiana nie zostaje wtedy wykonana)
+     */
+    @PatchMapping
+    public ResponseEntity<List<UUID>> adjustStock(@RequestBody List<StockAdjustment> adjustments) {
+        try {
+            stockService.adjust(adjustments);
+            return ResponseEntity.noContent().build();
+
+        } catch (DuplicateInRequestException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (StockAdjustmentException e) {
+            return ResponseEntity.unprocessableEntity().body(e.getProductIds());
+        }
+    }
+
+    /**
+     * Włączenie trybu "hot" dla produktu zamawianego przez wielu klientów jednocześnie.
+     *
+     * Żądanie:
+     * POST /stock/hot/{id}?slots=16
+     *
+     * @param id identyfikator książki, filmu lub płyty
+     * @param slots liczba liczników cząstkowych, między które jest rozdzielany stan produktu (domyślnie
+     *              bookshop.stock.hot.slots)
+     * @return odpowiedź 204 No Content, odpowiedź 400 Bad Request dla ujemnej liczby slotów lub odpowiedź 404, jeśli
+     * produkt nie istnieje
+     */
+    @PostMapping("/hot/{id}")
+    public ResponseEntity<Void> enableHot(@PathVariable UUID id, @RequestParam(defaultValue = "0") int slots) {
+        if (slots < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return hotStock.enable(id, slots) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Wyłączenie trybu "hot" - stan produktu wraca do jednego licznika.
+     *
+     * Żądanie:
+     * DELETE /stock/hot/{id}
+     *
+     * @param id identyfikator książki, filmu lub płyty
+     * @return odpowiedź 204 No Content lub odpowiedź 404, jeśli produkt nie istnieje albo nie jest w trybie "hot"
+     */
+    @DeleteMapping("/hot/{id}")
+    public ResponseEntity<Void> disableHot(@PathVariable UUID id) {
+        return hotStock.disable(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,27 @@
+package net.stawrul.datasource;
+
+/**
+ * Znacznik "odczytu własnych zapisów" dla bieżącego wątku obsługującego żądanie.
+ * <p>
+ * Jeśli znacznik jest ustawiony, również transakcje tylko do odczytu są kierowane do głównej bazy danych
+ * (zamiast do repliki), dzięki czemu klient widzi np. stan magazynu zaraz po złożeniu zamówienia.
+ */
+public final class ReadYourWrites {
+
+    private static final ThreadLocal<Boolean> REQUESTED = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    public static void request() {
+        REQUESTED.set(Boolean.TRUE);
+    }
+
+    public static void clear() {
+        REQUESTED.remove();
+    }
+
+    public static boolean isRequested() {
+        return REQUESTED.get() != null;
+    }
+}
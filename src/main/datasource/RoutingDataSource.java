@@ -0,0 +1,28 @@
+package net.stawrul.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Źródło danych kierujące połączenia do głównej bazy danych lub do repliki.
+ * <p>
+ * Transakcje tylko do odczytu (@Transactional(readOnly = true)) trafiają do repliki, pozostałe - do głównej bazy
+ * danych. Wyjątkiem są żądania z ustawionym znacznikiem {@link ReadYourWrites}, które zawsze trafiają do głównej bazy.
+ * <p>
+ * Znacznik readOnly transakcji jest ustawiany dopiero po jej rozpoczęciu, dlatego źródło danych musi być opakowane
+ * w LazyConnectionDataSourceProxy, które pobiera fizyczne połączenie przy pierwszym zapytaniu.
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY, REPLICA
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReadYourWrites.isRequested()) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+}
@@ -0,0 +1,27 @@
+package net.stawrul.datasource;
+
+/**
+ * Numer partycji (ang. shard) bazy danych, do której trafiają zapytania bieżącego wątku.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return numer bieżącej partycji lub null, jeśli nie została wybrana (używana jest wtedy partycja 0)
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    static void set(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
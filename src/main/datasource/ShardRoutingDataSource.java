@@ -0,0 +1,17 @@
+package net.stawrul.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Źródło danych kierujące połączenia do partycji wskazanej przez {@link ShardContext}.
+ * <p>
+ * Podobnie jak {@link RoutingDataSource} musi być opakowane w LazyConnectionDataSourceProxy, aby partycja była
+ * wybierana przy pierwszym zapytaniu, a nie przy rozpoczęciu transakcji.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
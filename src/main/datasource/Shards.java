@@ -0,0 +1,107 @@
+package net.stawrul.datasource;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Podział danych magazynowych na partycje według identyfikatora produktu.
+ * <p>
+ * Produkt o identyfikatorze id znajduje się w partycji shardOf(id). Operacje na partycji są wykonywane w osobnej,
+ * lokalnej transakcji tej partycji (metoda inShard).
+ */
+public class Shards {
+
+    private final int count;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * @param count liczba partycji
+     * @param transactionManager menedżer transakcji JPA korzystający z {@link ShardRoutingDataSource}
+     */
+    public Shards(int count, PlatformTransactionManager transactionManager) {
+        this.count = count;
+        this.transactionManager = transactionManager;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param id identyfikator produktu (lub zamówienia)
+     * @return numer partycji, w której znajduje się obiekt
+     */
+    public int shardOf(UUID id) {
+        long bits = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return (int) Math.floorMod(bits ^ (bits >>> 32), (long) count);
+    }
+
+    /**
+     * Pogrupowanie elementów według partycji.
+     *
+     * @param items elementy do pogrupowania
+     * @param idSupplier funkcja zwracająca identyfikator elementu
+     * @return elementy w kolejności numerów partycji
+     */
+    public <T> Map<Integer, List<T>> groupByShard(Collection<T> items, Function<T, UUID> idSupplier) {
+        Map<Integer, List<T>> groups = new TreeMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardOf(idSupplier.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * Wykonanie operacji w transakcji wskazanej partycji.
+     * <p>
+     * Jeśli bieżąca transakcja działa już na tej partycji, operacja jest do niej dołączana. W przeciwnym razie
+     * rozpoczynana jest nowa transakcja (REQUIRES_NEW), zatwierdzana po zakończeniu operacji.
+     *
+     * @param shard numer partycji
+     * @param readOnly czy transakcja jest tylko do odczytu
+     * @param work operacja do wykonania
+     * @return wynik operacji
+     */
+    public <R> R inShard(int shard, boolean readOnly, Supplier<R> work) {
+        Integer previous = ShardContext.current();
+        if (previous != null && previous == shard && TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.setReadOnly(readOnly);
+
+        ShardContext.set(shard);
+        try {
+            return transaction.execute(status -> work.get());
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Wykonanie zapytania w każdej partycji i połączenie wyników.
+     *
+     * @param query zapytanie zwracające listę wyników z bieżącej partycji
+     * @return wyniki ze wszystkich partycji
+     */
+    public <R> List<R> inEachShard(Supplier<List<R>> query) {
+        List<R> results = new ArrayList<>();
+        for (int shard = 0; shard < count; shard++) {
+            results.addAll(inShard(shard, true, query));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,211 @@
+package net.stawrul.datasource;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Czasy wykonania zapytań SQL mierzone przez {@link StatementTimingDataSource}.
+ * <p>
+ * Dla każdej treści zapytania zliczana jest liczba wykonań oraz łączny i najdłuższy czas. Zapytania wykonywane dłużej
+ * niż próg są zapamiętywane - tylko najwolniejsze z nich (najwyżej capacity) - wraz z rodzajami i rozmiarami
+ * parametrów (bez wartości) oraz akcją kontrolera, która je wykonała ({@link StatementOrigin}).
+ */
+public class SlowQueryLog {
+
+    //maksymalna liczba różnych treści zapytań, dla których są zbierane statystyki
+    private static final int MAX_STATEMENTS = 1000;
+
+    final long thresholdNanos;
+    final int capacity;
+
+    private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+
+    //najwolniejsze zapytania - na szczycie kolejki najszybsze z nich (pierwsze do usunięcia)
+    private final PriorityQueue<SlowStatement> slowest =
+            new PriorityQueue<>(Comparator.comparingLong(SlowStatement::getNanos));
+
+    /**
+     * @param thresholdMillis próg czasu wykonania, powyżej którego zapytanie jest zapamiętywane
+     * @param capacity liczba zapamiętywanych najwolniejszych zapytań
+     */
+    public SlowQueryLog(long thresholdMillis, int capacity) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param nanos czas wykonania zapytania
+     * @return czy zapytanie trwające tyle czasu zostanie zapamiętane (np. czy warto pobrać jego plan wykonania)
+     */
+    public boolean isSlow(long nanos) {
+        if (nanos < thresholdNanos) {
+            return false;
+        }
+        synchronized (slowest) {
+            return slowest.size() < capacity || slowest.peek().nanos < nanos;
+        }
+    }
+
+    /**
+     * Zarejestrowanie wykonania zapytania.
+     *
+     * @param sql treść zapytania
+     * @param binds rodzaje parametrów zapytania, np. "(binary(16), integer)"
+     * @param nanos czas wykonania
+     * @param plan plan wykonania lub null, jeśli nie został pobrany
+     */
+    public void record(String sql, String binds, long nanos, String plan) {
+        StatementStats stats = statements.get(sql);
+        if (stats == null && statements.size() < MAX_STATEMENTS) {
+            stats = statements.computeIfAbsent(sql, StatementStats::new);
+        }
+        if (stats != null) {
+            stats.add(nanos);
+        }
+
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        String endpoint = StatementOrigin.current();
+        SlowStatement statement = new SlowStatement(sql, binds, nanos,
+                endpoint != null ? endpoint : "[" + Thread.currentThread().getName() + "]", plan);
+        synchronized (slowest) {
+            if (slowest.size() < capacity) {
+                slowest.add(statement);
+            } else if (slowest.peek().nanos < nanos) {
+                slowest.poll();
+                slowest.add(statement);
+            }
+        }
+    }
+
+    /**
+     * @return zapamiętane wolne zapytania, od najwolniejszego
+     */
+    public List<SlowStatement> getSlowest() {
+        List<SlowStatement> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        result.sort(Comparator.comparingLong(SlowStatement::getNanos).reversed());
+        return result;
+    }
+
+    /**
+     * @return statystyki zapytań, od zapytania o największym łącznym czasie wykonania
+     */
+    public List<StatementStats> getStatements() {
+        return statements.values().stream()
+                .sorted(Comparator.comparingLong(StatementStats::totalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos / 1_000_000;
+    }
+
+    /**
+     * Usunięcie zebranych statystyk i zapamiętanych zapytań.
+     */
+    public void reset() {
+        statements.clear();
+        synchronized (slowest) {
+            slowest.clear();
+        }
+    }
+
+    /**
+     * Statystyki wykonań zapytania o danej treści.
+     */
+    public static class StatementStats {
+
+        @Getter
+        final String sql;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        void add(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long totalNanos() {
+            return total.sum();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMillis() {
+            return total.sum() / 1e6;
+        }
+
+        public double getMeanMillis() {
+            long executions = count.sum();
+            return executions == 0 ? 0 : total.sum() / 1e6 / executions;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+    }
+
+    /**
+     * Wykonanie zapytania, które trwało dłużej niż próg.
+     */
+    public static class SlowStatement {
+
+        @Getter
+        final String sql;
+
+        //rodzaje i rozmiary parametrów (wartości nie są zapamiętywane)
+        @Getter
+        final String binds;
+
+        @Getter
+        final String endpoint;
+
+        @Getter
+        final Date executedAt = new Date();
+
+        //plan wykonania (bookshop.slow-queries.plans=true) lub null
+        @Getter
+        final String plan;
+
+        final long nanos;
+
+        SlowStatement(String sql, String binds, long nanos, String endpoint, String plan) {
+            this.sql = sql;
+            this.binds = binds;
+            this.nanos = nanos;
+            this.endpoint = endpoint;
+            this.plan = plan;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.stawrul.datasource;
+
+/**
+ * Akcja kontrolera (np. "POST /orders"), która wykonuje zapytania SQL w bieżącym wątku.
+ * <p>
+ * Ustawiana na czas obsługi żądania, jeśli włączono rejestrowanie wolnych zapytań ({@link SlowQueryLog}) - zapytania
+ * wykonywane poza obsługą żądania (np. przez wątki w tle) nie mają akcji.
+ */
+public final class StatementOrigin {
+
+    private static final ThreadLocal<String> ENDPOINT = new ThreadLocal<>();
+
+    private StatementOrigin() {
+    }
+
+    public static void set(String endpoint) {
+        ENDPOINT.set(endpoint);
+    }
+
+    public static void clear() {
+        ENDPOINT.remove();
+    }
+
+    /**
+     * @return akcja kontrolera lub null poza obsługą żądania
+     */
+    public static String current() {
+        return ENDPOINT.get();
+    }
+}
@@ -0,0 +1,259 @@
+package net.stawrul.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Źródło danych mierzące czas wykonania każdego zapytania SQL (na poziomie JDBC - również zapytań generowanych przez
+ * Hibernate) i przekazujące go do {@link SlowQueryLog}.
+ * <p>
+ * Czas zapytania zwracającego wyniki jest liczony do zamknięcia ResultSet, bo Derby wykonuje większość pracy podczas
+ * pobierania kolejnych wierszy. Opcjonalnie dla wolnych zapytań pobierany jest plan wykonania (statystyki Derby
+ * SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS) - wymaga to włączenia statystyk dla każdego połączenia, co spowalnia
+ * wszystkie zapytania, więc jest przeznaczone do diagnozowania problemu, a nie do stałego użycia.
+ */
+public class StatementTimingDataSource extends DelegatingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementTimingDataSource.class);
+
+    private static final String ENABLE_STATISTICS = "CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)";
+    private static final String GET_STATISTICS = "VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()";
+
+    final SlowQueryLog slowQueryLog;
+
+    //czy pobierać plany wykonania wolnych zapytań (wyłączane po pierwszym błędzie, np. dla bazy innej niż Derby)
+    private volatile boolean capturePlans;
+
+    /**
+     * @param target źródło danych, którego zapytania są mierzone
+     * @param slowQueryLog rejestr czasów zapytań
+     * @param capturePlans czy pobierać plany wykonania wolnych zapytań
+     */
+    public StatementTimingDataSource(DataSource target, SlowQueryLog slowQueryLog, boolean capturePlans) {
+        super(target);
+        this.slowQueryLog = slowQueryLog;
+        this.capturePlans = capturePlans;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StatementTimingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler);
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Połączenie zwracające mierzone zapytania.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private boolean statisticsEnabled;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean prepare = name.equals("prepareStatement") || name.equals("prepareCall");
+            if (!prepare && !name.equals("createStatement")) {
+                return StatementTimingDataSource.invoke(method, connection, args);
+            }
+
+            //statystyki są włączane dopiero przed pierwszym zapytaniem - połączenie może być pobierane leniwie
+            //(LazyConnectionDataSourceProxy przy rozdzieleniu odczytów i zapisów)
+            if (capturePlans && !statisticsEnabled) {
+                enableStatistics();
+            }
+            Statement statement = (Statement) StatementTimingDataSource.invoke(method, connection, args);
+            StatementHandler handler = new StatementHandler(statement, connection, prepare ? (String) args[0] : null);
+            Class<?> type = name.equals("prepareCall") ? CallableStatement.class
+                    : prepare ? PreparedStatement.class : Statement.class;
+            return proxy(type, handler);
+        }
+
+        private void enableStatistics() {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(ENABLE_STATISTICS);
+                statisticsEnabled = true;
+            } catch (SQLException e) {
+                log.warn("Query plans cannot be captured, disabling plan capture", e);
+                capturePlans = false;
+            }
+        }
+    }
+
+    /**
+     * Zapytanie (Statement, PreparedStatement lub CallableStatement), którego wykonania są mierzone.
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final Connection connection;
+        private final String preparedSql;
+
+        //rodzaje parametrów według numeru parametru oraz liczba wierszy wsadu (addBatch)
+        private final Map<Integer, String> binds = new TreeMap<>();
+        private int batchRows;
+
+        //zapytanie, którego wyniki są jeszcze pobierane (czas jest rejestrowany po zamknięciu ResultSet)
+        private String pendingSql;
+        private String pendingBinds;
+        private long pendingStart;
+
+        StatementHandler(Statement statement, Connection connection, String preparedSql) {
+            this.statement = statement;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                binds.put((Integer) args[0], shapeOf(name, args[1]));
+            } else if (name.equals("clearParameters")) {
+                binds.clear();
+            } else if (name.equals("addBatch")) {
+                batchRows++;
+            } else if (name.equals("clearBatch")) {
+                batchRows = 0;
+            } else if (name.equals("close")) {
+                finishPending();
+            }
+            if (!name.startsWith("execute")) {
+                return StatementTimingDataSource.invoke(method, statement, args);
+            }
+
+            finishPending();
+            String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 ? (String) args[0] : "";
+            String shape = bindShape(name);
+            long start = System.nanoTime();
+            Object result = StatementTimingDataSource.invoke(method, statement, args);
+            if (result instanceof ResultSet) {
+                pendingSql = sql;
+                pendingBinds = shape;
+                pendingStart = start;
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, this));
+            }
+            finish(sql, shape, System.nanoTime() - start);
+            return result;
+        }
+
+        private String bindShape(String executeMethod) {
+            StringJoiner shape = new StringJoiner(", ", "(", ")");
+            binds.values().forEach(shape::add);
+            boolean batch = executeMethod.endsWith("Batch");
+            String result = shape.toString() + (batch ? " x " + batchRows : "");
+            if (batch) {
+                batchRows = 0;
+            }
+            return result;
+        }
+
+        void finishPending() {
+            if (pendingSql != null) {
+                String sql = pendingSql;
+                pendingSql = null;
+                finish(sql, pendingBinds, System.nanoTime() - pendingStart);
+            }
+        }
+
+        private void finish(String sql, String shape, long nanos) {
+            String plan = capturePlans && slowQueryLog.isSlow(nanos) ? lastPlan() : null;
+            slowQueryLog.record(sql, shape, nanos, plan);
+        }
+
+        //plan wykonania ostatniego zapytania w tym połączeniu
+        private String lastPlan() {
+            try (Statement plan = connection.createStatement(); ResultSet result = plan.executeQuery(GET_STATISTICS)) {
+                return result.next() ? result.getString(1) : null;
+            } catch (SQLException e) {
+                log.debug("Query plan could not be captured", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Wyniki zapytania - zamknięcie kończy pomiar czasu zapytania.
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final StatementHandler statement;
+
+        ResultSetHandler(ResultSet resultSet, StatementHandler statement) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = StatementTimingDataSource.invoke(method, resultSet, args);
+            if (method.getName().equals("close")) {
+                statement.finishPending();
+            }
+            return result;
+        }
+    }
+
+    //rodzaj parametru, np. setInt -> "integer", setString -> "varchar(12)", setBytes -> "binary(16)"
+    private static String shapeOf(String setter, Object value) {
+        if (setter.equals("setNull") || value == null) {
+            return "null";
+        }
+        if (value instanceof String) {
+            return "varchar(" + ((String) value).length() + ")";
+        }
+        if (value instanceof byte[]) {
+            return "binary(" + ((byte[]) value).length + ")";
+        }
+        switch (setter) {
+            case "setInt":
+                return "integer";
+            case "setLong":
+                return "bigint";
+            case "setObject":
+                return value.getClass().getSimpleName().toLowerCase();
+            default:
+                return setter.substring(3).toLowerCase();
+        }
+    }
+}
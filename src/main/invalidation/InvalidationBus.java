@@ -0,0 +1,119 @@
+package net.stawrul.invalidation;
+
+import net.stawrul.services.events.EntityChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Magistrala unieważnień - przekazuje zmiany obiektów encyjnych między instancjami aplikacji korzystającymi z tej
+ * samej bazy danych.
+ * <p>
+ * Każda zatwierdzona zmiana ({@link EntityChangedEvent} - zapis produktu, zmiana stanu magazynu, złożenie zamówienia)
+ * jest wysyłana do pozostałych instancji jako komunikat {@link InvalidationMessage}. Instancja, która odbierze
+ * komunikat, publikuje zdalne zdarzenie {@link EntityChangedEvent}, na które reagują komponenty przechowujące dane
+ * w pamięci (np. migawki katalogu są przebudowywane, a lista produktów w trybie "hot" jest odświeżana).
+ * <p>
+ * Komunikaty każdej instancji są numerowane i wysyłane w kolejności numerów. Jeśli w numeracji wystąpi luka (komunikat
+ * nie dotarł lub nie został wysłany), odbiorca nie wie, które obiekty się zmieniły, więc publikuje zdarzenia o zmianie
+ * wszystkich obiektów każdej z klas. Komunikaty opóźnione (o numerze mniejszym niż ostatnio odebrany) są pomijane -
+ * zostały już objęte takim pełnym unieważnieniem.
+ */
+public class InvalidationBus implements ApplicationEventPublisherAware {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    final InvalidationTransport transport;
+
+    //identyfikator tej instancji - losowy przy każdym uruchomieniu, więc numeracja komunikatów zaczyna się od nowa
+    private final long node = new SecureRandom().nextLong();
+
+    //numer ostatnio wysłanego komunikatu - numer jest nadawany i komunikat wysyłany pod jedną blokadą, aby współbieżnie
+    //zatwierdzane zmiany nie wyprzedzały się nawzajem (odbiorca uznałby wcześniejszy numer za lukę)
+    private final Object sendLock = new Object();
+    private long version;
+
+    //instancja nadawcy -> numer ostatnio odebranego komunikatu (komunikaty są odbierane przez jeden wątek)
+    private final Map<Long, Long> lastVersions = new ConcurrentHashMap<>();
+
+    private ApplicationEventPublisher eventPublisher;
+
+    public InvalidationBus(InvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            transport.start(this::receive);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalidation transport could not be started", e);
+        }
+    }
+
+    /**
+     * Wysłanie zatwierdzonej zmiany do pozostałych instancji.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (event.isRemote() || event.getId() == null || !InvalidationMessage.isSupported(event.getEntityType())) {
+            return;
+        }
+        synchronized (sendLock) {
+            //numer jest pobierany również wtedy, gdy wysłanie się nie powiedzie - odbiorcy wykryją lukę w numeracji
+            InvalidationMessage message = new InvalidationMessage(node, ++version, event.getEntityType(),
+                    event.getId());
+            try {
+                transport.send(message.encode());
+            } catch (IOException e) {
+                log.warn("Invalidation of {} {} could not be sent", event.getEntityType().getSimpleName(),
+                        event.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Obsłużenie komunikatu odebranego przez transport.
+     *
+     * @param data odebrany komunikat
+     */
+    public void receive(byte[] data) {
+        InvalidationMessage message = InvalidationMessage.decode(data);
+        if (message == null || message.getNode() == node) {
+            return;
+        }
+        Long last = lastVersions.get(message.getNode());
+        if (last != null && message.getVersion() <= last) {
+            return;
+        }
+        lastVersions.put(message.getNode(), message.getVersion());
+
+        if (last != null && message.getVersion() > last + 1) {
+            log.warn("{} invalidation messages lost, invalidating all entities",
+                    message.getVersion() - last - 1);
+            InvalidationMessage.TYPES.forEach(type -> publish(new EntityChangedEvent(type, null, true)));
+        } else {
+            publish(new EntityChangedEvent(message.getEntityType(), message.getId(), true));
+        }
+    }
+
+    private void publish(EntityChangedEvent event) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.stawrul.invalidation;
+
+import lombok.Getter;
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.model.Order;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Komunikat o zmianie obiektu encyjnego przesyłany między instancjami aplikacji (34 bajty):
+ * <pre>
+ * format (1 bajt) | klasa encyjna (1 bajt) | instancja nadawcy (8 bajtów) | wersja (8 bajtów) | identyfikator (16 bajtów)
+ * </pre>
+ * Wersja jest kolejnym numerem komunikatu nadawcy - luka w numeracji oznacza, że część komunikatów nie dotarła.
+ */
+@Getter
+public class InvalidationMessage {
+
+    public static final int SIZE = 34;
+
+    private static final byte FORMAT = 1;
+
+    //klasy encyjne, których zmiany są przesyłane - kodem klasy jest jej pozycja na liście
+    public static final List<Class<?>> TYPES = Arrays.asList(Book.class, Film.class, CD.class, Order.class);
+
+    //instancja aplikacji, która wysłała komunikat
+    final long node;
+
+    final long version;
+
+    final Class<?> entityType;
+
+    final UUID id;
+
+    public InvalidationMessage(long node, long version, Class<?> entityType, UUID id) {
+        this.node = node;
+        this.version = version;
+        this.entityType = entityType;
+        this.id = id;
+    }
+
+    /**
+     * @param entityType klasa encyjna
+     * @return czy zmiany obiektów tej klasy mogą być przesyłane
+     */
+    public static boolean isSupported(Class<?> entityType) {
+        return TYPES.contains(entityType);
+    }
+
+    public byte[] encode() {
+        return ByteBuffer.allocate(SIZE)
+                .put(FORMAT)
+                .put((byte) TYPES.indexOf(entityType))
+                .putLong(node)
+                .putLong(version)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * @param data odebrane dane
+     * @return komunikat lub null, jeśli dane nie są komunikatem w obsługiwanym formacie
+     */
+    public static InvalidationMessage decode(byte[] data) {
+        if (data.length != SIZE || data[0] != FORMAT || data[1] < 0 || data[1] >= TYPES.size()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 2, SIZE - 2);
+        long node = buffer.getLong();
+        long version = buffer.getLong();
+        return new InvalidationMessage(node, version, TYPES.get(data[1]), new UUID(buffer.getLong(), buffer.getLong()));
+    }
+}
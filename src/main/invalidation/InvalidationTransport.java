@@ -0,0 +1,26 @@
+package net.stawrul.invalidation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Sposób przesyłania komunikatów {@link InvalidationMessage} do pozostałych instancji aplikacji.
+ * <p>
+ * Transport nie musi gwarantować dostarczenia ani kolejności komunikatów - utracone komunikaty są wykrywane przez
+ * {@link InvalidationBus} na podstawie numeracji. Komunikaty powinny być przekazywane odbiorcy przez jeden wątek.
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Rozpoczęcie odbierania komunikatów.
+     *
+     * @param receiver odbiorca komunikatów wysłanych przez inne instancje (może otrzymać również własne komunikaty)
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Wysłanie komunikatu do wszystkich pozostałych instancji.
+     */
+    void send(byte[] message) throws IOException;
+}
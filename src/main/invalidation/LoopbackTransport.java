@@ -0,0 +1,68 @@
+package net.stawrul.invalidation;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Transport łączący instancje aplikacji uruchomione w jednej maszynie wirtualnej (np. kilka kontekstów Springa
+ * w teście) - komunikat jest przekazywany pozostałym uczestnikom kanału o tej samej nazwie.
+ * <p>
+ * Każdy uczestnik odbiera komunikaty we własnym wątku, więc wysłanie komunikatu, podobnie jak w sieci, nie czeka na
+ * jego obsłużenie przez odbiorców.
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+    //nazwa kanału -> uczestnicy
+    private static final Map<String, Set<LoopbackTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    final String channel;
+
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "invalidation-loopback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Consumer<byte[]> receiver;
+
+    public LoopbackTransport(String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        CHANNELS.computeIfAbsent(channel, name -> ConcurrentHashMap.newKeySet()).add(this);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (LoopbackTransport member : CHANNELS.getOrDefault(channel, ConcurrentHashMap.newKeySet())) {
+            if (member != this) {
+                member.deliver(message.clone());
+            }
+        }
+    }
+
+    private void deliver(byte[] message) {
+        try {
+            delivery.execute(() -> receiver.accept(message));
+        } catch (RejectedExecutionException e) {
+            //uczestnik właśnie opuszcza kanał - komunikat jest tracony, jak w sieci
+        }
+    }
+
+    @Override
+    public void close() {
+        Set<LoopbackTransport> members = CHANNELS.get(channel);
+        if (members != null) {
+            members.remove(this);
+        }
+        delivery.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package net.stawrul.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Transport UDP multicast - każdy komunikat jest jednym datagramem wysyłanym do grupy, do której należą wszystkie
+ * instancje aplikacji (również uruchomione na jednej maszynie, bo gniazdo pozwala na współdzielenie portu).
+ * <p>
+ * Datagramy mogą zostać utracone lub przyjść w innej kolejności - obsługuje to {@link InvalidationBus}. Domyślny czas
+ * życia datagramu (TTL 1) ogranicza komunikaty do sieci lokalnej.
+ */
+public class MulticastTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MulticastTransport.class);
+
+    final InetAddress group;
+    final int port;
+    final int timeToLive;
+
+    private MulticastSocket socket;
+    private volatile boolean closed;
+
+    /**
+     * @param group adres grupy multicast (np. 239.255.42.99)
+     * @param port port UDP
+     * @param timeToLive maksymalna liczba routerów, przez które może przejść datagram
+     */
+    public MulticastTransport(InetAddress group, int port, int timeToLive) {
+        this.group = group;
+        this.port = port;
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) throws IOException {
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        socket.joinGroup(group);
+
+        Thread thread = new Thread(() -> receive(receiver), "invalidation-multicast");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void receive(Consumer<byte[]> receiver) {
+        //bufor większy od komunikatu - dłuższe datagramy (np. z innej aplikacji w tej samej grupie) są odrzucane przez
+        //InvalidationMessage.decode, a nie obcinane do poprawnej długości
+        DatagramPacket packet = new DatagramPacket(new byte[512], 512);
+        while (!closed) {
+            try {
+                packet.setLength(512);
+                socket.receive(packet);
+                receiver.accept(Arrays.copyOf(packet.getData(), packet.getLength()));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Invalidation message could not be received", e);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Invalidation message could not be processed", e);
+            }
+        }
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        socket.send(new DatagramPacket(message, message.length, group, port));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (socket != null) {
+            try {
+                socket.leaveGroup(group);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+}
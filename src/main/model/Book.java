@@ -11,16 +11,18 @@ import java.util.UUID;
  * Klasa encyjna reprezentująca towar w sklepie (książkę).
  */
 @Entity
+@Table(indexes = @Index(name = "book_title_idx", columnList = "title, id"))
 @EqualsAndHashCode(of = "id")
 @NamedQueries(value = {
         @NamedQuery(name = Book.FIND_ALL, query = "SELECT b FROM Book b")
 })
-public class Book {
+public class Book implements Product {
     public static final String FIND_ALL = "Book.FIND_ALL";
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = 16)
+    UUID id = TimeOrderedUuid.next();
 
     @Getter
     @Setter
@@ -29,4 +31,16 @@ public class Book {
     @Getter
     @Setter
     Integer amount;
+
+    public Book() {
+    }
+
+    /**
+     * Utworzenie odwołania do istniejącego produktu (np. przy odtwarzaniu zamówienia z archiwum).
+     *
+     * @param id identyfikator książki
+     */
+    public Book(UUID id) {
+        this.id = id;
+    }
 }
@@ -11,16 +11,22 @@ import java.util.UUID;
  * Klasa encyjna reprezentująca towar w sklepie (płytę CD).
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "cd_title_idx", columnList = "title, id"),
+        @Index(name = "cd_author_title_idx", columnList = "author, title, id"),
+        @Index(name = "cd_year_title_idx", columnList = "yearOfDistribution, title, id")
+})
 @EqualsAndHashCode(of = "id")
 @NamedQueries(value = {
         @NamedQuery(name = CD.FIND_ALL, query = "SELECT cd FROM CD cd")
 })
-public class CD {
+public class CD implements Product {
     public static final String FIND_ALL = "CD.FIND_ALL";
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = 16)
+    UUID id = TimeOrderedUuid.next();
 
     @Getter
     @Setter
@@ -37,4 +43,16 @@ public class CD {
     @Getter
     @Setter
     Integer amount;
+
+    public CD() {
+    }
+
+    /**
+     * Utworzenie odwołania do istniejącego produktu (np. przy odtwarzaniu zamówienia z archiwum).
+     *
+     * @param id identyfikator płyty
+     */
+    public CD(UUID id) {
+        this.id = id;
+    }
 }
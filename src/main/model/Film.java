@@ -11,16 +11,22 @@ import java.util.UUID;
  * Klasa encyjna reprezentujÄ…ca towar w sklepie (film).
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "film_title_idx", columnList = "title, id"),
+        @Index(name = "film_director_title_idx", columnList = "director, title, id"),
+        @Index(name = "film_duration_time_idx", columnList = "durationTime")
+})
 @EqualsAndHashCode(of = "id")
 @NamedQueries(value = {
         @NamedQuery(name = Film.FIND_ALL, query = "SELECT f FROM Film f")
 })
-public class Film {
+public class Film implements Product {
     public static final String FIND_ALL = "Film.FIND_ALL";
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = 16)
+    UUID id = TimeOrderedUuid.next();
 
     @Getter
     @Setter
@@ -37,4 +43,16 @@ public class Film {
     @Getter
     @Setter
     Integer amount;
+
+    public Film() {
+    }
+
+    /**
+     * Utworzenie odwołania do istniejącego produktu (np. przy odtwarzaniu zamówienia z archiwum).
+     *
+     * @param id identyfikator filmu
+     */
+    public Film(UUID id) {
+        this.id = id;
+    }
 }
@@ -1,5 +1,6 @@
 package net.stawrul.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
@@ -9,37 +10,101 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
-import static javax.persistence.CascadeType.MERGE;
+import static com.fasterxml.jackson.annotation.JsonProperty.Access.WRITE_ONLY;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
 /**
  * Klasa encyjna reprezentująca zamówienie w sklepie.
+ * <p>
+ * Zamówienie składa się z pozycji (produkt i liczba sztuk). Dla zgodności z wcześniejszym formatem żądań produkty
+ * można podać także w listach books, films i cds - każdy z nich staje się pozycją z jedną sztuką przy składaniu
+ * zamówienia (zob. {@link #foldProductLists()}).
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = @Index(name = "orders_creation_date_idx", columnList = "creationDate, id"))
 @EqualsAndHashCode(of = "id")
 public class Order {
 
     @Getter
     @Id
-    UUID id = UUID.randomUUID();
+    @Column(length = 16)
+    UUID id = TimeOrderedUuid.next();
 
     @Getter
-    @ManyToMany(cascade = {MERGE})
+    @ElementCollection
+    @CollectionTable(name = "order_lines", joinColumns = @JoinColumn(name = "order_id"),
+            indexes = @Index(name = "order_lines_order_idx", columnList = "order_id"))
+    List<OrderLine> lines = new ArrayList<>();
+
+    @Getter
+    @Transient
+    @JsonProperty(access = WRITE_ONLY)
     List<Book> books = new ArrayList<>();
 
     @Getter
-    @ManyToMany(cascade = {MERGE})
+    @Transient
+    @JsonProperty(access = WRITE_ONLY)
     List<Film> films = new ArrayList<>();
 
     @Getter
-    @ManyToMany(cascade = {MERGE})
+    @Transient
+    @JsonProperty(access = WRITE_ONLY)
     List<CD> cds = new ArrayList<>();
 
     @Getter
     @Temporal(TIMESTAMP)
     Date creationDate;
 
+    /**
+     * Przeniesienie produktów z list books, films i cds do pozycji zamówienia - każdy produkt staje się pozycją z
+     * jedną sztuką, a listy są opróżniane.
+     */
+    public void foldProductLists() {
+        books.forEach(book -> lines.add(new OrderLine(ProductType.BOOK, book.getId(), 1)));
+        films.forEach(film -> lines.add(new OrderLine(ProductType.FILM, film.getId(), 1)));
+        cds.forEach(cd -> lines.add(new OrderLine(ProductType.CD, cd.getId(), 1)));
+        books.clear();
+        films.clear();
+        cds.clear();
+    }
+
+    /**
+     * Utworzenie pustej części zamówienia - zamówienia o tym samym identyfikatorze, ale bez produktów.
+     * <p>
+     * Używane, gdy produkty zamówienia są zapisywane w różnych partycjach bazy danych.
+     *
+     * @return nowe zamówienie o identyfikatorze tego zamówienia
+     */
+    public Order emptyPart() {
+        Order part = new Order();
+        part.id = id;
+        return part;
+    }
+
+    /**
+     * Przejęcie daty złożenia zamówienia od zapisanej części zamówienia (zob. {@link #emptyPart()}) - zamówienie
+     * rozdzielone na części zapisane w różnych partycjach samo nie jest zapisywane w bazie danych.
+     *
+     * @param part zapisana część zamówienia
+     */
+    public void dateFrom(Order part) {
+        this.creationDate = part.creationDate;
+    }
+
+    /**
+     * Odtworzenie zamówienia zapisanego poza bazą danych (np. w archiwum zamówień).
+     *
+     * @param id identyfikator zamówienia
+     * @param creationDate data złożenia zamówienia
+     * @return zamówienie bez produktów - produkty należy dodać do pozycji zamówienia (lines)
+     */
+    public static Order restore(UUID id, Date creationDate) {
+        Order order = new Order();
+        order.id = id;
+        order.creationDate = creationDate;
+        return order;
+    }
+
     /**
      * Ustawienie pola creationDate na aktualny czas w chwili zapisu zamówienia
      * do bazy danych.
@@ -0,0 +1,49 @@
+package net.stawrul.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.util.UUID;
+
+/**
+ * Pozycja zamówienia - produkt i liczba zamówionych sztuk.
+ */
+@Embeddable
+@EqualsAndHashCode
+public class OrderLine {
+
+    @Getter
+    @Setter
+    @Column(name = "product_id", length = 16, nullable = false)
+    UUID productId;
+
+    @Getter
+    @Setter
+    @Enumerated(EnumType.STRING)
+    @Column(name = "product_type", length = 4, nullable = false)
+    ProductType type;
+
+    @Getter
+    @Setter
+    @Column(nullable = false)
+    int quantity = 1;
+
+    public OrderLine() {
+    }
+
+    /**
+     * @param type rodzaj produktu
+     * @param productId identyfikator produktu
+     * @param quantity liczba sztuk
+     */
+    public OrderLine(ProductType type, UUID productId, int quantity) {
+        this.type = type;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+}
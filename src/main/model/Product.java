@@ -0,0 +1,17 @@
+package net.stawrul.model;
+
+import java.util.UUID;
+
+/**
+ * Towar w sklepie (książka, film lub płyta CD) - operacje wspólne dla wszystkich rodzajów produktów.
+ */
+public interface Product {
+
+    UUID getId();
+
+    String getTitle();
+
+    Integer getAmount();
+
+    void setAmount(Integer amount);
+}
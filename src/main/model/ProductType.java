@@ -0,0 +1,23 @@
+package net.stawrul.model;
+
+/**
+ * Rodzaj produktu objętego pozycją zamówienia.
+ */
+public enum ProductType {
+    BOOK(Book.class),
+    FILM(Film.class),
+    CD(CD.class);
+
+    private final Class<? extends Product> entityClass;
+
+    ProductType(Class<? extends Product> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * @return klasa encyjna produktów tego rodzaju
+     */
+    public Class<? extends Product> getEntityClass() {
+        return entityClass;
+    }
+}
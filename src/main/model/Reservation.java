@@ -0,0 +1,55 @@
+package net.stawrul.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Rezerwacja produktów (koszyk) - po jednej sztuce każdego produktu, zatrzymanej na określony czas.
+ * <p>
+ * Rezerwacje są przechowywane tylko w pamięci - nie jest to klasa encyjna.
+ */
+@EqualsAndHashCode(of = "id")
+public class Reservation {
+
+    @Getter
+    UUID id = UUID.randomUUID();
+
+    @Getter
+    List<Book> books = new ArrayList<>();
+
+    @Getter
+    List<Film> films = new ArrayList<>();
+
+    @Getter
+    List<CD> cds = new ArrayList<>();
+
+    @Getter
+    Date expirationDate;
+
+    /**
+     * Ustawienie czasu wygaśnięcia rezerwacji.
+     *
+     * @param expirationDate czas, po którym zatrzymane produkty zostaną zwolnione
+     */
+    public void expireAt(Date expirationDate) {
+        this.expirationDate = expirationDate;
+    }
+
+    /**
+     * Utworzenie zamówienia obejmującego zarezerwowane produkty.
+     *
+     * @return nowe zamówienie
+     */
+    public Order toOrder() {
+        Order order = new Order();
+        books.forEach(book -> order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 1)));
+        films.forEach(film -> order.getLines().add(new OrderLine(ProductType.FILM, film.getId(), 1)));
+        cds.forEach(cd -> order.getLines().add(new OrderLine(ProductType.CD, cd.getId(), 1)));
+        return order;
+    }
+}
@@ -0,0 +1,36 @@
+package net.stawrul.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.UUID;
+
+/**
+ * Względna zmiana stanu magazynu produktu (np. dostawa lub odpis).
+ * <p>
+ * Nie jest to klasa encyjna - zmiany są wykonywane bezpośrednio na kolumnie amount (zob.
+ * {@link net.stawrul.services.StockService}).
+ */
+public class StockAdjustment {
+
+    @Getter
+    @Setter
+    UUID productId;
+
+    //liczba sztuk dodawanych do stanu magazynu (ujemna - odejmowanych)
+    @Getter
+    @Setter
+    int delta;
+
+    public StockAdjustment() {
+    }
+
+    /**
+     * @param productId identyfikator książki, filmu lub płyty
+     * @param delta zmiana liczby sztuk
+     */
+    public StockAdjustment(UUID productId, int delta) {
+        this.productId = productId;
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,50 @@
+package net.stawrul.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Licznik cząstkowy stanu magazynu produktu w trybie "hot" (zob. {@link net.stawrul.services.HotStock}).
+ * <p>
+ * Stan produktu jest sumą kolumny amount produktu i liczników wszystkich jego slotów. Zamówienia zmniejszają licznik
+ * losowo wybranego slotu, więc współbieżne zamówienia tego samego produktu blokują różne wiersze.
+ */
+@Entity
+@Table(name = "stock_slots")
+@IdClass(StockSlot.Key.class)
+public class StockSlot {
+
+    @Getter
+    @Setter
+    @Id
+    @Column(name = "product_id", length = 16)
+    UUID productId;
+
+    @Getter
+    @Setter
+    @Id
+    int slot;
+
+    @Getter
+    @Setter
+    @Column(nullable = false)
+    int amount;
+
+    /**
+     * Klucz główny slotu - identyfikator produktu i numer slotu.
+     */
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        UUID productId;
+        int slot;
+    }
+}
@@ -0,0 +1,44 @@
+package net.stawrul.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator identyfikatorów UUID uporządkowanych w czasie (układ wersji 7 z RFC 9562).
+ * <p>
+ * Pierwsze 48 bitów to czas utworzenia w milisekundach, kolejne 12 bitów (po numerze wersji) - licznik
+ * identyfikatorów utworzonych w tej samej milisekundzie, a pozostałe 62 bity (po wariancie) są losowe. Identyfikatory
+ * utworzone później są większe (także w zapisie binarnym), więc nowe wiersze trafiają na koniec indeksu klucza
+ * głównego zamiast w losowe miejsca drzewa.
+ * <p>
+ * Gdy licznik się wyczerpie (ponad 4096 identyfikatorów w jednej milisekundzie), generator przechodzi do kolejnej
+ * milisekundy, wyprzedzając nieznacznie zegar. Część losowa nie pochodzi z generatora kryptograficznego -
+ * identyfikatory nie mogą służyć jako sekrety.
+ */
+public final class TimeOrderedUuid {
+
+    private static final int COUNTER_BITS = 12;
+    private static final long VERSION = 7L << 12;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+
+    //ostatnio użyty czas (w milisekundach) przesunięty o COUNTER_BITS i powiększony o licznik
+    private static final AtomicLong last = new AtomicLong();
+
+    private TimeOrderedUuid() {
+    }
+
+    /**
+     * @return nowy identyfikator, większy od wszystkich identyfikatorów utworzonych wcześniej w tym procesie
+     */
+    public static UUID next() {
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        long state = last.updateAndGet(previous -> Math.max(now, previous + 1));
+
+        long timestamp = state >>> COUNTER_BITS;
+        long counter = state & ((1L << COUNTER_BITS) - 1);
+        long msb = (timestamp << 16) | VERSION | counter;
+        long lsb = VARIANT | (ThreadLocalRandom.current().nextLong() >>> 2);
+        return new UUID(msb, lsb);
+    }
+}
@@ -0,0 +1,190 @@
+package net.stawrul.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Ograniczenie liczby jednocześnie realizowanych zamówień (ang. admission control).
+ * <p>
+ * Limit współbieżności jest dostosowywany do obserwowanych czasów obsługi: dopóki czas obsługi zamówienia jest bliski
+ * czasowi bez obciążenia, limit rośnie; gdy baza danych zwalnia i czasy rosną, limit maleje proporcjonalnie. Żądania
+ * ponad limit czekają w krótkiej kolejce (ograniczonej liczbą miejsc i czasem oczekiwania), a po jej zapełnieniu są
+ * natychmiast odrzucane - klient otrzymuje odpowiedź 503 zamiast czekać na zajęty wątek serwera.
+ * <p>
+ * Limit jest dostosowywany tylko na podstawie czasów obsługi zamówień zakończonych powodzeniem (zob.
+ * {@link Permit#succeeded()}) - szybko odrzucane zamówienia (np. z powodu braku produktów) zaniżałyby czas bez
+ * obciążenia, a przez to również limit.
+ */
+@Component
+public class AdmissionLimiter {
+
+    //tolerowany wzrost czasu obsługi względem czasu bez obciążenia, zanim limit zacznie maleć
+    private static final double TOLERANCE = 2.0;
+    //udział nowej wartości w wygładzanym limicie
+    private static final double SMOOTHING = 0.2;
+    //tempo, w jakim czas bez obciążenia "zapomina" stare minimum
+    private static final double NO_LOAD_DRIFT = 0.001;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long maxWaitNanos;
+    private final int retryAfterSeconds;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double noLoadNanos = Double.MAX_VALUE;
+
+    @Autowired
+    public AdmissionLimiter(@Value("${bookshop.orders.admission.initial-limit:20}") int initialLimit,
+                            @Value("${bookshop.orders.admission.min-limit:2}") int minLimit,
+                            @Value("${bookshop.orders.admission.max-limit:200}") int maxLimit,
+                            @Value("${bookshop.orders.admission.queue-size:16}") int queueSize,
+                            @Value("${bookshop.orders.admission.max-wait-millis:50}") long maxWaitMillis,
+                            @Value("${bookshop.orders.admission.retry-after-seconds:1}") int retryAfterSeconds) {
+        this(initialLimit, minLimit, maxLimit, queueSize, maxWaitMillis, retryAfterSeconds, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock źródło czasu do pomiaru czasów obsługi (System.nanoTime(), w testach - czas kontrolowany)
+     */
+    public AdmissionLimiter(int initialLimit, int minLimit, int maxLimit, int queueSize, long maxWaitMillis,
+                            int retryAfterSeconds, LongSupplier nanoClock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueSize = queueSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Próba przyjęcia żądania do realizacji.
+     *
+     * @return pozwolenie, które należy zwolnić po obsłudze żądania, lub null, jeśli żądanie zostało odrzucone
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < limit) {
+                inFlight++;
+                return new Permit();
+            }
+            if (waiting >= queueSize) {
+                return null;
+            }
+
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= limit) {
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return new Permit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return czas (w sekundach), po którym klient odrzuconego żądania może ponowić próbę
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return bieżący limit jednocześnie realizowanych zamówień
+     */
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long elapsedNanos, boolean succeeded) {
+        lock.lock();
+        try {
+            inFlight--;
+            double previousLimit = limit;
+            //zerowy czas obsługi (niska rozdzielczość zegara) wyzerowałby czas bez obciążenia
+            if (succeeded && elapsedNanos > 0) {
+                adjustLimit(elapsedNanos);
+            }
+            if (limit > previousLimit) {
+                //wzrost limitu może zwolnić więcej niż jedno miejsce
+                released.signalAll();
+            } else {
+                released.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjustLimit(long elapsedNanos) {
+        if (elapsedNanos < noLoadNanos) {
+            noLoadNanos = elapsedNanos;
+        } else {
+            noLoadNanos += (elapsedNanos - noLoadNanos) * NO_LOAD_DRIFT;
+        }
+
+        //gradient < 1, gdy czas obsługi przekracza tolerowany czas bez obciążenia
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadNanos / elapsedNanos));
+        if (gradient >= 1.0 && (inFlight + 1) * 2 < limit) {
+            //limit nie jest wykorzystywany - nie ma podstaw do jego zwiększania
+            return;
+        }
+        //pierwiastek z limitu pozwala na niewielką kolejkę w bazie danych i stopniowy wzrost limitu
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    /**
+     * Pozwolenie na realizację żądania. Zwolnienie pozwolenia rejestruje czas obsługi żądania, jeśli zakończyło się
+     * ono powodzeniem.
+     */
+    public final class Permit {
+        private final long start = nanoClock.getAsLong();
+        private boolean succeeded;
+
+        private Permit() {
+        }
+
+        /**
+         * Oznaczenie żądania jako zrealizowanego - tylko czasy obsługi takich żądań wpływają na limit.
+         */
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        public void release() {
+            AdmissionLimiter.this.release(nanoClock.getAsLong() - start, succeeded);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.stawrul.services;
 
 import net.stawrul.model.Book;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -26,10 +27,11 @@ public class BooksService extends EntityService<Book> {
      *
      * @return lista książek
      */
+    @Transactional(readOnly = true)
     public List<Book> findAll() {
         //pobranie listy wszystkich książek za pomocą zapytania nazwanego (ang. named query)
         //zapytanie jest zdefiniowane w klasie Book
-        return em.createNamedQuery(Book.FIND_ALL, Book.class).getResultList();
+        return acrossShards(() -> detached(withSlots(em.createNamedQuery(Book.FIND_ALL, Book.class).getResultList())));
     }
 
 }
@@ -2,6 +2,7 @@ package net.stawrul.services;
 
 import net.stawrul.model.CD;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -26,10 +27,11 @@ public class CDsService extends EntityService<CD> {
      *
      * @return lista płyt
      */
+    @Transactional(readOnly = true)
     public List<CD> findAll() {
         //pobranie listy wszystkich płyt za pomocą zapytania nazwanego (ang. named query)
         //zapytanie jest zdefiniowane w klasie CD
-        return em.createNamedQuery(CD.FIND_ALL, CD.class).getResultList();
+        return acrossShards(() -> detached(withSlots(em.createNamedQuery(CD.FIND_ALL, CD.class).getResultList())));
     }
 
 }
@@ -0,0 +1,76 @@
+package net.stawrul.services;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Kryteria wyszukiwania produktów w katalogu (parametry żądania GET /books, /films i /CDs), np.:
+ * <pre>
+ * GET /CDs?author=X&amp;sort=title
+ * GET /films?director=Y&amp;maxDurationTime=120
+ * GET /books?inStock=true&amp;sort=title&amp;page=2&amp;size=50
+ * </pre>
+ * Pominięte kryteria nie ograniczają wyników. Filtry author, director, yearOfDistribution i maxDurationTime można
+ * stosować tylko do produktów, które mają odpowiedni atrybut (zob. {@link EntityService#findMatching(CatalogQuery)}).
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+public class CatalogQuery {
+
+    //jedyny obsługiwany porządek - rosnąco według tytułu
+    public static final String SORT_BY_TITLE = "title";
+
+    //liczba produktów na stronie, gdy podano tylko numer strony, i największa dozwolona liczba produktów na stronie
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    String author;
+
+    String director;
+
+    Integer yearOfDistribution;
+
+    //maksymalny czas trwania filmu (włącznie)
+    Integer maxDurationTime;
+
+    //true - tylko produkty dostępne w magazynie (amount > 0)
+    boolean inStock;
+
+    String sort;
+
+    //numer strony (od 0) i liczba produktów na stronie - bez obu parametrów zwracane są wszystkie pasujące produkty
+    Integer page;
+
+    Integer size;
+
+    /**
+     * @return true, jeśli żądanie nie zawiera żadnego kryterium (lista całego katalogu)
+     */
+    public boolean isEmpty() {
+        return author == null && director == null && yearOfDistribution == null && maxDurationTime == null
+                && !inStock && sort == null && page == null && size == null;
+    }
+
+    /**
+     * @return true, jeśli żądanie dotyczy jednej strony wyników
+     */
+    public boolean isPaged() {
+        return page != null || size != null;
+    }
+
+    /**
+     * @return indeks pierwszego produktu strony
+     */
+    public long firstResult() {
+        return page != null ? (long) page * pageSize() : 0;
+    }
+
+    /**
+     * @return liczba produktów na stronie
+     */
+    public int pageSize() {
+        return size != null ? size : DEFAULT_PAGE_SIZE;
+    }
+}
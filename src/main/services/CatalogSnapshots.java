@@ -0,0 +1,151 @@
+package net.stawrul.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.services.events.EntityChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Migawki katalogu - gotowe, zserializowane do formatu JSON (oraz skompresowane gzip) listy książek, filmów i płyt,
+ * a także te same listy w formacie NDJSON (jeden produkt w wierszu) dla odczytów strumieniowych.
+ * <p>
+ * Tryb włączany właściwością bookshop.catalog.snapshot.enabled=true. Migawka produktu danego typu jest budowana
+ * ponownie w tle po każdej zatwierdzonej zmianie produktu tego typu (zapis, złożenie zamówienia). Kolejne zmiany,
+ * które nastąpią w trakcie budowania, powodują jedno dodatkowe przebudowanie. Do czasu przebudowania klienci
+ * otrzymują poprzednią migawkę.
+ */
+@Component
+public class CatalogSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshots.class);
+
+    final boolean enabled;
+    final ObjectMapper objectMapper;
+
+    //źródła danych migawek: klasa produktu -> zapytanie o listę wszystkich produktów
+    private final Map<Class<?>, Supplier<List<?>>> sources = new HashMap<>();
+    private final Map<Class<?>, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Boolean> pending = new ConcurrentHashMap<>();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "catalog-snapshots");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CatalogSnapshots(@Value("${bookshop.catalog.snapshot.enabled:false}") boolean enabled,
+                            ObjectMapper objectMapper,
+                            BooksService booksService, FilmsService filmsService, CDsService cdsService) {
+        this.enabled = enabled;
+        this.objectMapper = objectMapper;
+        sources.put(Book.class, booksService::findAll);
+        sources.put(Film.class, filmsService::findAll);
+        sources.put(CD.class, cdsService::findAll);
+    }
+
+    /**
+     * @param productType klasa produktu (Book, Film lub CD)
+     * @return aktualna migawka lub null, jeśli tryb migawek jest wyłączony albo migawka nie została jeszcze zbudowana
+     */
+    public Snapshot get(Class<?> productType) {
+        return enabled ? snapshots.get(productType) : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildAll() {
+        if (enabled) {
+            sources.keySet().forEach(this::scheduleRebuild);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (enabled && sources.containsKey(event.getEntityType())) {
+            scheduleRebuild(event.getEntityType());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private void scheduleRebuild(Class<?> productType) {
+        //jeśli przebudowanie tego typu czeka już w kolejce, obejmie ono również bieżącą zmianę
+        if (pending.putIfAbsent(productType, Boolean.TRUE) == null) {
+            rebuilder.execute(() -> rebuild(productType));
+        }
+    }
+
+    private void rebuild(Class<?> productType) {
+        pending.remove(productType);
+        //migawka musi uwzględniać właśnie zatwierdzoną zmianę - odczyt z głównej bazy danych, a nie z repliki
+        ReadYourWrites.request();
+        try {
+            List<?> products = sources.get(productType).get();
+            byte[] json = objectMapper.writeValueAsBytes(products);
+            snapshots.put(productType, new Snapshot(json, gzip(json), ndjson(products)));
+        } catch (RuntimeException | IOException e) {
+            log.warn("Catalog snapshot of {} could not be rebuilt", productType.getSimpleName(), e);
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+
+    private byte[] ndjson(List<?> products) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (Object product : products) {
+            lines.write(objectMapper.writeValueAsBytes(product));
+            lines.write('\n');
+        }
+        return lines.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Zserializowana lista produktów jednego typu.
+     */
+    @Getter
+    public static class Snapshot {
+        //lista produktów w formacie JSON
+        final byte[] json;
+        //lista produktów w formacie JSON skompresowana algorytmem gzip
+        final byte[] gzippedJson;
+        //produkty w formacie NDJSON - każdy produkt jako obiekt JSON w osobnym wierszu
+        final byte[] ndjson;
+
+        Snapshot(byte[] json, byte[] gzippedJson, byte[] ndjson) {
+            this.json = json;
+            this.gzippedJson = gzippedJson;
+            this.ndjson = ndjson;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.stawrul.services;
+
+import net.stawrul.datasource.ReadYourWrites;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Łączenie współbieżnych odczytów produktów w jedno zapytanie.
+ * <p>
+ * Gdy wielu klientów jednocześnie pobiera te same dane (np. popularną książkę), zapytanie wykonuje tylko pierwszy
+ * z nich, a pozostali otrzymują jego wynik. Odczyty są łączone przed wywołaniem metody transakcyjnej serwisu -
+ * oczekujący nie rozpoczynają transakcji i nie zajmują połączeń z puli, a wspólny wynik jest odłączony od kontekstu
+ * trwałości wątku, który go odczytał (zob. {@link EntityService#detached(Object)}).
+ * <p>
+ * Nie są łączone odczyty wewnątrz trwającej transakcji (muszą korzystać z obiektów zarządzanych przez własny kontekst
+ * trwałości) ani odczyty wymagające najświeższych danych ({@link ReadYourWrites}) - trwający odczyt mógł rozpocząć się
+ * przed ostatnią zmianą lub korzystać z repliki bazy danych.
+ */
+@Component
+public class CoalescedReads {
+
+    private final SingleFlight<List<Object>, Object> reads = new SingleFlight<>();
+
+    /**
+     * Wyszukiwanie obiektu encyjnego na podstawie identyfikatora ({@link EntityService#find(UUID)}).
+     */
+    public <T> T find(EntityService<T> service, UUID id) {
+        return read(service.getEntityClass(), id, () -> service.find(id));
+    }
+
+    /**
+     * Wyszukiwanie produktów spełniających kryteria ({@link EntityService#findMatching(CatalogQuery)}).
+     */
+    public <T> List<T> findMatching(EntityService<T> service, CatalogQuery query) {
+        return read(service.getEntityClass(), query, () -> service.findMatching(query));
+    }
+
+    /**
+     * Wykonanie odczytu, który jest łączony z trwającymi współbieżnymi odczytami o tym samym kluczu.
+     *
+     * @param entityClass klasa odczytywanych obiektów encyjnych
+     * @param key klucz odczytu w obrębie klasy (np. identyfikator obiektu lub nazwa zapytania)
+     * @param read operacja odczytu (wywołanie metody transakcyjnej serwisu)
+     * @return wynik odczytu
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R read(Class<?> entityClass, Object key, Supplier<R> read) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() || ReadYourWrites.isRequested()) {
+            return read.get();
+        }
+        return (R) reads.execute(Arrays.asList(entityClass, key), read::get);
+    }
+}
@@ -1,10 +1,26 @@
 package net.stawrul.services;
 
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.Product;
+import net.stawrul.services.events.EntityChangedEvent;
+import net.stawrul.services.exceptions.InvalidQueryException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Klasa bazowa dla serwisów biznesowych realizujących logikę operacji na obiektach encyjnych.
@@ -16,11 +32,20 @@ import java.util.function.Function;
  *
  * @param <T> typ obiektów encyjnych, na których operuje serwis biznesowy
  */
-abstract public class EntityService<T> {
+abstract public class EntityService<T> implements ApplicationEventPublisherAware {
     final EntityManager em;
     private final Class<T> entityClass;
     private final Function<T, Object> idSupplier;
 
+    //Podział bazy danych na partycje - null, jeśli aplikacja korzysta z jednej bazy danych
+    Shards shards;
+
+    //Liczniki cząstkowe produktów w trybie "hot" - null poza kontekstem Springa (np. w testach jednostkowych)
+    HotStock hotStock;
+
+    //Publikowanie zdarzeń o zmianach obiektów encyjnych - null poza kontekstem Springa (np. w testach jednostkowych)
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * @param em instancja klasy EntityManager
      * @param entityClass klasa encyjna, na której mają być realizowane operacje
@@ -32,6 +57,29 @@ abstract public class EntityService<T> {
         this.idSupplier = idSupplier;
     }
 
+    /**
+     * @return klasa encyjna, na której operuje serwis
+     */
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    //Instancja klasy Shards jest dostarczana przez framework Spring tylko wtedy, gdy włączono podział na partycje
+    @Autowired(required = false)
+    public void setShards(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Autowired(required = false)
+    public void setHotStock(HotStock hotStock) {
+        this.hotStock = hotStock;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
     /**
      * Zapisanie stanu obiektu encyjnego w bazie danych.
      *
@@ -41,6 +89,34 @@ abstract public class EntityService<T> {
      */
     @Transactional
     public void save(T entity) {
+        UUID id = (UUID) idSupplier.apply(entity);
+        onShardOf(id, false, () -> {
+            if (hotStock != null && entity instanceof Product) {
+                //stan produktu w trybie "hot" jest rozdzielany między sloty
+                hotStock.spread((Product) entity);
+            }
+            persistOrMerge(entity);
+            publishChange(entityClass, id);
+            return null;
+        });
+    }
+
+    /**
+     * Opublikowanie zdarzenia {@link EntityChangedEvent} o zmianie obiektu encyjnego.
+     *
+     * @param entityType klasa encyjna zmienionego obiektu
+     * @param id identyfikator zmienionego obiektu
+     */
+    protected void publishChange(Class<?> entityType, UUID id) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new EntityChangedEvent(entityType, id));
+        }
+    }
+
+    /**
+     * Zapisanie stanu obiektu encyjnego w bieżącej transakcji (bez wyboru partycji).
+     */
+    protected void persistOrMerge(T entity) {
         if (em.find(entityClass, idSupplier.apply(entity)) == null) {
             //Jeśli identyfikator nie występuje w bazie danych, obiekt encyjny jest w stanie new
             em.persist(entity);
@@ -55,10 +131,188 @@ abstract public class EntityService<T> {
     /**
      * Wyszukiwanie obiektów encyjnych na podstawie identyfikatora.
      *
+     * Wyszukiwanie odbywa się w transakcji tylko do odczytu, więc może zostać obsłużone przez replikę bazy danych.
+     * Produkt odczytany poza transakcją modyfikującą dane jest odłączony od kontekstu trwałości (zob.
+     * {@link #detached(Object)}).
+     *
      * @param id identyfikator obiektu encyjnego
      * @return odnaleziony obiekt encyjny lub null jeśli nie znaleziono żadnego pasującego do parametru id
      */
+    @Transactional(readOnly = true)
     public T find(UUID id) {
-        return em.find(entityClass, id);
+        return onShardOf(id, true, () -> detached(withSlots(em.find(entityClass, id))));
+    }
+
+    /**
+     * Wyszukiwanie produktów spełniających kryteria (filtry, sortowanie według tytułu i stronicowanie).
+     *
+     * Kryteria są tłumaczone na zapytanie JPQL z parametrami, korzystające z indeksów zdefiniowanych w klasach
+     * encyjnych (np. indeks (director, title) dla filmów reżysera posortowanych według tytułu). Wyniki stronicowane
+     * są zawsze uporządkowane (według tytułu lub identyfikatora), aby kolejne strony nie powtarzały ani nie pomijały
+     * produktów. Przy podziale na partycje każda partycja zwraca produkty do końca żądanej strony, a strona jest
+     * wybierana po połączeniu i posortowaniu wyników w tej samej kolejności, której używa baza danych.
+     *
+     * @param query kryteria wyszukiwania
+     * @return produkty spełniające kryteria (wskazana strona wyników)
+     * @throws InvalidQueryException jeśli produkt nie ma filtrowanego atrybutu, porządek sortowania nie jest
+     *                               obsługiwany lub numer albo rozmiar strony jest nieprawidłowy
+     */
+    @Transactional(readOnly = true)
+    public List<T> findMatching(CatalogQuery query) {
+        boolean sorted = query.getSort() != null;
+        if (!Product.class.isAssignableFrom(entityClass)) {
+            throw new InvalidQueryException(entityClass.getSimpleName() + " is not a product");
+        }
+        if (sorted && !query.getSort().equals(CatalogQuery.SORT_BY_TITLE)) {
+            throw new InvalidQueryException("Unsupported sort order: " + query.getSort());
+        }
+        if (query.isPaged() && (query.getPage() != null && query.getPage() < 0 || query.pageSize() < 1
+                || query.pageSize() > CatalogQuery.MAX_PAGE_SIZE
+                || query.firstResult() + query.pageSize() > Integer.MAX_VALUE)) {
+            throw new InvalidQueryException("Invalid page " + query.getPage() + " of size " + query.getSize());
+        }
+
+        //warunki zapytania i wartości ich parametrów - wartości z żądania nigdy nie trafiają do treści zapytania
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        where(conditions, parameters, "author", "=", query.getAuthor());
+        where(conditions, parameters, "director", "=", query.getDirector());
+        where(conditions, parameters, "yearOfDistribution", "=", query.getYearOfDistribution());
+        where(conditions, parameters, "durationTime", "<=", query.getMaxDurationTime());
+        if (query.isInStock()) {
+            //stan produktu w trybie "hot" jest przechowywany w slotach, a kolumna amount produktu jest wyzerowana
+            conditions.add(hotStock != null && hotStock.hasHotProducts()
+                    ? "(e.amount > 0 OR e.id IN (SELECT s.productId FROM StockSlot s WHERE s.amount > 0))"
+                    : "e.amount > 0");
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT e FROM ").append(entityType().getName()).append(" e");
+        if (!conditions.isEmpty()) {
+            jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (sorted) {
+            jpql.append(" ORDER BY e.title, e.id");
+        } else if (query.isPaged()) {
+            jpql.append(" ORDER BY e.id");
+        }
+
+        int first = (int) query.firstResult();
+        List<T> results = acrossShards(() -> {
+            TypedQuery<T> typedQuery = em.createQuery(jpql.toString(), entityClass);
+            parameters.forEach(typedQuery::setParameter);
+            if (query.isPaged()) {
+                typedQuery.setFirstResult(shards == null ? first : 0)
+                        .setMaxResults(shards == null ? query.pageSize() : first + query.pageSize());
+            }
+            return detached(withSlots(typedQuery.getResultList()));
+        });
+        if (shards == null || (!sorted && !query.isPaged())) {
+            return results;
+        }
+
+        //połączenie wyników partycji - kolejność zgodna z ORDER BY w bazie danych (NULL na końcu, identyfikatory
+        //porównywane jako ciągi bajtów bez znaku)
+        Comparator<T> byId = Comparator.comparing(entity -> (UUID) idSupplier.apply(entity),
+                (a, b) -> a.getMostSignificantBits() != b.getMostSignificantBits()
+                        ? Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits())
+                        : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits()));
+        Comparator<T> order = sorted
+                ? Comparator.<T, String>comparing(entity -> ((Product) entity).getTitle(),
+                        Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(byId)
+                : byId;
+        List<T> merged = new ArrayList<>(results);
+        merged.sort(order);
+        if (!query.isPaged()) {
+            return merged;
+        }
+        return new ArrayList<>(merged.subList(Math.min(first, merged.size()),
+                Math.min(first + query.pageSize(), merged.size())));
+    }
+
+    //dodanie warunku dla atrybutu produktu, jeśli kryterium zostało podane
+    private void where(List<String> conditions, Map<String, Object> parameters, String attribute, String operator,
+                       Object value) {
+        if (value == null) {
+            return;
+        }
+        if (entityType().getAttributes().stream().noneMatch(a -> a.getName().equals(attribute))) {
+            throw new InvalidQueryException(entityClass.getSimpleName() + " has no attribute " + attribute);
+        }
+        conditions.add("e." + attribute + " " + operator + " :" + attribute);
+        parameters.put(attribute, value);
+    }
+
+    private EntityType<T> entityType() {
+        return em.getMetamodel().entity(entityClass);
+    }
+
+    /**
+     * Uwzględnienie sztuk ze slotów w stanie odczytanego produktu w trybie "hot" ({@link HotStock}).
+     *
+     * Musi być wywołane w transakcji partycji, z której odczytano obiekt.
+     */
+    protected T withSlots(T entity) {
+        if (hotStock != null && entity instanceof Product) {
+            hotStock.includeSlots((Product) entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Uwzględnienie sztuk ze slotów w stanie odczytanych produktów w trybie "hot" ({@link HotStock}).
+     *
+     * Musi być wywołane w transakcji partycji, z której odczytano obiekty.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<T> withSlots(List<T> entities) {
+        if (hotStock != null && Product.class.isAssignableFrom(entityClass)) {
+            hotStock.includeSlots((List<? extends Product>) entities);
+        }
+        return entities;
+    }
+
+    /**
+     * Odłączenie odczytanego produktu od kontekstu trwałości w transakcji tylko do odczytu.
+     *
+     * Kontekst trwałości żądania HTTP pozostaje otwarty po zakończeniu transakcji (open-in-view), a odczytany produkt
+     * może zostać przekazany innym wątkom (zob. {@link CoalescedReads}) - odłączony produkt nie jest związany
+     * z kontekstem trwałości wątku, który go odczytał, a stan uzupełniony o sztuki ze slotów nie zostanie zapisany
+     * w bazie danych. W transakcji modyfikującej dane produkt pozostaje zarządzany.
+     */
+    protected T detached(T entity) {
+        if (entity instanceof Product && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            em.detach(entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Odłączenie odczytanych produktów od kontekstu trwałości w transakcji tylko do odczytu (zob.
+     * {@link #detached(Object)}).
+     */
+    protected List<T> detached(List<T> entities) {
+        if (Product.class.isAssignableFrom(entityClass)
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            entities.forEach(em::detach);
+        }
+        return entities;
+    }
+
+    /**
+     * Wykonanie operacji w partycji, do której należy obiekt o podanym identyfikatorze.
+     *
+     * Bez podziału na partycje operacja jest wykonywana bezpośrednio, w bieżącej transakcji.
+     */
+    protected <R> R onShardOf(UUID id, boolean readOnly, Supplier<R> work) {
+        return shards == null ? work.get() : shards.inShard(shards.shardOf(id), readOnly, work);
+    }
+
+    /**
+     * Wykonanie zapytania we wszystkich partycjach i połączenie wyników.
+     *
+     * Bez podziału na partycje zapytanie jest wykonywane bezpośrednio, w bieżącej transakcji.
+     */
+    protected <R> List<R> acrossShards(Supplier<List<R>> query) {
+        return shards == null ? query.get() : shards.inEachShard(query);
     }
 }
@@ -2,6 +2,7 @@ package net.stawrul.services;
 
 import net.stawrul.model.Film;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -26,10 +27,11 @@ public class FilmsService extends EntityService<Film> {
      *
      * @return lista płyt
      */
+    @Transactional(readOnly = true)
     public List<Film> findAll() {
         //pobranie listy wszystkich filmów za pomocą zapytania nazwanego (ang. named query)
         //zapytanie jest zdefiniowane w klasie Film
-        return em.createNamedQuery(Film.FIND_ALL, Film.class).getResultList();
+        return acrossShards(() -> detached(withSlots(em.createNamedQuery(Film.FIND_ALL, Film.class).getResultList())));
     }
 
 }
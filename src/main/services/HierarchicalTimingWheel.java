@@ -0,0 +1,185 @@
+package net.stawrul.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchiczne koło czasowe (ang. hierarchical timing wheel) - harmonogram wygaśnięć o stałym koszcie dodania,
+ * anulowania i wygaśnięcia elementu, niezależnym od liczby zaplanowanych elementów.
+ * <p>
+ * Czas jest podzielony na takty o długości tickMillis. Poziom 0 ma wheelSize kubełków po jednym takcie, a każdy
+ * kolejny poziom - wheelSize kubełków obejmujących cały obrót poziomu niższego. Element trafia do najniższego poziomu,
+ * którego obrót obejmuje jego termin. Gdy wskazówka poziomu wyższego przechodzi do kolejnego kubełka, jego elementy
+ * są rozkładane do poziomów niższych, a elementy kubełka bieżącego taktu poziomu 0 wygasają.
+ * <p>
+ * Koło nie ma własnego wątku - należy regularnie wywoływać {@link #advance(long)}.
+ *
+ * @param <T> typ elementów
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long startMillis;
+
+    //liczba taktów obejmowanych przez jeden kubełek danego poziomu
+    private final long[] spans;
+    private final Bucket<T>[][] levels;
+
+    //numer ostatniego przetworzonego taktu
+    private long currentTick;
+
+    /**
+     * @param tickMillis długość taktu (dokładność wygaśnięć)
+     * @param wheelSize liczba kubełków na każdym poziomie
+     * @param levelCount liczba poziomów - zakres terminów to tickMillis * wheelSize ^ levelCount (dalsze terminy są
+     *                   przesuwane na najwyższym poziomie o kolejne obroty)
+     * @param nowMillis bieżący czas
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, int levelCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.startMillis = nowMillis;
+        this.spans = new long[levelCount];
+        //tablicy typu generycznego nie można utworzyć bezpośrednio - kubełki są wypełniane poniżej wyłącznie
+        //obiektami Bucket<T>, więc rzutowanie jest bezpieczne
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Bucket<T>[][] buckets = new Bucket[levelCount][wheelSize];
+        this.levels = buckets;
+        for (int level = 0; level < levelCount; level++) {
+            spans[level] = level == 0 ? 1 : spans[level - 1] * wheelSize;
+            for (int index = 0; index < wheelSize; index++) {
+                levels[level][index] = new Bucket<>();
+            }
+        }
+    }
+
+    /**
+     * Zaplanowanie wygaśnięcia elementu.
+     *
+     * @param item element
+     * @param expirationMillis czas wygaśnięcia
+     * @return uchwyt pozwalający anulować wygaśnięcie
+     */
+    public synchronized Timeout<T> schedule(T item, long expirationMillis) {
+        long deadlineTick = Math.max(currentTick + 1, (expirationMillis - startMillis + tickMillis - 1) / tickMillis);
+        Timeout<T> timeout = new Timeout<>(this, item, deadlineTick);
+        place(timeout);
+        return timeout;
+    }
+
+    /**
+     * Przesunięcie koła do podanej chwili.
+     *
+     * @param nowMillis bieżący czas
+     * @return elementy, których czas wygaśnięcia minął
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            //elementy kubełków wyższych poziomów, których zakres właśnie się rozpoczął, trafiają do niższych poziomów
+            for (int level = levels.length - 1; level > 0; level--) {
+                if (currentTick % spans[level] == 0) {
+                    Timeout<T> timeout = levels[level][index(level, currentTick)].detachAll();
+                    while (timeout != null) {
+                        Timeout<T> next = timeout.next;
+                        timeout.next = null;
+                        place(timeout);
+                        timeout = next;
+                    }
+                }
+            }
+
+            Timeout<T> timeout = levels[0][index(0, currentTick)].detachAll();
+            while (timeout != null) {
+                expired.add(timeout.item);
+                timeout = timeout.next;
+            }
+        }
+        return expired;
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < levels.length - 1 && delta >= spans[level] * wheelSize) {
+            level++;
+        }
+        levels[level][index(level, timeout.deadlineTick)].add(timeout);
+    }
+
+    private int index(int level, long tick) {
+        return (int) ((tick / spans[level]) % wheelSize);
+    }
+
+    /**
+     * Uchwyt zaplanowanego wygaśnięcia.
+     */
+    public static final class Timeout<T> {
+        private final Object wheel;
+        private final T item;
+        private final long deadlineTick;
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(Object wheel, T item, long deadlineTick) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Anulowanie wygaśnięcia (bez efektu, jeśli element już wygasł).
+         */
+        public void cancel() {
+            synchronized (wheel) {
+                if (bucket != null) {
+                    bucket.remove(this);
+                }
+            }
+        }
+    }
+
+    //kubełek - dwukierunkowa lista elementów, pozwalająca usunąć dowolny element w stałym czasie
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = null;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        //odłączenie wszystkich elementów kubełka; zwraca pierwszy element listy (połączonej polami next)
+        Timeout<T> detachAll() {
+            Timeout<T> first = head;
+            head = null;
+            for (Timeout<T> timeout = first; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+                timeout.previous = null;
+            }
+            return first;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package net.stawrul.services;
+
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.Product;
+import net.stawrul.model.ProductType;
+import net.stawrul.services.events.EntityChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Tryb "hot" dla produktów zamawianych przez wielu klientów jednocześnie (np. premiera książki).
+ * <p>
+ * Zamówienia zmniejszają stan produktu w jednym wierszu bazy danych, więc współbieżne zamówienia tego samego produktu
+ * czekają na siebie nawzajem (blokada wiersza jest utrzymywana do zatwierdzenia transakcji). W trybie "hot" stan
+ * produktu jest rozdzielany między N liczników cząstkowych (tabela stock_slots, zob.
+ * {@link net.stawrul.model.StockSlot}). Zamówienie zmniejsza licznik losowo wybranego slotu, w którym jest dość sztuk,
+ * więc do N zamówień tego samego produktu może być realizowanych równolegle. Dopiero gdy żaden slot nie wystarcza,
+ * zamówienie blokuje wszystkie sloty i wiersz produktu, a sztuki są pobierane z kilku z nich.
+ * <p>
+ * Stan produktu to suma kolumny amount i liczników slotów - odczyty produktu (find, findAll) zwracają tę sumę. Dostawy
+ * (PATCH /stock) zwiększają kolumnę amount produktu, a PUT z nowym stanem rozdziela go ponownie między sloty.
+ * <p>
+ * Tryb jest włączany dla wybranych produktów (POST /stock/hot/{id}) i wyłączany (DELETE /stock/hot/{id}), np.:
+ * <pre>
+ * bookshop.stock.hot.slots=16
+ * </pre>
+ */
+@Service
+public class HotStock implements ApplicationEventPublisherAware {
+
+    private static final Logger log = LoggerFactory.getLogger(HotStock.class);
+
+    //odczyt stanu slotów bez blokad i bez czekania na inne transakcje (uwzględnia niezatwierdzone zmiany)
+    private static final String PEEK = "SELECT slot, amount FROM stock_slots WHERE product_id = ? WITH UR";
+
+    //odczyt slotu z blokadą zwalnianą po zamknięciu kursora, jeśli stan slotu nie został zmieniony - warunkowy UPDATE
+    //utrzymywałby blokadę wiersza do końca transakcji również wtedy, gdy nie zmienił stanu
+    private static final String SLOT_FOR_UPDATE = "SELECT amount FROM stock_slots "
+            + "WHERE product_id = ? AND slot = ? FOR UPDATE OF amount";
+
+    //zablokowanie wszystkich slotów produktu do końca transakcji (bez zmiany stanu)
+    private static final String LOCK = "UPDATE stock_slots SET amount = amount WHERE product_id = ?";
+
+    private static final String SLOTS = "SELECT slot, amount FROM stock_slots WHERE product_id = ? ORDER BY slot";
+    private static final String SET = "UPDATE stock_slots SET amount = ? WHERE product_id = ? AND slot = ?";
+    private static final String INSERT = "INSERT INTO stock_slots (product_id, slot, amount) VALUES (?, ?, ?)";
+    private static final String DELETE = "DELETE FROM stock_slots WHERE product_id = ?";
+    private static final String TOTAL = "SELECT COALESCE(SUM(amount), 0) FROM stock_slots WHERE product_id = ?";
+    private static final String TOTALS = "SELECT product_id, SUM(amount) FROM stock_slots GROUP BY product_id";
+    private static final String COUNTS = "SELECT product_id, COUNT(*) FROM stock_slots GROUP BY product_id";
+    private static final String COUNT = "SELECT COUNT(*) FROM stock_slots WHERE product_id = ?";
+
+    final EntityManager em;
+    final JdbcTemplate jdbcTemplate;
+    final int defaultSlots;
+
+    //produkty w trybie "hot" -> liczba slotów (produkty poza trybem "hot" nie występują w mapie)
+    private final Map<UUID, Integer> slotCounts = new ConcurrentHashMap<>();
+
+    //Podział bazy danych na partycje - null, jeśli aplikacja korzysta z jednej bazy danych
+    Shards shards;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    public HotStock(EntityManager em, JdbcTemplate jdbcTemplate,
+                    @Value("${bookshop.stock.hot.slots:16}") int defaultSlots) {
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.defaultSlots = defaultSlots;
+    }
+
+    //Instancja klasy Shards jest dostarczana przez framework Spring tylko wtedy, gdy włączono podział na partycje
+    @Autowired(required = false)
+    public void setShards(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Odczytanie z bazy danych listy produktów w trybie "hot" (po uruchomieniu aplikacji, przed ponownym składaniem
+     * zamówień z dziennika - zob. {@link JournaledOrders#start()}).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        Supplier<List<Object[]>> query = () -> jdbcTemplate.query(COUNTS,
+                (rs, row) -> new Object[]{uuid(rs.getBytes(1)), rs.getInt(2)});
+        try {
+            Map<UUID, Integer> counts = new HashMap<>();
+            for (Object[] row : shards == null ? query.get() : shards.inEachShard(query)) {
+                counts.put((UUID) row[0], (Integer) row[1]);
+            }
+            //produkty, które pozostają w trybie "hot", nie znikają z mapy nawet na chwilę
+            slotCounts.keySet().retainAll(counts.keySet());
+            slotCounts.putAll(counts);
+        } catch (DataAccessException e) {
+            //np. schemat bazy danych nie jest tworzony przy starcie (profil "fast")
+            log.warn("Hot stock slots could not be loaded", e);
+        }
+    }
+
+    /**
+     * Odświeżenie trybu "hot" produktu zmienionego przez inną instancję aplikacji (zob.
+     * {@link net.stawrul.invalidation.InvalidationBus}) - tryb mógł zostać włączony lub wyłączony.
+     */
+    @EventListener
+    public void onRemoteChange(EntityChangedEvent event) {
+        if (!event.isRemote() || !Product.class.isAssignableFrom(event.getEntityType())) {
+            return;
+        }
+        if (event.getId() == null) {
+            load();
+            return;
+        }
+        UUID id = event.getId();
+        Supplier<Integer> query = () -> jdbcTemplate.queryForObject(COUNT, Integer.class, bytes(id));
+        try {
+            int count = shards == null ? query.get() : shards.inShard(shards.shardOf(id), true, query);
+            if (count > 0) {
+                slotCounts.put(id, count);
+            } else {
+                slotCounts.remove(id);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Hot stock slots of {} could not be refreshed", id, e);
+        }
+    }
+
+    /**
+     * @param productId identyfikator produktu
+     * @return czy produkt jest w trybie "hot"
+     */
+    public boolean isHot(UUID productId) {
+        return slotCounts.containsKey(productId);
+    }
+
+    /**
+     * Włączenie trybu "hot" - przeniesienie stanu produktu do slotów (po równo).
+     *
+     * @param productId identyfikator produktu
+     * @param slots liczba slotów lub 0 dla domyślnej liczby slotów (bookshop.stock.hot.slots)
+     * @return false, jeśli produkt nie istnieje
+     */
+    @Transactional
+    public boolean enable(UUID productId, int slots) {
+        int count = slots > 0 ? slots : defaultSlots;
+        return onShardOf(productId, () -> {
+            Product product = lockProduct(productId);
+            if (product == null) {
+                return false;
+            }
+            //sloty mogły zostać utworzone przez inną instancję aplikacji lub transakcję niezatwierdzoną przed odczytem
+            //mapy slotCounts - o trybie decydują wiersze w bazie danych, odczytywane pod blokadą wiersza produktu
+            int existing = jdbcTemplate.queryForObject(COUNT, Integer.class, bytes(productId));
+            if (existing > 0) {
+                afterCommit(() -> slotCounts.put(productId, existing));
+                return true;
+            }
+
+            int amount = amountOf(product);
+            List<Object[]> rows = new ArrayList<>();
+            for (int slot = 0; slot < count; slot++) {
+                rows.add(new Object[]{bytes(productId), slot, share(amount, count, slot)});
+            }
+            jdbcTemplate.batchUpdate(INSERT, rows);
+            product.setAmount(0);
+
+            afterCommit(() -> slotCounts.put(productId, count));
+            publishChange(product);
+            return true;
+        });
+    }
+
+    /**
+     * Wyłączenie trybu "hot" - przeniesienie sztuk ze slotów z powrotem do stanu produktu.
+     *
+     * @param productId identyfikator produktu
+     * @return false, jeśli produkt nie jest w trybie "hot"
+     */
+    @Transactional
+    public boolean disable(UUID productId) {
+        return onShardOf(productId, () -> {
+            if (!isHot(productId)) {
+                return false;
+            }
+
+            //sloty są blokowane przed wierszem produktu - w tej samej kolejności co przy pobieraniu sztuk
+            jdbcTemplate.update(LOCK, bytes(productId));
+            Product product = lockProduct(productId);
+            int slotsAmount = jdbcTemplate.queryForObject(TOTAL, Integer.class, bytes(productId));
+            jdbcTemplate.update(DELETE, bytes(productId));
+            product.setAmount(amountOf(product) + slotsAmount);
+
+            afterCommit(() -> slotCounts.remove(productId));
+            publishChange(product);
+            return true;
+        });
+    }
+
+    /**
+     * Pobranie sztuk produktu w trybie "hot" na potrzeby zamówienia (w bieżącej transakcji).
+     * <p>
+     * Najpierw odczytywany jest (bez blokad) stan slotów, a następnie próbowane są sloty z dostateczną liczbą sztuk,
+     * począwszy od losowego. Do końca transakcji blokowany jest tylko wiersz slotu, z którego pobrano sztuki. Jeśli żaden
+     * slot nie ma dość sztuk, blokowane są wszystkie sloty (zawsze w tej samej kolejności) i wiersz produktu, a sztuki są
+     * pobierane z kolejnych slotów i na końcu ze stanu produktu.
+     *
+     * @param product produkt (obiekt zarządzany przez bieżący kontekst trwałości)
+     * @param quantity liczba sztuk
+     * @return false, jeśli produkt nie ma tylu sztuk (stan nie jest wtedy zmieniany)
+     */
+    public boolean take(Product product, int quantity) {
+        byte[] id = bytes(product.getId());
+        List<Integer> candidates = jdbcTemplate.query(PEEK, (rs, row) -> rs.getInt(2) >= quantity ? rs.getInt(1) : -1,
+                id);
+        candidates.removeIf(slot -> slot < 0);
+        int start = candidates.isEmpty() ? 0 : ThreadLocalRandom.current().nextInt(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (takeFromSlot(id, candidates.get((start + i) % candidates.size()), quantity)) {
+                return true;
+            }
+        }
+
+        jdbcTemplate.update(LOCK, id);
+        em.refresh(product, LockModeType.PESSIMISTIC_WRITE);
+        List<int[]> slots = jdbcTemplate.query(SLOTS, (rs, row) -> new int[]{rs.getInt(1), rs.getInt(2)}, id);
+        int base = amountOf(product);
+        if (base + slots.stream().mapToInt(slot -> slot[1]).sum() < quantity) {
+            return false;
+        }
+
+        int remaining = quantity;
+        for (int[] slot : slots) {
+            int taken = Math.min(slot[1], remaining);
+            if (taken > 0) {
+                jdbcTemplate.update(SET, slot[1] - taken, id, slot[0]);
+                remaining -= taken;
+            }
+        }
+        product.setAmount(base - remaining);
+        return true;
+    }
+
+    /**
+     * Pobranie sztuk produktu w trybie "hot", którego rodzaj nie jest znany (np. zmniejszenie stanu przez PATCH /stock)
+     * - tak jak przy zamówieniu ({@link #take(Product, int)}).
+     *
+     * @param productId identyfikator produktu
+     * @param quantity liczba sztuk
+     * @return rodzaj produktu lub null, jeśli produkt nie istnieje albo nie ma tylu sztuk (stan nie jest wtedy zmieniany)
+     */
+    public ProductType take(UUID productId, int quantity) {
+        for (ProductType type : ProductType.values()) {
+            Product product = em.find(type.getEntityClass(), productId);
+            if (product != null) {
+                return take(product, quantity) ? type : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true, jeśli co najmniej jeden produkt jest w trybie "hot"
+     */
+    public boolean hasHotProducts() {
+        return !slotCounts.isEmpty();
+    }
+
+    /**
+     * @param productId identyfikator produktu
+     * @return łączna liczba sztuk w slotach produktu (w bieżącej partycji)
+     */
+    public int slotsAmount(UUID productId) {
+        return isHot(productId) ? jdbcTemplate.queryForObject(TOTAL, Integer.class, bytes(productId)) : 0;
+    }
+
+    /**
+     * Uwzględnienie sztuk ze slotów w stanie odczytanego produktu (w bieżącej transakcji).
+     * <p>
+     * Produkt w trybie "hot" jest odłączany od kontekstu trwałości, aby jego stan (suma) nie został zapisany w kolumnie
+     * amount.
+     *
+     * @param product odczytany produkt lub null
+     */
+    public void includeSlots(Product product) {
+        if (product != null && isHot(product.getId())) {
+            em.detach(product);
+            product.setAmount(amountOf(product) + slotsAmount(product.getId()));
+        }
+    }
+
+    /**
+     * Uwzględnienie sztuk ze slotów w stanie odczytanych produktów (jednym zapytaniem dla wszystkich produktów).
+     *
+     * @param products odczytane produkty
+     */
+    public void includeSlots(List<? extends Product> products) {
+        if (slotCounts.isEmpty()) {
+            return;
+        }
+        Map<UUID, Integer> totals = new HashMap<>();
+        jdbcTemplate.query(TOTALS, rs -> {
+            totals.put(uuid(rs.getBytes(1)), rs.getInt(2));
+        });
+        for (Product product : products) {
+            Integer slotsAmount = totals.get(product.getId());
+            if (slotsAmount != null) {
+                em.detach(product);
+                product.setAmount(amountOf(product) + slotsAmount);
+            }
+        }
+    }
+
+    /**
+     * Zapisanie nowego stanu produktu w trybie "hot" (np. PUT /books/{id}) - stan jest rozdzielany między sloty, a
+     * kolumna amount produktu jest zerowana.
+     *
+     * @param product zapisywany produkt
+     */
+    public void spread(Product product) {
+        if (!isHot(product.getId()) || product.getAmount() == null) {
+            return;
+        }
+        byte[] id = bytes(product.getId());
+        int count = slotCounts.get(product.getId());
+        jdbcTemplate.update(LOCK, id);
+        for (int slot = 0; slot < count; slot++) {
+            jdbcTemplate.update(SET, share(product.getAmount(), count, slot), id, slot);
+        }
+        product.setAmount(0);
+    }
+
+    private boolean takeFromSlot(byte[] id, int slot, int quantity) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SLOT_FOR_UPDATE,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE);
+            statement.setBytes(1, id);
+            statement.setInt(2, slot);
+            return statement;
+        }, rs -> {
+            if (!rs.next() || rs.getInt(1) < quantity) {
+                return false;
+            }
+            rs.updateInt(1, rs.getInt(1) - quantity);
+            rs.updateRow();
+            return true;
+        });
+    }
+
+    //produkt zablokowany do końca transakcji - rodzaj produktu nie jest znany, więc próbowane są kolejne klasy
+    private Product lockProduct(UUID productId) {
+        for (ProductType type : ProductType.values()) {
+            Product product = em.find(type.getEntityClass(), productId, LockModeType.PESSIMISTIC_WRITE);
+            if (product != null) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    private <R> R onShardOf(UUID productId, Supplier<R> work) {
+        return shards == null ? work.get() : shards.inShard(shards.shardOf(productId), false, work);
+    }
+
+    //zmiana listy produktów w trybie "hot" dopiero po zatwierdzeniu transakcji
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void publishChange(Product product) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new EntityChangedEvent(product.getClass(), product.getId()));
+        }
+    }
+
+    private static int amountOf(Product product) {
+        return product.getAmount() == null ? 0 : product.getAmount();
+    }
+
+    //liczba sztuk slotu przy podziale amount sztuk po równo między count slotów
+    private static int share(int amount, int count, int slot) {
+        return amount / count + (slot < amount % count ? 1 : 0);
+    }
+
+    //identyfikator w postaci zapisywanej w bazie danych (16 bajtów)
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID uuid(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
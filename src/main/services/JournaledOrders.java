@@ -0,0 +1,247 @@
+package net.stawrul.services;
+
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.model.Order;
+import net.stawrul.services.exceptions.DuplicateInRequestException;
+import net.stawrul.services.exceptions.FilmsAndCdsException;
+import net.stawrul.services.exceptions.InvalidOrderLineException;
+import net.stawrul.services.exceptions.InvalidQuantityException;
+import net.stawrul.services.exceptions.OutOfStockException;
+import net.stawrul.storage.OrderJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przyjmowanie zamówień przez dziennik ({@link OrderJournal}) i zapisywanie ich w bazie danych w tle.
+ * <p>
+ * Zamówienie jest przyjęte, gdy zostanie trwale zapisane w dzienniku. Osobny wątek składa przyjęte zamówienia
+ * ({@link OrdersService#placeOrder}) w kolejności przyjęcia i oznacza je w dzienniku jako zapisane albo odrzucone (np.
+ * z powodu braku produktu). Błędy bazy danych powodują ponawianie próby. Po ponownym uruchomieniu aplikacji
+ * zamówienia z dziennika, które nie zostały oznaczone, są składane ponownie - z pominięciem tych, które zdążyły zostać
+ * zapisane w bazie danych.
+ * <p>
+ * Liczba kolejnych prób jest ograniczona (bookshop.journal.max-attempts), aby jedno zamówienie, którego nie da się
+ * zapisać, nie wstrzymywało wszystkich następnych. Po wyczerpaniu prób zamówienie jest odkładane - pozostaje
+ * nieoznaczone w dzienniku i oczekujące, a wątek zapisuje kolejne zamówienia. Odłożone zamówienia są ponawiane (po
+ * jednej próbie) co bookshop.journal.parked-retry-millis, gdy kolejka jest pusta, oraz po ponownym uruchomieniu
+ * aplikacji.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty("bookshop.journal.enabled")
+public class JournaledOrders {
+
+    private static final Logger log = LoggerFactory.getLogger(JournaledOrders.class);
+
+    //liczba pamiętanych identyfikatorów odrzuconych zamówień
+    private static final int REJECTED_CAPACITY = 10_000;
+
+    final OrdersService ordersService;
+    final OrderJournal journal;
+    final long retryDelayMillis;
+    final int maxAttempts;
+    final long parkedRetryMillis;
+
+    private final BlockingQueue<Order> queue = new LinkedBlockingQueue<>();
+    private final Map<UUID, Order> pending = new ConcurrentHashMap<>();
+    private final Map<UUID, Boolean> rejected = Collections.synchronizedMap(
+            new LinkedHashMap<UUID, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                    return size() > REJECTED_CAPACITY;
+                }
+            });
+
+    //zamówienia odłożone po wyczerpaniu prób - używane tylko przez wątek zapisujący zamówienia
+    private final Queue<Order> parked = new ArrayDeque<>();
+    private long parkedRetryAt;
+
+    private final Thread applier;
+    private volatile boolean running = true;
+
+    public JournaledOrders(OrdersService ordersService, OrderJournal journal,
+                           @Value("${bookshop.journal.retry-delay-millis:1000}") long retryDelayMillis,
+                           @Value("${bookshop.journal.max-attempts:5}") int maxAttempts,
+                           @Value("${bookshop.journal.parked-retry-millis:60000}") long parkedRetryMillis) {
+        this.ordersService = ordersService;
+        this.journal = journal;
+        this.retryDelayMillis = retryDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.parkedRetryMillis = parkedRetryMillis;
+
+        for (Order order : journal.getReplayedOrders()) {
+            pending.put(order.getId(), order);
+            queue.add(order);
+        }
+        journal.getRejectedIds().forEach(id -> rejected.put(id, Boolean.TRUE));
+        if (!pending.isEmpty()) {
+            log.info("Replaying {} journaled orders", pending.size());
+        }
+
+        applier = new Thread(this::applyAll, "order-journal-applier");
+        applier.setDaemon(true);
+    }
+
+    /**
+     * Rozpoczęcie zapisywania zamówień w bazie danych po uruchomieniu aplikacji - po odczytaniu listy produktów w trybie
+     * "hot" ({@link HotStock#load()}). Wcześniej ponownie składane zamówienie produktu w trybie "hot" korzystałoby tylko
+     * ze stanu w kolumnie amount (zwykle zerowego) i zostałoby odrzucone.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @org.springframework.core.annotation.Order(Ordered.LOWEST_PRECEDENCE)
+    public void start() {
+        applier.start();
+    }
+
+    /**
+     * Przyjęcie zamówienia. Metoda kończy się po trwałym zapisaniu zamówienia w dzienniku. Zamówienie z nieprawidłową
+     * pozycją nie jest zapisywane w dzienniku (wyjątek InvalidOrderLineException lub InvalidQuantityException).
+     *
+     * @param order zamówienie
+     */
+    public void accept(Order order) throws IOException {
+        //w dzienniku zapisywane są tylko pozycje zamówienia
+        order.foldProductLists();
+        OrdersService.checkLines(order);
+        pending.put(order.getId(), order);
+        try {
+            journal.accepted(order);
+        } catch (IOException | RuntimeException e) {
+            pending.remove(order.getId());
+            throw e;
+        }
+        queue.add(order);
+    }
+
+    /**
+     * @param id identyfikator zamówienia
+     * @return zamówienie przyjęte, ale jeszcze nie zapisane w bazie danych (również odłożone), lub null
+     */
+    public Order findPending(UUID id) {
+        return pending.get(id);
+    }
+
+    /**
+     * @param id identyfikator zamówienia
+     * @return czy przyjęte zamówienie zostało odrzucone przy zapisie do bazy danych
+     */
+    public boolean isRejected(UUID id) {
+        return rejected.containsKey(id);
+    }
+
+    /**
+     * @return liczba zamówień oczekujących na zapisanie w bazie danych
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        applier.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void applyAll() {
+        while (running) {
+            try {
+                Order order = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (order != null) {
+                    apply(order, maxAttempts);
+                } else if (!parked.isEmpty() && System.currentTimeMillis() >= parkedRetryAt) {
+                    retryParked();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void retryParked() throws InterruptedException {
+        List<Order> orders = new ArrayList<>(parked);
+        parked.clear();
+        for (Order order : orders) {
+            apply(order, 1);
+        }
+    }
+
+    private void apply(Order order, int attempts) throws InterruptedException {
+        for (int attempt = 1; running; attempt++) {
+            try {
+                //zamówienie mogło zostać zapisane w bazie danych przed awarią, ale bez znacznika w dzienniku
+                if (!isPlaced(order)) {
+                    ordersService.placeOrder(order);
+                }
+                journal.applied(order.getId());
+                pending.remove(order.getId());
+                return;
+            } catch (OutOfStockException | DuplicateInRequestException | FilmsAndCdsException
+                    | InvalidQuantityException | InvalidOrderLineException | IllegalArgumentException e) {
+                //zamówienie nie może zostać zrealizowane (np. brak produktu lub nieistniejący produkt)
+                reject(order);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= attempts) {
+                    log.error("Journaled order {} could not be applied after {} attempts, parking it",
+                            order.getId(), attempt, e);
+                    park(order);
+                    return;
+                }
+                log.warn("Journaled order {} could not be applied, retrying", order.getId(), e);
+                Thread.sleep(retryDelayMillis);
+            }
+        }
+    }
+
+    //sprawdzenie w głównej bazie danych - replika może jeszcze nie zawierać zamówienia zapisanego przed awarią, a jego
+    //ponowne złożenie zmniejszyłoby stan magazynu drugi raz
+    private boolean isPlaced(Order order) {
+        ReadYourWrites.request();
+        try {
+            return ordersService.find(order.getId()) != null;
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+
+    private void park(Order order) {
+        parked.add(order);
+        parkedRetryAt = System.currentTimeMillis() + parkedRetryMillis;
+    }
+
+    private void reject(Order order) throws InterruptedException {
+        while (running) {
+            try {
+                journal.rejected(order.getId());
+                rejected.put(order.getId(), Boolean.TRUE);
+                pending.remove(order.getId());
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Journaled order {} could not be marked as rejected, retrying", order.getId(), e);
+                Thread.sleep(retryDelayMillis);
+            }
+        }
+    }
+}
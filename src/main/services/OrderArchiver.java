@@ -0,0 +1,75 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Order;
+import net.stawrul.storage.OrderArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Okresowe przenoszenie starych zamówień z bazy danych do archiwum ({@link OrderArchive}).
+ * <p>
+ * Zamówienia są przenoszone partiami: partia jest najpierw trwale zapisywana w archiwum, a dopiero potem usuwana z
+ * bazy danych. Przerwanie pracy pomiędzy tymi krokami powoduje jedynie ponowne zarchiwizowanie tych samych zamówień.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty("bookshop.archive.enabled")
+public class OrderArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiver.class);
+
+    final OrdersService ordersService;
+    final OrderArchive archive;
+    final long maxAgeMillis;
+    final int batchSize;
+
+    public OrderArchiver(OrdersService ordersService, OrderArchive archive,
+                         @Value("${bookshop.archive.max-age-days:365}") long maxAgeDays,
+                         @Value("${bookshop.archive.batch-size:500}") int batchSize) {
+        this.ordersService = ordersService;
+        this.archive = archive;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(maxAgeDays);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Zarchiwizowanie wszystkich zamówień starszych niż bookshop.archive.max-age-days.
+     *
+     * @return liczba zarchiwizowanych zamówień
+     */
+    @Scheduled(initialDelayString = "${bookshop.archive.interval-millis:3600000}",
+            fixedDelayString = "${bookshop.archive.interval-millis:3600000}")
+    public int archiveOldOrders() {
+        Date before = new Date(System.currentTimeMillis() - maxAgeMillis);
+        int archived = 0;
+        try {
+            List<Order> batch;
+            do {
+                batch = ordersService.findPlacedBefore(before, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                archive.append(batch);
+                ordersService.remove(batch.stream().map(Order::getId).collect(Collectors.toList()));
+                archived += batch.size();
+            } while (batch.size() == batchSize);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Archiving orders placed before {} failed", before, e);
+        }
+        if (archived > 0) {
+            log.info("Archived {} orders placed before {}", archived, before);
+        }
+        return archived;
+    }
+}
@@ -0,0 +1,130 @@
+package net.stawrul.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.stawrul.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Pamięć podręczna złożonych zamówień - gotowe, zserializowane do formatu JSON zamówienia według identyfikatora.
+ * <p>
+ * Złożone zamówienie nie jest już zmieniane (również po przeniesieniu do archiwum ma tę samą postać), więc raz
+ * zapisana kopia nigdy się nie dezaktualizuje i nie wymaga unieważniania. Zamówienie trafia do pamięci po zatwierdzeniu
+ * transakcji, w której zostało złożone, a zamówienia złożone wcześniej (lub przez inną instancję aplikacji) - po
+ * pierwszym odczycie z bazy danych. Liczba zamówień jest ograniczona (bookshop.orders.cache.size, 0 wyłącza pamięć) -
+ * po jej przekroczeniu usuwane jest zamówienie, które najdłużej nie było odczytywane.
+ * <p>
+ * Zamówienia są rozdzielane według identyfikatora między segmenty z osobnymi blokadami i osobnymi limitami, więc
+ * współbieżne odczyty różnych zamówień rzadko na siebie czekają. Kolejność odczytów jest śledzona w obrębie segmentu -
+ * usuwane jest zamówienie najdawniej odczytane w swoim segmencie (w przybliżeniu najdawniej odczytane w ogóle).
+ */
+@Component
+public class OrderCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderCache.class);
+
+    //maksymalna liczba segmentów i najmniejszy limit segmentu - mała pamięć (np. w testach) ma jeden segment
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    final ObjectMapper objectMapper;
+    final int capacity;
+
+    private final Segment[] segments;
+
+    public OrderCache(ObjectMapper objectMapper, @Value("${bookshop.orders.cache.size:10000}") int capacity) {
+        this.objectMapper = objectMapper;
+        this.capacity = capacity;
+
+        int count = Math.max(1, Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_CAPACITY));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param id identyfikator zamówienia
+     * @return zamówienie w formacie JSON lub null, jeśli nie ma go w pamięci
+     */
+    public byte[] get(UUID id) {
+        if (capacity == 0) {
+            return null;
+        }
+        Segment segment = segmentOf(id);
+        synchronized (segment) {
+            return segment.get(id);
+        }
+    }
+
+    /**
+     * Zapisanie zamówienia odczytanego z bazy danych lub z archiwum.
+     *
+     * @param order złożone zamówienie (z pozycjami)
+     */
+    public void put(Order order) {
+        if (capacity == 0) {
+            return;
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(order);
+            Segment segment = segmentOf(order.getId());
+            synchronized (segment) {
+                segment.put(order.getId(), json);
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("Order {} could not be cached", order.getId(), e);
+        }
+    }
+
+    /**
+     * Zapisanie składanego zamówienia po zatwierdzeniu bieżącej transakcji (zamówienie wycofane nie trafia do pamięci).
+     *
+     * @param order składane zamówienie
+     */
+    public void putAfterCommit(Order order) {
+        if (capacity == 0) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(order);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                put(order);
+            }
+        });
+    }
+
+    private Segment segmentOf(UUID id) {
+        int hash = id.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    //identyfikator zamówienia -> zamówienie w formacie JSON, w kolejności od najdawniej odczytanego (dostęp pod blokadą
+    //segmentu - odczyt zmienia kolejność)
+    private static class Segment extends LinkedHashMap<UUID, byte[]> {
+        final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, byte[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
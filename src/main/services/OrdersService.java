@@ -1,16 +1,32 @@
 package net.stawrul.services;
 
-import net.stawrul.model.Book;
-import net.stawrul.model.CD;
-import net.stawrul.model.Film;
 import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.Product;
+import net.stawrul.model.ProductType;
 import net.stawrul.services.exceptions.*;
+import net.stawrul.storage.OrderArchive;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 
 /**
  * Komponent (serwis) biznesowy do realizacji operacji na zamówieniach.
@@ -18,6 +34,25 @@ import java.util.List;
 @Service
 public class OrdersService extends EntityService<Order> {
 
+    //liczba wierszy pobieranych z bazy danych naraz przy eksporcie pozycji zamówień
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    //zmniejszenie stanu produktu o liczbę sztuk pozycji tylko wtedy, gdy wystarczy sztuk (:required to liczba sztuk
+    //pozycji powiększona o sztuki zatrzymane przez rezerwacje innych klientów)
+    private static final String TAKE = "UPDATE %s p SET p.amount = p.amount - :quantity "
+            + "WHERE p.id = :id AND p.amount >= :required";
+
+    //zwrócenie sztuk przy wycofywaniu części zamówienia (bez warunku - stan sprzed zamówienia był poprawny)
+    private static final String RETURN = "UPDATE %s p SET p.amount = p.amount + :quantity WHERE p.id = :id";
+
+    //Archiwum starych zamówień - null, jeśli archiwizacja jest wyłączona
+    OrderArchive archive;
+
+    //Sztuki produktów zatrzymane przez rezerwacje - null poza kontekstem Springa (np. w testach jednostkowych)
+    StockHolds stockHolds;
+
+    //Złożone zamówienia w formacie JSON - null poza kontekstem Springa (np. w testach jednostkowych)
+    OrderCache orderCache;
 
     //Instancja klasy EntityManger zostanie dostarczona przez framework Spring
     //(wstrzykiwanie zależności przez konstruktor).
@@ -28,117 +63,396 @@ public class OrdersService extends EntityService<Order> {
         super(em, Order.class, Order::getId);
     }
 
+    //Instancja klasy OrderArchive jest dostarczana przez framework Spring tylko wtedy, gdy włączono archiwizację
+    @Autowired(required = false)
+    public void setArchive(OrderArchive archive) {
+        this.archive = archive;
+    }
+
+    @Autowired(required = false)
+    public void setStockHolds(StockHolds stockHolds) {
+        this.stockHolds = stockHolds;
+    }
+
+    @Autowired(required = false)
+    public void setOrderCache(OrderCache orderCache) {
+        this.orderCache = orderCache;
+    }
+
     /**
-     * Pobranie wszystkich zamówień z bazy danych.
+     * Pobranie wszystkich zamówień z bazy danych (bez zamówień przeniesionych do archiwum).
      *
      * @return lista zamówień
      */
+    @Transactional(readOnly = true)
     public List<Order> findAll() {
-        return em.createQuery("SELECT o FROM Order o", Order.class).getResultList();
+        if (shards == null) {
+            return em.createQuery("SELECT o FROM Order o", Order.class).getResultList();
+        }
+        return mergeParts(shards.inEachShard(() -> {
+            List<Order> parts = em.createQuery("SELECT o FROM Order o", Order.class).getResultList();
+            parts.forEach(OrdersService::initialize);
+            return parts;
+        }));
+    }
+
+    /**
+     * Odbiorca pozycji zamówień eksportowanych przez {@link #exportLines(Date, LineConsumer)}.
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(UUID orderId, Date creationDate, OrderLine line) throws IOException;
+    }
+
+    /**
+     * Przekazanie odbiorcy wszystkich pozycji zamówień złożonych od podanej chwili (bez zamówień przeniesionych do
+     * archiwum), w kolejności daty złożenia zamówienia.
+     * <p>
+     * Pozycje są odczytywane jednym zapytaniem z kursorem przewijanym do przodu i przekazywane odbiorcy w trakcie
+     * odczytu - zapytanie zwraca tylko wartości kolumn (bez obiektów encyjnych w kontekście trwałości), więc zużycie
+     * pamięci nie zależy od liczby zamówień. Przy podziale na partycje pozycje są odczytywane kolejno z każdej
+     * partycji (kolejność daty obowiązuje w ramach partycji).
+     *
+     * @param since najwcześniejsza data złożenia zamówienia
+     * @param consumer odbiorca pozycji (np. zapisujący je w odpowiedzi HTTP)
+     */
+    @Transactional(readOnly = true)
+    public void exportLines(Date since, LineConsumer consumer) throws IOException {
+        if (shards == null) {
+            scrollLines(since, consumer);
+            return;
+        }
+        try {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                shards.inShard(shard, true, () -> {
+                    try {
+                        scrollLines(since, consumer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void scrollLines(Date since, LineConsumer consumer) throws IOException {
+        ScrollableResults rows = em.createQuery("SELECT o.id, o.creationDate, l.type, l.productId, l.quantity "
+                + "FROM Order o JOIN o.lines l WHERE o.creationDate >= :since ORDER BY o.creationDate, o.id")
+                .setParameter("since", since)
+                .unwrap(org.hibernate.Query.class)
+                .setReadOnly(true)
+                .setFetchSize(EXPORT_FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                consumer.accept((UUID) row[0], (Date) row[1],
+                        new OrderLine((ProductType) row[2], (UUID) row[3], (Integer) row[4]));
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    /**
+     * Wyszukanie zamówienia na podstawie identyfikatora.
+     * <p>
+     * Przy podziale bazy danych na partycje zamówienie jest składane z części zapisanych w poszczególnych partycjach.
+     * Zamówienie, którego nie ma w bazie danych, jest wyszukiwane w archiwum (jeśli archiwizacja jest włączona).
+     *
+     * @param id identyfikator zamówienia
+     * @return odnalezione zamówienie lub null
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Order find(UUID id) {
+        Order order = shards == null ? super.find(id) : findParts(id);
+        if (order == null && archive != null) {
+            order = archive.find(id);
+        }
+        return order;
+    }
+
+    private Order findParts(UUID id) {
+        List<Order> merged = mergeParts(shards.inEachShard(() -> {
+            Order part = em.find(Order.class, id);
+            return part == null ? Collections.<Order>emptyList() : Collections.singletonList(initialize(part));
+        }));
+        return merged.isEmpty() ? null : merged.get(0);
+    }
+
+    /**
+     * Pobranie najstarszych zamówień złożonych przed podaną datą (np. w celu ich zarchiwizowania).
+     *
+     * @param date data graniczna
+     * @param limit maksymalna liczba zamówień
+     * @return zamówienia wraz z produktami, od najstarszego
+     */
+    @Transactional(readOnly = true)
+    public List<Order> findPlacedBefore(Date date, int limit) {
+        //przy podziale na partycje części jednego zamówienia mogą mieć różne daty zapisu - zamówienia są wybierane
+        //po identyfikatorach, a następnie odczytywane w całości
+        List<UUID> ids = acrossShards(() -> em.createQuery(
+                "SELECT o.id FROM Order o WHERE o.creationDate < :date ORDER BY o.creationDate", UUID.class)
+                .setParameter("date", date)
+                .setMaxResults(limit)
+                .getResultList());
+
+        List<Order> orders = new ArrayList<>();
+        for (UUID id : new LinkedHashSet<>(ids)) {
+            Order order = shards == null ? em.find(Order.class, id) : findParts(id);
+            if (order != null && orders.size() < limit) {
+                orders.add(initialize(order));
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Usunięcie zamówień z bazy danych (np. po ich zarchiwizowaniu). Stan magazynu nie jest zmieniany.
+     *
+     * @param ids identyfikatory zamówień
+     */
+    @Transactional
+    public void remove(Collection<UUID> ids) {
+        if (shards == null) {
+            removeLocal(ids);
+            return;
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.inShard(shard, false, () -> {
+                removeLocal(ids);
+                return null;
+            });
+        }
+    }
+
+    private void removeLocal(Collection<UUID> ids) {
+        for (UUID id : ids) {
+            Order order = em.find(Order.class, id);
+            if (order != null) {
+                em.remove(order);
+                publishChange(Order.class, id);
+            }
+        }
     }
 
     /**
      * Złożenie zamówienia w sklepie.
      * <p>
-     * Zamówienie jest akceptowane, jeśli wszystkie objęte nim produkty są dostępne (przynajmniej 1 sztuka). W wyniku
-     * złożenia zamówienia liczba dostępnych sztuk produktów jest zmniejszana o jeden. Metoda działa w sposób
+     * Produkty z list books, films i cds są najpierw zamieniane na pozycje zamówienia z jedną sztuką. Zamówienie jest
+     * akceptowane, jeśli każda pozycja dotyczy innego produktu, a produkt jest dostępny w zamówionej liczbie sztuk (nie
+     * licząc sztuk zatrzymanych przez rezerwacje innych klientów). W wyniku złożenia zamówienia liczba dostępnych sztuk
+     * produktu jest zmniejszana o liczbę sztuk pozycji - jednym warunkowym poleceniem UPDATE na pozycję (amount =
+     * amount - quantity), więc współbieżne zamówienia nie nadpisują nawzajem stanu produktu. Metoda działa w sposób
      * transakcyjny - zamówienie jest albo akceptowane w całości albo odrzucane w całości. W razie braku produktu
-     * wyrzucany jest wyjątek OutOfStockException.
+     * wyrzucany jest wyjątek OutOfStockException, a dla pozycji bez rodzaju lub identyfikatora produktu -
+     * InvalidOrderLineException. Sztuki produktów w trybie "hot" są pobierane z liczników cząstkowych
+     * ({@link HotStock}).
      *
      * @param order zamówienie do przetworzenia
      */
     @Transactional
     public void placeOrder(Order order) {
+        order.foldProductLists();
+        checkLines(order);
+        if (shards == null) {
+            placeLocalOrder(order);
+        } else {
+            placeShardedOrder(order);
+        }
+        if (orderCache != null) {
+            //złożone zamówienie nie będzie już zmieniane - odczyty GET /orders/{id} nie muszą sięgać do bazy danych
+            orderCache.putAfterCommit(order);
+        }
+    }
 
-        int books = 0, films = 0, cds = 0; //the amount of particular type of product
-        List<Book> booksList = new ArrayList<>();
-        List<Film> filmsList = new ArrayList<>();
-        List<CD> cdsList = new ArrayList<>();
-
-        // we check if any book happen to be duplicate
-        // if so - we throw an exception
-        // in other case we check if it has more than one copy in the storage, then add the item to our list of already seen items
+    /**
+     * Sprawdzenie, czy każda pozycja zamówienia wskazuje produkt i obejmuje co najmniej jedną sztukę - przed zapisaniem
+     * zamówienia w dzienniku ({@link JournaledOrders}) i przed złożeniem zamówienia.
+     *
+     * @param order zamówienie z pozycjami (po {@link Order#foldProductLists()})
+     */
+    static void checkLines(Order order) {
+        for (OrderLine line : order.getLines()) {
+            if (line.getType() == null || line.getProductId() == null) {
+                throw new InvalidOrderLineException();
+            }
+            if (line.getQuantity() < 1) {
+                throw new InvalidQuantityException();
+            }
+        }
+    }
 
-        for (Book bookStub : order.getBooks()) {
-            Book book = em.find(Book.class, bookStub.getId());
-            boolean alreadyContainsThisBook = booksList.contains(book);
+    /**
+     * Złożenie zamówienia w bazie danych podzielonej na partycje.
+     * <p>
+     * Jeśli wszystkie produkty znajdują się w jednej partycji, zamówienie jest realizowane w jednej lokalnej
+     * transakcji tej partycji. W przeciwnym razie w każdej partycji zapisywana jest część zamówienia (z tym samym
+     * identyfikatorem) w osobnej transakcji, a w razie błędu w jednej z partycji zatwierdzone wcześniej części są
+     * wycofywane transakcjami kompensującymi.
+     */
+    private void placeShardedOrder(Order order) {
+        //reguła dotyczy całego zamówienia, a filmy i płyty mogą znajdować się w różnych partycjach
+        if (contains(order, ProductType.FILM) && contains(order, ProductType.CD)) {
+            throw new FilmsAndCdsException();
+        }
 
-            if (alreadyContainsThisBook) {
-                throw new DuplicateInRequestException();
-            } else {
-                if (book.getAmount() < 1) {
-                    throw new OutOfStockException();
-                } else {
-                    books++;
-                    booksList.add(book);
-                }
+        Map<Integer, Order> parts = splitByShard(order);
+        if (parts.size() == 1) {
+            int shard = parts.keySet().iterator().next();
+            shards.inShard(shard, false, () -> {
+                placeLocalOrder(order);
+                return null;
+            });
+            return;
+        }
 
+        Map<Integer, Order> placed = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Integer, Order> part : parts.entrySet()) {
+                shards.inShard(part.getKey(), false, () -> {
+                    placeLocalOrder(part.getValue());
+                    return null;
+                });
+                placed.put(part.getKey(), part.getValue());
             }
+            //odczytane zamówienie ma datę części z partycji o najmniejszym numerze (zob. mergeParts) - zamówienie
+            //zapisywane w pamięci podręcznej ma tę samą postać
+            order.dateFrom(parts.values().iterator().next());
+        } catch (RuntimeException e) {
+            placed.forEach((shard, part) -> shards.inShard(shard, false, () -> {
+                cancelLocalOrder(part);
+                return null;
+            }));
+            throw e;
         }
+    }
 
-        for (Film filmStub : order.getFilms()) {
-            Film film = em.find(Film.class, filmStub.getId());
-            boolean alreadyContainsThisFilm = filmsList.contains(film);
-
-                if (alreadyContainsThisFilm) {
-                    throw new DuplicateInRequestException();
-                } else {
-                    if (film.getAmount() < 1) {
-                        throw new OutOfStockException();
-                    } else {
-                        films++;
-                        filmsList.add(film);
-                    }
-                }
+    private Map<Integer, Order> splitByShard(Order order) {
+        Map<Integer, Order> parts = new TreeMap<>();
+        for (OrderLine line : order.getLines()) {
+            parts.computeIfAbsent(shards.shardOf(line.getProductId()), shard -> order.emptyPart())
+                    .getLines().add(line);
+        }
+        if (parts.isEmpty()) {
+            parts.put(shards.shardOf(order.getId()), order);
         }
+        return parts;
+    }
 
-        for (CD cdStub : order.getCds()) {
-            CD cd = em.find(CD.class, cdStub.getId());
-            boolean alreadyContainsThisCD = cdsList.contains(cd);
+    /**
+     * Wycofanie zatwierdzonej części zamówienia - przywrócenie stanu magazynu i usunięcie zamówienia.
+     */
+    private void cancelLocalOrder(Order part) {
+        for (OrderLine line : part.getLines()) {
+            em.createQuery(String.format(RETURN, entityName(line.getType())))
+                    .setParameter("quantity", line.getQuantity())
+                    .setParameter("id", line.getProductId())
+                    .executeUpdate();
+        }
+        em.remove(em.find(Order.class, part.getId()));
+        publishChanges(part);
+    }
 
-            if (alreadyContainsThisCD) {
-                throw new DuplicateInRequestException();
-            } else {
-                if (cd.getAmount() < 1) {
-                    throw new OutOfStockException();
-                } else {
-                    cds++;
-                    cdsList.add(cd);
-                }
+    /**
+     * Połączenie części zamówień odczytanych z różnych partycji w całe zamówienia.
+     */
+    private static List<Order> mergeParts(List<Order> parts) {
+        Map<UUID, Order> orders = new LinkedHashMap<>();
+        for (Order part : parts) {
+            Order order = orders.putIfAbsent(part.getId(), part);
+            if (order != null) {
+                order.getLines().addAll(part.getLines());
             }
         }
+        return new ArrayList<>(orders.values());
+    }
 
-        //System.out.println("ksiazki: " + books + "  filmy: " + films + "  płyty: " + cds);
+    //załadowanie pozycji zamówienia przed zamknięciem transakcji partycji (są pobierane leniwie)
+    private static Order initialize(Order order) {
+        order.getLines().size();
+        return order;
+    }
+
+    private void placeLocalOrder(Order order) {
 
+        // we check if any product happens to be duplicate (each product may appear in one line only)
+        // if so - we throw an exception
+        // in other case we take the copies of the line if the storage has enough of them
 
-        //błąd w zamówieniu - zamówiono razem filmy i płtyt CD
-        if (films >= 1 && cds >= 1) {
+        //błąd w zamówieniu - zamówiono razem filmy i płyty CD
+        if (contains(order, ProductType.FILM) && contains(order, ProductType.CD)) {
             throw new FilmsAndCdsException();
         }
 
+        Set<UUID> seen = new HashSet<>();
+        for (OrderLine line : order.getLines()) {
+            if (!seen.add(line.getProductId())) {
+                throw new DuplicateInRequestException();
+            }
 
-        //if there was no thrown exception - everything seems to be fine - we confirm the order
-        for (Book b : order.getBooks()) {
-            Book b2 = em.find(Book.class, b.getId());
+            if (hotStock != null && hotStock.isHot(line.getProductId())) {
+                //produkt w trybie "hot" - sztuki są od razu pobierane z losowego slotu (bez blokowania wiersza
+                //produktu), a w razie błędu zmiana jest wycofywana razem z transakcją
+                Product product = em.find(line.getType().getEntityClass(), line.getProductId());
+                if (product == null || availableHot(product) < line.getQuantity()
+                        || !hotStock.take(product, line.getQuantity())) {
+                    throw new OutOfStockException();
+                }
+                continue;
+            }
 
-            int newAmount = b2.getAmount() - 1;
-            b2.setAmount(newAmount);
+            //stan jest sprawdzany i zmniejszany przez bazę danych w jednym poleceniu (amount = amount - quantity) -
+            //żaden wiersz nie zostaje zmieniony, jeśli produkt nie istnieje lub nie ma dość sztuk; w razie błędu w
+            //kolejnej pozycji zmiany są wycofywane razem z transakcją
+            int updated = em.createQuery(String.format(TAKE, entityName(line.getType())))
+                    .setParameter("quantity", line.getQuantity())
+                    .setParameter("id", line.getProductId())
+                    .setParameter("required", line.getQuantity() + heldByOthers(line.getProductId()))
+                    .executeUpdate();
+            if (updated == 0) {
+                throw new OutOfStockException();
+            }
         }
 
-        for (Film f : order.getFilms()) {
-            Film f2 = em.find(Film.class, f.getId());
-            int newAmount = f2.getAmount() - 1;
-            f2.setAmount(newAmount);
-        }
+        //jeśli wcześniej nie został wyrzucony wyjątek OutOfStockException, zamówienie jest zapisywane w bazie danych
+        //(w bieżącej transakcji - przy podziale na partycje jest to partycja, w której znajdują się produkty)
+        persistOrMerge(order);
+        publishChanges(order);
+    }
+
+    private static boolean contains(Order order, ProductType type) {
+        return order.getLines().stream().anyMatch(line -> line.getType() == type);
+    }
 
-        for (CD c : order.getCds()) {
-            CD cd2 = em.find(CD.class, c.getId());
-            int newAmount = cd2.getAmount() - 1;
-            cd2.setAmount(newAmount);
+    //liczba sztuk produktu zatrzymanych przez rezerwacje innych klientów - niedostępnych dla zamówienia
+    private int heldByOthers(UUID productId) {
+        return stockHolds == null ? 0 : stockHolds.heldByOthers(productId);
+    }
+
+    //nazwa klasy encyjnej produktów danego rodzaju w zapytaniach JPQL
+    private static String entityName(ProductType type) {
+        return type.getEntityClass().getSimpleName();
+    }
+
+    //liczba sztuk produktu w trybie "hot", które może objąć zamówienie - sloty są sumowane tylko wtedy, gdy część sztuk
+    //jest zatrzymana przez rezerwacje (w przeciwnym razie wystarcza sprawdzenie wykonywane przy pobieraniu sztuk)
+    private int availableHot(Product product) {
+        int held = heldByOthers(product.getId());
+        if (held == 0) {
+            return Integer.MAX_VALUE;
         }
+        int amount = product.getAmount() == null ? 0 : product.getAmount();
+        return amount + hotStock.slotsAmount(product.getId()) - held;
+    }
 
-        //jeśli wcześniej nie został wyrzucony wyjątek OutOfStockException, zamówienie jest zapisywane w bazie danych
-        save(order);
+    //powiadomienie o zmianie stanu magazynu produktów objętych zamówieniem oraz o samym zamówieniu
+    private void publishChanges(Order order) {
+        order.getLines().forEach(line -> publishChange(line.getType().getEntityClass(), line.getProductId()));
+        publishChange(Order.class, order.getId());
     }
 }
-
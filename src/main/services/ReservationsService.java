@@ -0,0 +1,218 @@
+package net.stawrul.services;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.model.Order;
+import net.stawrul.model.Reservation;
+import net.stawrul.services.exceptions.DuplicateInRequestException;
+import net.stawrul.services.exceptions.FilmsAndCdsException;
+import net.stawrul.services.exceptions.OutOfStockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Komponent (serwis) biznesowy do realizacji operacji na rezerwacjach produktów.
+ * <p>
+ * Rezerwacja zatrzymuje po jednej sztuce każdego produktu na czas bookshop.reservations.ttl-seconds ({@link StockHolds}).
+ * Zatrzymane sztuki nie są dostępne dla innych rezerwacji ani zamówień. Rezerwację można zamienić w zamówienie,
+ * zwolnić, a po upływie czasu jest zwalniana automatycznie - wygaśnięcia są obsługiwane przez koło czasowe
+ * ({@link HierarchicalTimingWheel}), bez przeszukiwania rezerwacji i bez zapytań do bazy danych.
+ */
+@Service
+public class ReservationsService {
+
+    final BooksService booksService;
+    final FilmsService filmsService;
+    final CDsService cdsService;
+    final OrdersService ordersService;
+    final StockHolds stockHolds;
+    final long ttlMillis;
+
+    private final Map<UUID, Held> reservations = new ConcurrentHashMap<>();
+    private final HierarchicalTimingWheel<UUID> expirations;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reservation-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReservationsService(BooksService booksService, FilmsService filmsService, CDsService cdsService,
+                               OrdersService ordersService, StockHolds stockHolds,
+                               @Value("${bookshop.reservations.ttl-seconds:900}") long ttlSeconds,
+                               @Value("${bookshop.reservations.tick-millis:100}") long tickMillis) {
+        this.booksService = booksService;
+        this.filmsService = filmsService;
+        this.cdsService = cdsService;
+        this.ordersService = ordersService;
+        this.stockHolds = stockHolds;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+
+        //64 kubełki na 4 poziomach - przy takcie 100 ms zakres terminów to ok. 19 dni
+        this.expirations = new HierarchicalTimingWheel<>(tickMillis, 64, 4, System.currentTimeMillis());
+        ticker.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Zarezerwowanie produktów.
+     * <p>
+     * Rezerwacji obowiązują te same reguły co zamówienie: produkty nie mogą się powtarzać, nie można łączyć filmów z
+     * płytami CD, a każdy produkt musi być dostępny (z uwzględnieniem sztuk zatrzymanych przez inne rezerwacje). W
+     * razie braku produktu wyrzucany jest wyjątek OutOfStockException i żaden produkt nie zostaje zatrzymany.
+     *
+     * @param reservation rezerwacja do zrealizowania
+     * @return rezerwacja z ustawionym czasem wygaśnięcia
+     */
+    public Reservation reserve(Reservation reservation) {
+        if (!reservation.getFilms().isEmpty() && !reservation.getCds().isEmpty()) {
+            throw new FilmsAndCdsException();
+        }
+        List<UUID> productIds = productIds(reservation);
+        if (new HashSet<>(productIds).size() != productIds.size()) {
+            throw new DuplicateInRequestException();
+        }
+
+        List<UUID> held = new ArrayList<>();
+        try {
+            for (Book book : reservation.getBooks()) {
+                hold(book.getId(), booksService::find, Book::getAmount);
+                held.add(book.getId());
+            }
+            for (Film film : reservation.getFilms()) {
+                hold(film.getId(), filmsService::find, Film::getAmount);
+                held.add(film.getId());
+            }
+            for (CD cd : reservation.getCds()) {
+                hold(cd.getId(), cdsService::find, CD::getAmount);
+                held.add(cd.getId());
+            }
+        } catch (RuntimeException e) {
+            held.forEach(stockHolds::release);
+            throw e;
+        }
+
+        long expiration = System.currentTimeMillis() + ttlMillis;
+        reservation.expireAt(new Date(expiration));
+        HierarchicalTimingWheel.Timeout<UUID> timeout = expirations.schedule(reservation.getId(), expiration);
+        reservations.put(reservation.getId(), new Held(reservation, timeout));
+        return reservation;
+    }
+
+    /**
+     * @param id identyfikator rezerwacji
+     * @return rezerwacja lub null, jeśli nie istnieje (lub wygasła)
+     */
+    public Reservation find(UUID id) {
+        Held held = reservations.get(id);
+        return held == null ? null : held.reservation;
+    }
+
+    /**
+     * Zwolnienie rezerwacji.
+     *
+     * @param id identyfikator rezerwacji
+     * @return czy rezerwacja istniała
+     */
+    public boolean release(UUID id) {
+        Held held = reservations.remove(id);
+        if (held == null) {
+            return false;
+        }
+        held.timeout.cancel();
+        productIds(held.reservation).forEach(stockHolds::release);
+        return true;
+    }
+
+    /**
+     * Zamiana rezerwacji w zamówienie.
+     * <p>
+     * Zamówienie korzysta ze sztuk zatrzymanych przez rezerwację. Rezerwacja przestaje istnieć niezależnie od wyniku -
+     * jeśli zamówienie zostanie odrzucone, zatrzymane produkty są zwalniane.
+     *
+     * @param id identyfikator rezerwacji
+     * @return złożone zamówienie lub null, jeśli rezerwacja nie istnieje (lub wygasła)
+     */
+    public Order checkout(UUID id) {
+        Held held = reservations.remove(id);
+        if (held == null) {
+            return null;
+        }
+        held.timeout.cancel();
+
+        List<UUID> productIds = productIds(held.reservation);
+        Order order = held.reservation.toOrder();
+        try {
+            stockHolds.asOwner(productIds, () -> {
+                ordersService.placeOrder(order);
+                return null;
+            });
+        } finally {
+            productIds.forEach(stockHolds::release);
+        }
+        return order;
+    }
+
+    /**
+     * @return liczba aktywnych rezerwacji
+     */
+    public int getCount() {
+        return reservations.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void expire() {
+        for (UUID id : expirations.advance(System.currentTimeMillis())) {
+            Held held = reservations.remove(id);
+            if (held != null) {
+                productIds(held.reservation).forEach(stockHolds::release);
+            }
+        }
+    }
+
+    private <T> void hold(UUID id, Function<UUID, T> finder, Function<T, Integer> amount) {
+        T product = finder.apply(id);
+        if (product == null || !stockHolds.tryHold(id, amountOf(amount.apply(product)))) {
+            throw new OutOfStockException();
+        }
+    }
+
+    private static int amountOf(Integer amount) {
+        return amount == null ? 0 : amount;
+    }
+
+    private static List<UUID> productIds(Reservation reservation) {
+        List<UUID> ids = new ArrayList<>();
+        reservation.getBooks().forEach(book -> ids.add(book.getId()));
+        reservation.getFilms().forEach(film -> ids.add(film.getId()));
+        reservation.getCds().forEach(cd -> ids.add(cd.getId()));
+        return ids;
+    }
+
+    //rezerwacja wraz z uchwytem jej wygaśnięcia
+    private static class Held {
+        final Reservation reservation;
+        final HierarchicalTimingWheel.Timeout<UUID> timeout;
+
+        Held(Reservation reservation, HierarchicalTimingWheel.Timeout<UUID> timeout) {
+            this.reservation = reservation;
+            this.timeout = timeout;
+        }
+    }
+}
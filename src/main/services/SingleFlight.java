@@ -0,0 +1,60 @@
+package net.stawrul.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Łączenie współbieżnych wywołań dla tego samego klucza (ang. single-flight).
+ * <p>
+ * Jeśli w chwili wywołania execute dla danego klucza trwa już ładowanie wartości, wywołujący czeka na jego wynik
+ * zamiast ładować ją ponownie. Wynik nie jest zapamiętywany - kolejne wywołanie po zakończeniu ładowania rozpoczyna
+ * nowe ładowanie.
+ *
+ * @param <K> typ klucza
+ * @param <V> typ wartości
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * @param key klucz ładowanej wartości
+     * @param loader operacja ładująca wartość (wykonywana tylko przez pierwszego z współbieżnych wywołujących)
+     * @return załadowana wartość
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> inProgress = calls.putIfAbsent(key, call);
+        if (inProgress != null) {
+            return await(inProgress);
+        }
+
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> call) {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a concurrent call", e);
+        }
+    }
+}
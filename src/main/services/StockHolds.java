@@ -0,0 +1,83 @@
+package net.stawrul.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Liczba sztuk produktów zatrzymanych przez rezerwacje (przechowywana w pamięci).
+ * <p>
+ * Zatrzymane sztuki nie są dostępne dla zamówień - poza zamówieniem powstającym z rezerwacji, które korzysta z sztuk
+ * zatrzymanych przez tę rezerwację (zob. {@link #asOwner}).
+ */
+@Component
+public class StockHolds {
+
+    //identyfikator produktu -> liczba zatrzymanych sztuk (produkty bez rezerwacji nie występują w mapie)
+    private final Map<UUID, Integer> held = new ConcurrentHashMap<>();
+
+    //produkty zatrzymane przez rezerwację, z której bieżący wątek składa zamówienie
+    private final ThreadLocal<Set<UUID>> owned = ThreadLocal.withInitial(Collections::emptySet);
+
+    /**
+     * Zatrzymanie jednej sztuki produktu, jeśli jest dostępna.
+     *
+     * @param productId identyfikator produktu
+     * @param amount liczba sztuk produktu w magazynie
+     * @return czy sztuka produktu została zatrzymana
+     */
+    public boolean tryHold(UUID productId, int amount) {
+        boolean[] acquired = {false};
+        held.compute(productId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (amount - current < 1) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * Zwolnienie jednej zatrzymanej sztuki produktu.
+     *
+     * @param productId identyfikator produktu
+     */
+    public void release(UUID productId) {
+        held.computeIfPresent(productId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * @param productId identyfikator produktu
+     * @return liczba sztuk produktu zatrzymanych przez rezerwacje inne niż rezerwacja, z której bieżący wątek składa
+     * zamówienie
+     */
+    public int heldByOthers(UUID productId) {
+        int count = held.getOrDefault(productId, 0);
+        return owned.get().contains(productId) ? count - 1 : count;
+    }
+
+    /**
+     * Wykonanie operacji (złożenia zamówienia) z prawem do sztuk zatrzymanych dla podanych produktów.
+     *
+     * @param productIds produkty zatrzymane przez rezerwację
+     * @param work operacja
+     * @return wynik operacji
+     */
+    public <R> R asOwner(Collection<UUID> productIds, Supplier<R> work) {
+        owned.set(new HashSet<>(productIds));
+        try {
+            return work.get();
+        } finally {
+            owned.remove();
+        }
+    }
+}
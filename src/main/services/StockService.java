@@ -0,0 +1,209 @@
+package net.stawrul.services;
+
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.ProductType;
+import net.stawrul.model.StockAdjustment;
+import net.stawrul.services.events.EntityChangedEvent;
+import net.stawrul.services.exceptions.DuplicateInRequestException;
+import net.stawrul.services.exceptions.StockAdjustmentException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Komponent (serwis) biznesowy do zmian stanu magazynu wielu produktów jednocześnie (np. przy dostawie).
+ * <p>
+ * Zmiany są względne - wykonywane w bazie danych jako amount = amount + delta - więc nie nadpisują sprzedaży
+ * zatwierdzonych w międzyczasie. Są wysyłane wsadowo (JDBC batch), z pominięciem kontekstu trwałości JPA.
+ * <p>
+ * Stan produktu w trybie "hot" znajduje się w licznikach cząstkowych, a kolumna amount jest zwykle zerowa - dostawy
+ * zwiększają kolumnę amount, a sztuki zdejmowane ze stanu są pobierane tak jak przy zamówieniu ({@link HotStock}).
+ */
+@Service
+public class StockService implements ApplicationEventPublisherAware {
+
+    //tabele produktów poszczególnych rodzajów
+    private static final Map<ProductType, String> TABLES = new EnumMap<>(ProductType.class);
+
+    static {
+        TABLES.put(ProductType.BOOK, "book");
+        TABLES.put(ProductType.FILM, "film");
+        TABLES.put(ProductType.CD, "cd");
+    }
+
+    //zmiana stanu jest wykonywana tylko wtedy, gdy stan nie stanie się ujemny
+    private static final String ADJUST = "UPDATE %s SET amount = COALESCE(amount, 0) + ? "
+            + "WHERE id = ? AND COALESCE(amount, 0) + ? >= 0";
+
+    //wycofanie zmiany przy błędzie w innej partycji (bez warunku - stan sprzed zmiany był poprawny)
+    private static final String REVERT = "UPDATE %s SET amount = COALESCE(amount, 0) - ? WHERE id = ?";
+
+    final JdbcTemplate jdbcTemplate;
+    final int batchSize;
+
+    //Podział bazy danych na partycje - null, jeśli aplikacja korzysta z jednej bazy danych
+    Shards shards;
+
+    //Liczniki cząstkowe produktów w trybie "hot" - null poza kontekstem Springa (np. w testach jednostkowych)
+    HotStock hotStock;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    public StockService(JdbcTemplate jdbcTemplate, @Value("${bookshop.stock.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    //Instancja klasy Shards jest dostarczana przez framework Spring tylko wtedy, gdy włączono podział na partycje
+    @Autowired(required = false)
+    public void setShards(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Autowired(required = false)
+    public void setHotStock(HotStock hotStock) {
+        this.hotStock = hotStock;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Zmiana stanu magazynu produktów.
+     * <p>
+     * Metoda działa w sposób transakcyjny - wykonywane są wszystkie zmiany albo żadna. Jeśli któryś z produktów nie
+     * istnieje lub jego stan stałby się ujemny, wyrzucany jest wyjątek StockAdjustmentException. Przy podziale na
+     * partycje zmiany są wykonywane w transakcjach poszczególnych partycji, a w razie błędu zatwierdzone wcześniej
+     * zmiany są wycofywane transakcjami kompensującymi.
+     *
+     * @param adjustments zmiany stanu (każdy produkt może wystąpić tylko raz)
+     */
+    @Transactional
+    public void adjust(List<StockAdjustment> adjustments) {
+        Set<UUID> seen = new HashSet<>();
+        for (StockAdjustment adjustment : adjustments) {
+            if (!seen.add(adjustment.getProductId())) {
+                throw new DuplicateInRequestException();
+            }
+        }
+
+        if (shards == null) {
+            adjustLocal(adjustments);
+            return;
+        }
+
+        Map<Integer, Map<ProductType, List<StockAdjustment>>> applied = new LinkedHashMap<>();
+        try {
+            shards.groupByShard(adjustments, StockAdjustment::getProductId).forEach((shard, part) ->
+                    applied.put(shard, shards.inShard(shard, false, () -> adjustLocal(part))));
+        } catch (RuntimeException e) {
+            applied.forEach((shard, byType) -> shards.inShard(shard, false, () -> {
+                byType.forEach(this::revert);
+                return null;
+            }));
+            throw e;
+        }
+    }
+
+    /**
+     * Wykonanie zmian w bieżącej transakcji. Rodzaj produktu nie jest znany, więc zmiany są kolejno próbowane w
+     * tabelach książek, filmów i płyt - zmiany, które nie objęły żadnego wiersza, trafiają do następnej tabeli.
+     * Zmniejszenia stanu produktów w trybie "hot" są wykonywane przez {@link HotStock#take(UUID, int)}.
+     *
+     * @return wykonane zmiany według rodzaju produktu
+     */
+    private Map<ProductType, List<StockAdjustment>> adjustLocal(List<StockAdjustment> adjustments) {
+        Map<ProductType, List<StockAdjustment>> applied = new EnumMap<>(ProductType.class);
+        List<StockAdjustment> remaining = new ArrayList<>();
+        List<StockAdjustment> rejected = new ArrayList<>();
+        for (StockAdjustment adjustment : adjustments) {
+            if (hotStock == null || adjustment.getDelta() >= 0 || !hotStock.isHot(adjustment.getProductId())) {
+                remaining.add(adjustment);
+                continue;
+            }
+            //warunek amount + delta >= 0 odrzucałby zmianę, bo sztuki produktu znajdują się w slotach
+            ProductType type = hotStock.take(adjustment.getProductId(), -adjustment.getDelta());
+            if (type == null) {
+                rejected.add(adjustment);
+                continue;
+            }
+            applied.computeIfAbsent(type, key -> new ArrayList<>()).add(adjustment);
+            publishChange(type, adjustment.getProductId());
+        }
+
+        for (ProductType type : ProductType.values()) {
+            if (remaining.isEmpty()) {
+                break;
+            }
+
+            int[][] counts = jdbcTemplate.batchUpdate(String.format(ADJUST, TABLES.get(type)), remaining, batchSize,
+                    (statement, adjustment) -> {
+                        statement.setInt(1, adjustment.getDelta());
+                        statement.setBytes(2, bytes(adjustment.getProductId()));
+                        statement.setInt(3, adjustment.getDelta());
+                    });
+
+            List<StockAdjustment> notFound = new ArrayList<>();
+            List<StockAdjustment> done = new ArrayList<>();
+            int index = 0;
+            for (int[] batch : counts) {
+                for (int count : batch) {
+                    StockAdjustment adjustment = remaining.get(index++);
+                    (count > 0 ? done : notFound).add(adjustment);
+                }
+            }
+            done.forEach(adjustment -> publishChange(type, adjustment.getProductId()));
+            applied.computeIfAbsent(type, key -> new ArrayList<>()).addAll(done);
+            remaining = notFound;
+        }
+
+        rejected.addAll(remaining);
+        if (!rejected.isEmpty()) {
+            throw new StockAdjustmentException(
+                    rejected.stream().map(StockAdjustment::getProductId).collect(Collectors.toList()));
+        }
+        return applied;
+    }
+
+    private void revert(ProductType type, Collection<StockAdjustment> adjustments) {
+        jdbcTemplate.batchUpdate(String.format(REVERT, TABLES.get(type)), adjustments, batchSize,
+                (statement, adjustment) -> {
+                    statement.setInt(1, adjustment.getDelta());
+                    statement.setBytes(2, bytes(adjustment.getProductId()));
+                });
+        adjustments.forEach(adjustment -> publishChange(type, adjustment.getProductId()));
+    }
+
+    //powiadomienie o zmianie stanu magazynu (np. przebudowanie migawek katalogu po zatwierdzeniu transakcji)
+    private void publishChange(ProductType type, UUID id) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new EntityChangedEvent(type.getEntityClass(), id));
+        }
+    }
+
+    //identyfikator w postaci zapisywanej w bazie danych (16 bajtów)
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+}
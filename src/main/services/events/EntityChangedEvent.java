@@ -0,0 +1,38 @@
+package net.stawrul.services.events;
+
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * Zdarzenie informujące o zmianie obiektu encyjnego (zapisaniu produktu, zmianie stanu magazynu, złożeniu zamówienia).
+ * <p>
+ * Zdarzenie jest publikowane w ramach transakcji, w której nastąpiła zmiana - odbiorcy zainteresowani stanem
+ * zatwierdzonym powinni korzystać z adnotacji @TransactionalEventListener.
+ * <p>
+ * Zdarzenie zdalne ({@link #isRemote()}) informuje o zmianie zatwierdzonej przez inną instancję aplikacji
+ * ({@link net.stawrul.invalidation.InvalidationBus}) i jest publikowane poza transakcją. Brak identyfikatora oznacza, że
+ * mógł zmienić się dowolny obiekt danej klasy (np. po utracie komunikatów z innej instancji).
+ */
+@Getter
+public class EntityChangedEvent {
+
+    //klasa encyjna zmienionego obiektu
+    final Class<?> entityType;
+
+    //identyfikator zmienionego obiektu lub null - dowolny obiekt klasy entityType
+    final UUID id;
+
+    //czy zmiana nastąpiła w innej instancji aplikacji
+    final boolean remote;
+
+    public EntityChangedEvent(Class<?> entityType, UUID id) {
+        this(entityType, id, false);
+    }
+
+    public EntityChangedEvent(Class<?> entityType, UUID id, boolean remote) {
+        this.entityType = entityType;
+        this.id = id;
+        this.remote = remote;
+    }
+}
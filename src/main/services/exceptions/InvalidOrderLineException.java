@@ -0,0 +1,7 @@
+package net.stawrul.services.exceptions;
+
+/**
+ * Wyjątek sygnalizujący nieprawidłową pozycję zamówienia - bez rodzaju lub identyfikatora produktu.
+ */
+public class InvalidOrderLineException extends RuntimeException {
+}
@@ -0,0 +1,7 @@
+package net.stawrul.services.exceptions;
+
+/**
+ * Wyjątek sygnalizujący nieprawidłową liczbę sztuk w pozycji zamówienia (mniejszą niż 1).
+ */
+public class InvalidQuantityException extends RuntimeException {
+}
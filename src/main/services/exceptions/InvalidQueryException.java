@@ -0,0 +1,12 @@
+package net.stawrul.services.exceptions;
+
+/**
+ * Wyjątek sygnalizujący nieprawidłowe kryteria wyszukiwania produktów - filtr atrybutu, którego produkt nie ma,
+ * nieobsługiwany porządek sortowania lub nieprawidłowy numer albo rozmiar strony.
+ */
+public class InvalidQueryException extends RuntimeException {
+
+    public InvalidQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package net.stawrul.services.exceptions;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Wyjątek sygnalizujący, że zmiany stanu magazynu nie można wykonać - produkt nie istnieje lub jego stan stałby się
+ * ujemny. Powoduje wycofanie wszystkich zmian z żądania.
+ */
+public class StockAdjustmentException extends RuntimeException {
+
+    //identyfikatory produktów, których stanu nie można zmienić
+    @Getter
+    final List<UUID> productIds;
+
+    public StockAdjustmentException(List<UUID> productIds) {
+        super("Stock of " + productIds.size() + " products cannot be adjusted");
+        this.productIds = productIds;
+    }
+}
@@ -0,0 +1,221 @@
+package net.stawrul.storage;
+
+import net.stawrul.model.Order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Archiwum zamówień - magazyn danych "zimnych" w plikach segmentów, do których rekordy są tylko dopisywane.
+ * <p>
+ * Każdy rekord segmentu to długość zamówienia w postaci binarnej ({@link OrderCodec}, 4 bajty), suma kontrolna CRC32
+ * (4 bajty) i samo zamówienie. Po przekroczeniu rozmiaru segmentu zapis jest kontynuowany w kolejnym pliku.
+ * Położenie rekordów (numer segmentu i przesunięcie) jest przechowywane w indeksie w pamięci, odtwarzanym przy
+ * otwarciu archiwum przez przejrzenie segmentów. Niekompletny rekord na końcu ostatniego segmentu (przerwany zapis)
+ * jest odcinany. Odczyty korzystają z plików segmentów odwzorowanych w pamięci (ang. memory-mapped files).
+ * <p>
+ * Ponowne zarchiwizowanie zamówienia o tym samym identyfikatorze zastępuje w indeksie poprzedni rekord.
+ */
+public class OrderArchive implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 8;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+
+    //identyfikator zamówienia -> numer segmentu (starsze bity) i przesunięcie rekordu w segmencie (młodsze bity)
+    private final Map<UUID, Long> index = new ConcurrentHashMap<>();
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private int activeSegment;
+    private FileChannel active;
+
+    /**
+     * Otwarcie (lub utworzenie) archiwum w podanym katalogu.
+     *
+     * @param directory katalog plików segmentów
+     * @param maxSegmentBytes rozmiar, po którego przekroczeniu zapis jest kontynuowany w nowym segmencie
+     */
+    public OrderArchive(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+
+        List<Integer> segments = listSegments();
+        for (int segment : segments) {
+            long validBytes = scan(segment);
+            activeSegment = segment;
+            if (segment == segments.get(segments.size() - 1)) {
+                active = FileChannel.open(segmentPath(segment), READ, WRITE);
+                if (active.size() > validBytes) {
+                    active.truncate(validBytes);
+                    mappings.remove(segment);
+                }
+            }
+        }
+        if (active == null) {
+            activeSegment = 1;
+            active = FileChannel.open(segmentPath(activeSegment), CREATE, READ, WRITE);
+        }
+    }
+
+    /**
+     * Dopisanie zamówień do archiwum. Metoda kończy się po trwałym zapisaniu danych na dysku - dopiero wtedy
+     * zamówienia są dostępne przez {@link #find(UUID)}.
+     *
+     * @param orders zamówienia do zarchiwizowania
+     */
+    public synchronized void append(Collection<Order> orders) throws IOException {
+        Map<UUID, Long> appended = new HashMap<>();
+        for (Order order : orders) {
+            byte[] record = OrderCodec.encode(order);
+            if (active.size() > 0 && active.size() + HEADER_BYTES + record.length > maxSegmentBytes) {
+                roll();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + record.length);
+            buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+
+            long offset = active.size();
+            while (buffer.hasRemaining()) {
+                active.write(buffer, offset + buffer.position());
+            }
+            appended.put(order.getId(), location(activeSegment, offset));
+        }
+        active.force(false);
+        index.putAll(appended);
+    }
+
+    /**
+     * @param id identyfikator zamówienia
+     * @return zarchiwizowane zamówienie (z produktami zawierającymi tylko identyfikatory) lub null
+     */
+    public Order find(UUID id) {
+        Long location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+        int segment = (int) (location >>> OFFSET_BITS);
+        int offset = (int) (location & OFFSET_MASK);
+
+        ByteBuffer record = mapping(segment, offset + HEADER_BYTES).duplicate();
+        int length = record.getInt(offset);
+        record = mapping(segment, offset + HEADER_BYTES + length).duplicate();
+        record.position(offset + HEADER_BYTES).limit(offset + HEADER_BYTES + length);
+        return OrderCodec.decode(record.slice());
+    }
+
+    /**
+     * @return liczba zamówień w archiwum
+     */
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        active.close();
+        mappings.clear();
+    }
+
+    private void roll() throws IOException {
+        active.force(false);
+        active.close();
+        activeSegment++;
+        active = FileChannel.open(segmentPath(activeSegment), CREATE_NEW, READ, WRITE);
+    }
+
+    /**
+     * Odtworzenie indeksu rekordów segmentu.
+     *
+     * @return liczba bajtów segmentu zajętych przez kompletne rekordy
+     */
+    private long scan(int segment) throws IOException {
+        MappedByteBuffer buffer = map(segment);
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            if (length <= 0 || position + HEADER_BYTES + length > buffer.limit()) {
+                break;
+            }
+
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + HEADER_BYTES).limit(position + HEADER_BYTES + length);
+            record = record.slice();
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            index.put(OrderCodec.decodeId(record), location(segment, position));
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    //odwzorowanie segmentu obejmujące co najmniej requiredBytes bajtów (aktywny segment rośnie po zapisach)
+    private MappedByteBuffer mapping(int segment, long requiredBytes) {
+        MappedByteBuffer buffer = mappings.get(segment);
+        if (buffer == null || buffer.capacity() < requiredBytes) {
+            try {
+                buffer = map(segment);
+            } catch (IOException e) {
+                throw new IllegalStateException("Archive segment " + segment + " could not be mapped", e);
+            }
+        }
+        return buffer;
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mappings.put(segment, buffer);
+            return buffer;
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static long location(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+}
@@ -0,0 +1,115 @@
+package net.stawrul.storage;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Zwarty, binarny zapis zamówienia.
+ * <p>
+ * Układ rekordu (wersja 2): bajt wersji, identyfikator zamówienia (16 bajtów), data złożenia (8 bajtów, liczba
+ * milisekund lub -1), liczba pozycji (4 bajty), a następnie pozycje zamówienia - rodzaj produktu (1 bajt),
+ * identyfikator produktu (16 bajtów) i liczba sztuk (4 bajty). Zapisywane są tylko identyfikatory produktów - tytuły
+ * i stany magazynowe pozostają w katalogu.
+ * <p>
+ * Rekordy w wersji 1 (listy identyfikatorów książek, filmów i płyt - każda poprzedzona liczbą elementów) są
+ * odczytywane jako pozycje z jedną sztuką.
+ */
+public final class OrderCodec {
+
+    static final byte VERSION = 2;
+    static final byte VERSION_PRODUCT_LISTS = 1;
+
+    private static final ProductType[] TYPES = ProductType.values();
+
+    //przesunięcie identyfikatora zamówienia w rekordzie
+    static final int ID_OFFSET = 1;
+
+    private OrderCodec() {
+    }
+
+    /**
+     * @param order zamówienie
+     * @return zamówienie w postaci binarnej
+     */
+    public static byte[] encode(Order order) {
+        List<OrderLine> lines = order.getLines();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 16 + 8 + 4 + lines.size() * (1 + 16 + 4));
+        buffer.put(VERSION);
+        putUuid(buffer, order.getId());
+        buffer.putLong(order.getCreationDate() == null ? -1 : order.getCreationDate().getTime());
+        buffer.putInt(lines.size());
+        for (OrderLine line : lines) {
+            buffer.put((byte) line.getType().ordinal());
+            putUuid(buffer, line.getProductId());
+            buffer.putInt(line.getQuantity());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Odczytanie zamówienia zapisanego metodą {@link #encode(Order)}.
+     *
+     * @param buffer bufor ustawiony na początku rekordu
+     * @return zamówienie
+     */
+    public static Order decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_PRODUCT_LISTS) {
+            throw new IllegalArgumentException("Unsupported order record version: " + version);
+        }
+        UUID id = getUuid(buffer);
+        long creationDate = buffer.getLong();
+        Order order = Order.restore(id, creationDate < 0 ? null : new Date(creationDate));
+
+        if (version == VERSION_PRODUCT_LISTS) {
+            getIds(buffer, order.getBooks(), Book::new);
+            getIds(buffer, order.getFilms(), Film::new);
+            getIds(buffer, order.getCds(), CD::new);
+            order.foldProductLists();
+            return order;
+        }
+
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            ProductType type = TYPES[buffer.get()];
+            order.getLines().add(new OrderLine(type, getUuid(buffer), buffer.getInt()));
+        }
+        return order;
+    }
+
+    /**
+     * @param buffer bufor ustawiony na początku rekordu
+     * @return identyfikator zamówienia zapisanego w rekordzie (bez odczytywania pozostałych danych)
+     */
+    static UUID decodeId(ByteBuffer buffer) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(record.position() + ID_OFFSET);
+        return getUuid(record);
+    }
+
+    private static <T> void getIds(ByteBuffer buffer, List<T> products, Function<UUID, T> productFn) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            products.add(productFn.apply(getUuid(buffer)));
+        }
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,292 @@
+package net.stawrul.storage;
+
+import net.stawrul.model.Order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Dziennik zamówień (ang. write-ahead journal) - przyjęte zamówienia są trwale zapisywane w dzienniku, zanim zostaną
+ * zapisane w bazie danych.
+ * <p>
+ * Dziennik składa się z plików segmentów o stałym rozmiarze, odwzorowanych w pamięci. Rekord to długość (4 bajty),
+ * suma kontrolna CRC32 (4 bajty), typ rekordu (1 bajt) i dane: przyjęte zamówienie ({@link OrderCodec}) albo
+ * identyfikator zamówienia zapisanego w bazie danych lub odrzuconego. Zerowa długość oznacza koniec danych segmentu.
+ * <p>
+ * Zapisy przyjętych i odrzuconych zamówień kończą się po utrwaleniu danych na dysku. Utrwalanie odbywa się grupowo
+ * (ang. group commit): jeden wątek wykonuje force() za wszystkie rekordy dopisane do tej chwili, a pozostałe wątki
+ * czekają na jego wynik. Znacznik zapisania zamówienia w bazie danych nie jest utrwalany od razu - jego utrata
+ * powoduje jedynie ponowne sprawdzenie zamówienia przy odtwarzaniu dziennika.
+ * <p>
+ * Segment jest usuwany, gdy wszystkie zapisane w nim zamówienia (oraz zamówienia ze starszych segmentów) zostały
+ * zapisane w bazie danych albo odrzucone.
+ */
+public class OrderJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    private static final byte ACCEPTED = 1;
+    private static final byte APPLIED = 2;
+    private static final byte REJECTED = 3;
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    //zamówienia z dziennika nie zapisane jeszcze w bazie danych (w kolejności przyjęcia) i odrzucone
+    private final Map<UUID, Order> replayed = new LinkedHashMap<>();
+    private final Set<UUID> rejected = new HashSet<>();
+
+    //segment rekordu przyjęcia zamówień w toku oraz liczba takich zamówień w każdym segmencie (od najstarszego)
+    private final Map<UUID, Integer> pendingSegment = new HashMap<>();
+    private final TreeMap<Integer, Integer> pendingCount = new TreeMap<>();
+
+    private int activeSegment;
+    private MappedByteBuffer active;
+    private long appended;
+
+    //grupowe utrwalanie zapisów
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private long durable;
+    private boolean syncing;
+
+    /**
+     * Otwarcie (lub utworzenie) dziennika w podanym katalogu i odczytanie zapisanych w nim zamówień.
+     * Nowe rekordy są zapisywane w nowym segmencie.
+     *
+     * @param directory katalog plików segmentów
+     * @param segmentBytes rozmiar segmentu
+     */
+    public OrderJournal(Path directory, int segmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+
+        List<Integer> segments = listSegments();
+        for (int segment : segments) {
+            replay(segment);
+            activeSegment = segment;
+        }
+        openSegment(activeSegment + 1);
+        removeResolvedSegments();
+    }
+
+    /**
+     * @return zamówienia przyjęte przed otwarciem dziennika, które nie zostały jeszcze zapisane w bazie danych ani
+     * odrzucone (w kolejności przyjęcia)
+     */
+    public synchronized List<Order> getReplayedOrders() {
+        return new ArrayList<>(replayed.values());
+    }
+
+    /**
+     * @return identyfikatory zamówień odrzuconych przed otwarciem dziennika (z segmentów, które nie zostały usunięte)
+     */
+    public synchronized Set<UUID> getRejectedIds() {
+        return new HashSet<>(rejected);
+    }
+
+    /**
+     * Zapisanie przyjętego zamówienia. Metoda kończy się po utrwaleniu rekordu na dysku.
+     *
+     * @param order przyjęte zamówienie
+     */
+    public void accepted(Order order) throws IOException {
+        awaitDurable(append(ACCEPTED, OrderCodec.encode(order), order.getId()));
+    }
+
+    /**
+     * Oznaczenie zamówienia jako zapisanego w bazie danych (bez oczekiwania na utrwalenie znacznika).
+     *
+     * @param id identyfikator zamówienia
+     */
+    public void applied(UUID id) throws IOException {
+        append(APPLIED, idBytes(id), id);
+    }
+
+    /**
+     * Oznaczenie zamówienia jako odrzuconego. Metoda kończy się po utrwaleniu rekordu na dysku - odrzucone zamówienie
+     * nie może zostać ponownie zrealizowane przy odtwarzaniu dziennika.
+     *
+     * @param id identyfikator zamówienia
+     */
+    public void rejected(UUID id) throws IOException {
+        awaitDurable(append(REJECTED, idBytes(id), id));
+    }
+
+    @Override
+    public synchronized void close() {
+        active.force();
+    }
+
+    //dopisanie rekordu; zwraca numer kolejny zapisu, na którego utrwalenie można zaczekać
+    private synchronized long append(byte type, byte[] data, UUID id) throws IOException {
+        int length = 1 + data.length;
+        if (HEADER_BYTES + length > segmentBytes) {
+            throw new IllegalArgumentException("Journal record of " + length + " bytes exceeds segment size");
+        }
+        if (active.remaining() < HEADER_BYTES + length) {
+            active.force();
+            openSegment(activeSegment + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        active.putInt(length).putInt((int) crc.getValue()).put(type).put(data);
+
+        if (type == ACCEPTED) {
+            pendingSegment.put(id, activeSegment);
+            pendingCount.merge(activeSegment, 1, Integer::sum);
+        } else {
+            replayed.remove(id);
+            Integer segment = pendingSegment.remove(id);
+            if (segment != null) {
+                pendingCount.merge(segment, -1, Integer::sum);
+                removeResolvedSegments();
+            }
+        }
+        return ++appended;
+    }
+
+    private void awaitDurable(long sequence) {
+        syncLock.lock();
+        try {
+            while (durable < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+
+                //ten wątek utrwala wszystkie rekordy dopisane do tej chwili, również rekordy czekających wątków
+                syncing = true;
+                long target;
+                MappedByteBuffer buffer;
+                synchronized (this) {
+                    target = appended;
+                    buffer = active;
+                }
+                syncLock.unlock();
+                boolean forced = false;
+                try {
+                    buffer.force();
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (forced) {
+                        durable = Math.max(durable, target);
+                    }
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void openSegment(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), CREATE_NEW, READ, WRITE)) {
+            active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        activeSegment = segment;
+        pendingCount.putIfAbsent(segment, 0);
+    }
+
+    //usunięcie najstarszych segmentów, w których nie ma zamówień w toku
+    private void removeResolvedSegments() throws IOException {
+        while (!pendingCount.isEmpty()
+                && pendingCount.firstKey() != activeSegment && pendingCount.firstEntry().getValue() == 0) {
+            Files.deleteIfExists(segmentPath(pendingCount.pollFirstEntry().getKey()));
+        }
+    }
+
+    private void replay(int segment) throws IOException {
+        pendingCount.putIfAbsent(segment, 0);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            byte type = record.get();
+            if (type == ACCEPTED) {
+                Order order = OrderCodec.decode(record);
+                replayed.put(order.getId(), order);
+                pendingSegment.put(order.getId(), segment);
+                pendingCount.merge(segment, 1, Integer::sum);
+            } else {
+                UUID id = new UUID(record.getLong(), record.getLong());
+                replayed.remove(id);
+                if (type == REJECTED) {
+                    rejected.add(id);
+                }
+                Integer accepted = pendingSegment.remove(id);
+                if (accepted != null) {
+                    pendingCount.merge(accepted, -1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static byte[] idBytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+}
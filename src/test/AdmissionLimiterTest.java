@@ -0,0 +1,102 @@
+package net.stawrul;
+
+import net.stawrul.services.AdmissionLimiter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dostosowywanie limitu współbieżności zamówień do czasów obsługi (czas kontrolowany przez test).
+ */
+public class AdmissionLimiterTest {
+
+    static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    final AtomicLong clock = new AtomicLong();
+
+    //bez kolejki oczekujących - żądania ponad limit są odrzucane od razu
+    final AdmissionLimiter limiter = new AdmissionLimiter(20, 2, 200, 0, 0, 1, clock::get);
+
+    @Test
+    public void whenDatabaseSlowsDown_limitShrinksAndExcessRequestsAreRejected_thenLimitRecovers() {
+        //Arrange
+        rounds(20, FAST, 100);
+        double steadyLimit = limiter.getLimit();
+
+        //Act
+        int rejectedWhenSlow = rounds(20, SLOW, 100);
+        double slowLimit = limiter.getLimit();
+        rounds(20, FAST, 100);
+
+        //Assert
+        //przy 10-krotnie dłuższych czasach obsługi liczba jednocześnie realizowanych zamówień spada do kilku, a nadmiar
+        //jest odrzucany od razu (odpowiedź 503), zamiast wydłużać kolejkę w bazie danych
+        assertTrue("steady limit " + steadyLimit, steadyLimit >= 20);
+        assertTrue("slow limit " + slowLimit, slowLimit < 8);
+        assertTrue(rejectedWhenSlow > 20 * 80);
+        assertTrue("recovered limit " + limiter.getLimit(), limiter.getLimit() >= steadyLimit / 2);
+    }
+
+    @Test
+    public void fastFailures_doNotLowerLimit() {
+        //Arrange
+        rounds(20, FAST, 30);
+        double steadyLimit = limiter.getLimit();
+
+        //Act
+        //zamówienia odrzucane (np. brak produktów) kończą się po 0,1 ms, przeplatając się z realizowanymi
+        for (int i = 0; i < 1000; i++) {
+            AdmissionLimiter.Permit failed = limiter.tryAcquire();
+            clock.addAndGet(TimeUnit.MICROSECONDS.toNanos(100));
+            failed.release();
+        }
+        rounds(5, FAST, 30);
+
+        //Assert
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() >= steadyLimit);
+    }
+
+    @Test
+    public void zeroElapsedTime_doesNotDisableAdmission() {
+        //Arrange
+        AdmissionLimiter.Permit instant = limiter.tryAcquire();
+        instant.succeeded();
+
+        //Act
+        instant.release();
+        rounds(5, FAST, 30);
+
+        //Assert
+        assertFalse(Double.isNaN(limiter.getLimit()));
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    //kolejne rundy: przyjęcie jak największej liczby z offered zamówień, upływ czasu obsługi i zakończenie wszystkich
+    //przyjętych zamówień powodzeniem; zwraca liczbę odrzuconych zamówień
+    private int rounds(int count, long elapsedNanos, int offered) {
+        int rejected = 0;
+        for (int round = 0; round < count; round++) {
+            List<AdmissionLimiter.Permit> permits = new ArrayList<>();
+            for (int i = 0; i < offered; i++) {
+                AdmissionLimiter.Permit permit = limiter.tryAcquire();
+                if (permit == null) {
+                    rejected++;
+                } else {
+                    permits.add(permit);
+                }
+            }
+            clock.addAndGet(elapsedNanos);
+            for (AdmissionLimiter.Permit permit : permits) {
+                permit.succeeded();
+                permit.release();
+            }
+        }
+        return rejected;
+    }
+}
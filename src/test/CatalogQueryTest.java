@@ -0,0 +1,148 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Film;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.FilmsService;
+import net.stawrul.services.HotStock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Wyszukiwanie produktów według kryteriów (GET /books, /films i /CDs z parametrami).
+ */
+public class CatalogQueryTest {
+
+    static ConfigurableApplicationContext context;
+    static RestTemplate rest = new RestTemplate();
+    static String base;
+
+    @BeforeClass
+    public static void startApplication() {
+        //plany wykonania wszystkich zapytań pozwalają sprawdzić, czy zapytanie korzysta z indeksu
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.slow-queries.enabled=true",
+                        "bookshop.slow-queries.threshold-millis=0",
+                        "bookshop.slow-queries.capacity=1000",
+                        "bookshop.slow-queries.plans=true")
+                .run();
+        base = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void filmsOfDirector_areFilteredByDurationAndSortedByTitleUsingIndex() {
+        //Arrange
+        String director = "director-" + UUID.randomUUID();
+        newFilm(director, "C", 110);
+        newFilm(director, "A", 95);
+        newFilm(director, "B", 180);
+        newFilm("other-" + director, "A", 90);
+
+        //Act
+        List<?> films = rest.getForObject(base + "/films?director={director}&maxDurationTime=120&sort=title",
+                List.class, director);
+
+        //Assert
+        assertEquals(Arrays.asList("A", "C"), titles(films));
+        Map<?, ?> statement = findStatement("GET /films", "director");
+        assertTrue((String) statement.get("binds"), ((String) statement.get("binds")).contains("varchar"));
+        assertTrue((String) statement.get("plan"),
+                ((String) statement.get("plan")).toUpperCase().contains("FILM_DIRECTOR_TITLE_IDX"));
+    }
+
+    @Test
+    public void pagesOfBooksInStock_doNotOverlapAndIncludeHotProducts() {
+        //Arrange
+        BooksService booksService = context.getBean(BooksService.class);
+        for (String title : new String[]{"E", "A", "D", "B", "C"}) {
+            Book book = new Book();
+            book.setTitle(title);
+            book.setAmount(title.equals("B") ? 0 : 4);
+            booksService.save(book);
+            if (title.equals("D")) {
+                //stan produktu w trybie "hot" jest przechowywany w slotach - kolumna amount ma wartość 0
+                context.getBean(HotStock.class).enable(book.getId(), 2);
+            }
+        }
+
+        //Act
+        List<?> first = rest.getForObject(base + "/books?inStock=true&sort=title&page=0&size=2", List.class);
+        List<?> second = rest.getForObject(base + "/books?inStock=true&sort=title&page=1&size=2", List.class);
+        List<?> third = rest.getForObject(base + "/books?inStock=true&sort=title&page=2&size=2", List.class);
+
+        //Assert
+        assertEquals(Arrays.asList("A", "C"), titles(first));
+        assertEquals(Arrays.asList("D", "E"), titles(second));
+        assertEquals(4, ((Number) ((Map<?, ?>) second.get(0)).get("amount")).intValue());
+        assertTrue(third.isEmpty());
+    }
+
+    @Test
+    public void filterOnMissingAttributeOrUnsupportedSort_isRejected() {
+        //Arrange
+        String[] urls = {"/books?author=X", "/films?yearOfDistribution=1999", "/CDs?sort=amount", "/CDs?size=0"};
+
+        for (String url : urls) {
+            try {
+                //Act
+                rest.getForObject(base + url, List.class);
+                fail("Expected 400 Bad Request for " + url);
+            } catch (HttpClientErrorException e) {
+                //Assert
+                assertEquals(url, 400, e.getRawStatusCode());
+            }
+        }
+    }
+
+    private static void newFilm(String director, String title, int durationTime) {
+        Film film = new Film();
+        film.setDirector(director);
+        film.setTitle(title);
+        film.setDurationTime(durationTime);
+        film.setAmount(1);
+        context.getBean(FilmsService.class).save(film);
+    }
+
+    private static List<String> titles(List<?> products) {
+        List<String> titles = new ArrayList<>();
+        for (Object product : products) {
+            titles.add((String) ((Map<?, ?>) product).get("title"));
+        }
+        return titles;
+    }
+
+    //zapytanie wykonane przez podaną akcję, zawierające podany fragment
+    private static Map<?, ?> findStatement(String endpoint, String fragment) {
+        Map<?, ?> result = rest.getForObject(base + "/admin/slow-queries?limit=1000", Map.class);
+        for (Object statement : (List<?>) result.get("slowest")) {
+            Map<?, ?> map = (Map<?, ?>) statement;
+            if (endpoint.equals(map.get("endpoint")) && ((String) map.get("sql")).toLowerCase().contains(fragment)) {
+                return map;
+            }
+        }
+        fail("No statement containing " + fragment + " issued by " + endpoint);
+        return null;
+    }
+}
@@ -0,0 +1,223 @@
+package net.stawrul;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.stawrul.model.Book;
+import net.stawrul.model.Film;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.CDsService;
+import net.stawrul.services.CatalogSnapshots;
+import net.stawrul.services.FilmsService;
+import net.stawrul.services.events.EntityChangedEvent;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Migawki katalogu - przebudowywanie po zatwierdzeniu zmian i wysyłanie migawek z kompresją gzip lub bez niej.
+ */
+public class CatalogSnapshotsTest {
+
+    static ConfigurableApplicationContext context;
+    static CatalogSnapshots snapshots;
+    static RestTemplate rest = new RestTemplate();
+    static String base;
+
+    @BeforeClass
+    public static void startApplication() throws InterruptedException {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.catalog.snapshot.enabled=true")
+                .run();
+        snapshots = context.getBean(CatalogSnapshots.class);
+        base = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+        awaitTrue(() -> snapshots.get(Book.class) != null && snapshots.get(Film.class) != null);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void change_isIncludedInSnapshotOnlyAfterCommit() throws Exception {
+        //Arrange
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        TransactionTemplate separateTransaction = new TransactionTemplate(
+                context.getBean(PlatformTransactionManager.class));
+        separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Book book = newBook("Committed book");
+        Film film = new Film();
+        film.setTitle("Film committed meanwhile");
+        film.setAmount(1);
+
+        //Act
+        CatalogSnapshots.Snapshot beforeCommit = transaction.execute(status -> {
+            CatalogSnapshots.Snapshot snapshot = snapshots.get(Book.class);
+            context.getBean(BooksService.class).save(book);
+            //zmiana filmu zatwierdzona w osobnej transakcji - przebudowania są wykonywane po kolei, więc po
+            //przebudowaniu migawki filmów zakończyłoby się również wcześniej zlecone przebudowanie migawki książek
+            separateTransaction.execute(inner -> {
+                context.getBean(FilmsService.class).save(film);
+                return null;
+            });
+            awaitSilently(() -> json(snapshots.get(Film.class)).contains(film.getTitle()));
+            assertSame(snapshot, snapshots.get(Book.class));
+            return snapshot;
+        });
+
+        //Assert
+        awaitTrue(() -> json(snapshots.get(Book.class)).contains(book.getTitle()));
+        assertFalse(json(beforeCommit).contains(book.getTitle()));
+    }
+
+    @Test
+    public void rolledBackChange_doesNotRebuildSnapshot() throws Exception {
+        //Arrange
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        CatalogSnapshots.Snapshot snapshot = snapshots.get(Book.class);
+        Film film = new Film();
+        film.setTitle("Film after rollback");
+        film.setAmount(1);
+
+        //Act
+        transaction.execute(status -> {
+            context.getBean(BooksService.class).save(newBook("Rolled back book"));
+            status.setRollbackOnly();
+            return null;
+        });
+        context.getBean(FilmsService.class).save(film);
+
+        //Assert
+        awaitTrue(() -> json(snapshots.get(Film.class)).contains(film.getTitle()));
+        assertSame(snapshot, snapshots.get(Book.class));
+    }
+
+    @Test
+    public void changesDuringRebuild_areCoalescedIntoOneMoreRebuild() throws Exception {
+        //Arrange
+        BooksService booksService = mock(BooksService.class);
+        List<Book> first = Collections.singletonList(newBook("First"));
+        List<Book> last = Collections.singletonList(newBook("Last"));
+        CountDownLatch rebuilding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(booksService.findAll())
+                .thenAnswer(invocation -> {
+                    rebuilding.countDown();
+                    release.await();
+                    return first;
+                })
+                .thenReturn(last);
+        CatalogSnapshots catalogSnapshots = new CatalogSnapshots(true, new ObjectMapper(), booksService,
+                mock(FilmsService.class), mock(CDsService.class));
+        try {
+            catalogSnapshots.onEntityChanged(new EntityChangedEvent(Book.class, UUID.randomUUID()));
+            rebuilding.await();
+
+            //Act
+            for (int i = 0; i < 10; i++) {
+                catalogSnapshots.onEntityChanged(new EntityChangedEvent(Book.class, UUID.randomUUID()));
+            }
+            release.countDown();
+
+            //Assert
+            awaitTrue(() -> catalogSnapshots.get(Book.class) != null
+                    && json(catalogSnapshots.get(Book.class)).contains("Last"));
+            verify(booksService, times(2)).findAll();
+        } finally {
+            catalogSnapshots.shutdown();
+        }
+    }
+
+    @Test
+    public void gzipIsSentOnlyWhenAcceptedWithPositiveQuality() throws Exception {
+        //Arrange
+        String[] gzip = {"gzip", "gzip, deflate", "deflate, gzip;q=0.5", "GZIP;Q=1.0", "x-gzip", "*",
+                "identity;q=0.5, gzip"};
+        String[] identity = {null, "", "deflate", "gzip;q=0", "gzip; q=0.0, deflate", "gzip;q=0.2, identity",
+                "*;q=0", "gzip;q=invalid"};
+        String expectedJson = json(snapshots.get(Film.class));
+
+        for (String acceptEncoding : gzip) {
+            //Act
+            ResponseEntity<byte[]> response = getFilms(acceptEncoding);
+
+            //Assert
+            assertEquals(acceptEncoding, "gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(acceptEncoding, expectedJson, gunzip(response.getBody()));
+        }
+        for (String acceptEncoding : identity) {
+            //Act
+            ResponseEntity<byte[]> response = getFilms(acceptEncoding);
+
+            //Assert
+            assertNull(acceptEncoding, response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(acceptEncoding, expectedJson, new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static ResponseEntity<byte[]> getFilms(String acceptEncoding) {
+        HttpHeaders headers = new HttpHeaders();
+        if (acceptEncoding != null) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return rest.exchange(base + "/films", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    private static Book newBook(String title) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setAmount(1);
+        return book;
+    }
+
+    private static String json(CatalogSnapshots.Snapshot snapshot) {
+        return new String(snapshot.getJson(), StandardCharsets.UTF_8);
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        return StreamUtils.copyToString(new GZIPInputStream(new ByteArrayInputStream(body)), StandardCharsets.UTF_8);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met within 10 s", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void awaitSilently(BooleanSupplier condition) {
+        try {
+            awaitTrue(condition);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
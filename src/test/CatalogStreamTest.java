@@ -0,0 +1,151 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.TimeOrderedUuid;
+import net.stawrul.services.CatalogSnapshots;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Strumieniowe odczyty katalogu (GET /stream/books) przy liczbie czytelników znacznie większej niż liczba wątków
+ * serwera.
+ */
+public class CatalogStreamTest {
+
+    //ok. 5 MB danych - więcej, niż system operacyjny buforuje dla jednego połączenia
+    static final int BOOKS = 20_000;
+    static final int READERS = 10;
+
+    static ConfigurableApplicationContext context;
+    static int port;
+
+    @BeforeClass
+    public static void startApplication() throws InterruptedException {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.max-threads=2",
+                        "bookshop.catalog.snapshot.enabled=true")
+                .run();
+        port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+
+        String title = String.join("", Collections.nCopies(20, "Book title "));
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            UUID id = TimeOrderedUuid.next();
+            byte[] idBytes = ByteBuffer.allocate(16)
+                    .putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits())
+                    .array();
+            rows.add(new Object[]{idBytes, title + i, 1});
+        }
+        context.getBean(JdbcTemplate.class).batchUpdate("INSERT INTO book (id, title, amount) VALUES (?, ?, ?)", rows);
+        context.getBean(CatalogSnapshots.class).buildAll();
+
+        //oczekiwanie na przebudowanie migawki po ostatniej zmianie
+        CatalogSnapshots snapshots = context.getBean(CatalogSnapshots.class);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (snapshots.get(Book.class) == null || booksIn(snapshots.get(Book.class)) < BOOKS) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void whenManyReadersWaitBeforeReading_allOfThemReceiveTheWholeCatalog() throws Exception {
+        //Arrange
+        //żaden czytelnik nie odbiera danych, dopóki wszyscy nie otrzymają nagłówków odpowiedzi - przy blokującym
+        //zapisie dwa wątki serwera utknęłyby na dwóch pierwszych odpowiedziach
+        CountDownLatch allStarted = new CountDownLatch(READERS);
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+
+        //Act
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            results.add(readers.submit(() -> {
+                try (Socket socket = new Socket()) {
+                    //mały bufor odbiorczy - serwer nie może wysłać całej odpowiedzi, zanim klient zacznie ją odbierać
+                    socket.setReceiveBufferSize(4096);
+                    socket.connect(new InetSocketAddress("localhost", port));
+                    socket.getOutputStream().write(
+                            "GET /stream/books HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                                    .getBytes(StandardCharsets.US_ASCII));
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    assertEquals("HTTP/1.1 200", reader.readLine().substring(0, 12));
+                    allStarted.countDown();
+                    assertTrue(allStarted.await(30, TimeUnit.SECONDS));
+
+                    //pominięcie nagłówków, a następnie odczyt wierszy odpowiedzi
+                    String line = reader.readLine();
+                    while (!line.isEmpty()) {
+                        line = reader.readLine();
+                    }
+                    List<String> lines = new ArrayList<>();
+                    for (line = reader.readLine(); line != null; line = reader.readLine()) {
+                        lines.add(line);
+                    }
+                    return lines;
+                }
+            }));
+        }
+
+        //Assert
+        for (Future<List<String>> result : results) {
+            List<String> lines = result.get(60, TimeUnit.SECONDS);
+            assertEquals(BOOKS, lines.size());
+            assertTrue(lines.get(0).startsWith("{\"id\":"));
+        }
+        readers.shutdown();
+    }
+
+    @Test
+    public void unknownProductType_returnsNotFound() throws Exception {
+        //Act
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + port + "/stream/magazines").openConnection();
+
+        //Assert
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    private static int booksIn(CatalogSnapshots.Snapshot snapshot) {
+        int lines = 0;
+        for (byte b : snapshot.getNdjson()) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
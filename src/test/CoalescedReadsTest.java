@@ -0,0 +1,178 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.CoalescedReads;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * Łączenie współbieżnych odczytów przed rozpoczęciem transakcji - wywołania komponentów Springa (serwisy
+ * transakcyjne) na wbudowanej bazie danych Derby.
+ * <p>
+ * Źródło danych jest opakowane tak, że zlicza połączenia pobierane przez wątki testu i wstrzymuje je, dopóki wszystkie
+ * wątki nie zaczną czekać (na połączenie lub na wynik trwającego odczytu). Każda transakcja pobiera połączenie, więc
+ * liczba połączeń jest liczbą transakcji rozpoczętych przez wywołujących.
+ */
+public class CoalescedReadsTest {
+
+    static final int CALLERS = 20;
+    static final String GATED_DATA_SOURCE = "gated-data-source";
+
+    static ConfigurableApplicationContext context;
+    static GatedDataSource dataSource;
+    static CoalescedReads coalescedReads;
+    static BooksService booksService;
+
+    @BeforeClass
+    public static void startApplication() {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .profiles(GATED_DATA_SOURCE)
+                .properties("server.port=0")
+                .run();
+        dataSource = context.getBean(GatedDataSource.class);
+        coalescedReads = context.getBean(CoalescedReads.class);
+        booksService = context.getBean(BooksService.class);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void whenManyCallersFindSameBookConcurrently_oneTransactionQueriesDatabase() throws Exception {
+        //Arrange
+        Book book = new Book();
+        book.setTitle("Popular");
+        book.setAmount(1);
+        booksService.save(book);
+
+        //Act
+        List<Book> results = callConcurrently(() -> coalescedReads.find(booksService, book.getId()));
+
+        //Assert
+        //wszyscy wywołujący otrzymali tę samą (odłączoną) książkę, a połączenie pobrała tylko jedna transakcja
+        assertEquals(1, dataSource.connections.get());
+        assertEquals("Popular", results.get(0).getTitle());
+        results.forEach(result -> assertSame(results.get(0), result));
+    }
+
+    @Test
+    public void whenManyCallersListBooksConcurrently_oneTransactionQueriesDatabase() throws Exception {
+        //Act
+        List<List<Book>> results = callConcurrently(
+                () -> coalescedReads.read(Book.class, Book.FIND_ALL, booksService::findAll));
+
+        //Assert
+        assertEquals(1, dataSource.connections.get());
+        results.forEach(result -> assertSame(results.get(0), result));
+    }
+
+    //wywołanie operacji jednocześnie przez CALLERS wątków; połączenia są wydawane dopiero wtedy, gdy wszystkie wątki
+    //czekają - na połączenie albo na wynik odczytu rozpoczętego przez inny wątek
+    private static <T> List<T> callConcurrently(Callable<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        dataSource.close(CALLERS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> {
+                    dataSource.callers.add(Thread.currentThread());
+                    return call.call();
+                }));
+            }
+            dataSource.awaitAllCallersParked();
+            dataSource.open();
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            dataSource.callers.clear();
+            executor.shutdownNow();
+        }
+    }
+
+    //konfiguracja jest znajdowana również przez skanowanie pakietu net.stawrul - profil ogranicza ją do tego testu
+    @Configuration
+    @Profile(GATED_DATA_SOURCE)
+    static class GatedDataSourceConfiguration {
+
+        //zastępuje źródło danych konfigurowane automatycznie przez Spring Boot
+        @Bean
+        DataSource dataSource(DataSourceProperties properties) {
+            return new GatedDataSource(properties.initializeDataSourceBuilder().build());
+        }
+    }
+
+    /**
+     * Źródło danych zliczające i wstrzymujące połączenia pobierane przez wątki testu.
+     */
+    static class GatedDataSource extends DelegatingDataSource {
+        final Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        final AtomicInteger connections = new AtomicInteger();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile int expectedCallers;
+
+        GatedDataSource(DataSource target) {
+            super(target);
+        }
+
+        void close(int callers) {
+            connections.set(0);
+            expectedCallers = callers;
+            gate = new CountDownLatch(1);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        //oczekiwanie, aż wszystkie wątki testu zostaną wstrzymane (bez arbitralnych opóźnień)
+        void awaitAllCallersParked() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (callers.size() < expectedCallers
+                    || callers.stream().anyMatch(thread -> LockSupport.getBlocker(thread) == null)) {
+                assertTrue("Callers not parked within 10 s", System.currentTimeMillis() < deadline);
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (callers.contains(Thread.currentThread())) {
+                connections.incrementAndGet();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException(e);
+                }
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package net.stawrul;
+
+import net.stawrul.services.HierarchicalTimingWheel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Wygasanie elementów hierarchicznego koła czasowego (takt 10 ms, 8 kubełków, 3 poziomy).
+ */
+public class HierarchicalTimingWheelTest {
+
+    @Test
+    public void whenTimeAdvances_itemsExpireInTheirTicksOnAllLevels() {
+        //Arrange
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, 3, 0);
+        //terminy na poziomie 0 (< 80 ms), 1 (< 640 ms), 2 i poza zakresem koła (> 5120 ms)
+        long[] deadlines = {30, 75, 90, 500, 700, 4000, 9000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        //Act
+        List<Long> expiredTooEarly = new ArrayList<>();
+        List<Long> expired = new ArrayList<>();
+        for (long now = 0; now <= 10000; now += 10) {
+            for (Long deadline : wheel.advance(now)) {
+                (deadline > now ? expiredTooEarly : expired).add(deadline);
+                //element wygasa w takcie swojego terminu
+                assertTrue(now - deadline < 10);
+            }
+        }
+
+        //Assert
+        assertTrue(expiredTooEarly.isEmpty());
+        Collections.sort(expired);
+        assertEquals(deadlines.length, expired.size());
+        for (int i = 0; i < deadlines.length; i++) {
+            assertEquals(deadlines[i], (long) expired.get(i));
+        }
+    }
+
+    @Test
+    public void whenTimeoutCancelled_itemDoesNotExpire() {
+        //Arrange
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, 3, 0);
+        HierarchicalTimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 300);
+        wheel.schedule("kept", 300);
+
+        //Act
+        cancelled.cancel();
+        List<String> expired = wheel.advance(1000);
+
+        //Assert
+        assertEquals(Collections.singletonList("kept"), expired);
+    }
+}
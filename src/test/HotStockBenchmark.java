@@ -0,0 +1,93 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.HotStock;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Przepustowość składania zamówień jednej książki przez wielu jednoczesnych klientów - ze stanem w wierszu książki
+ * oraz w trybie "hot" ({@link HotStock}, stan rozdzielony między SLOTS liczników).
+ * <p>
+ * Zatwierdzenie transakcji jest sztucznie wydłużone (zob. {@link VirtualThreadsLoadBenchmark.CommitLatency}), a
+ * blokada zmienionego wiersza jest utrzymywana do zatwierdzenia. Bez trybu "hot" zamówienia czekają na siebie nawzajem
+ * (przepustowość około 1 / opóźnienie), w trybie "hot" do SLOTS zamówień jest realizowanych równolegle. Pomiar nie jest
+ * uruchamiany podczas zwykłego budowania (nazwa klasy nie kończy się na Test):
+ * mvn test -Dtest=HotStockBenchmark
+ */
+public class HotStockBenchmark {
+
+    static final int CLIENTS = 20;
+    static final int ORDERS_PER_CLIENT = 5;
+    static final int SLOTS = 16;
+
+    @Test
+    public void singleBookOrdersThroughput() throws Exception {
+        double row = run("row", 0);
+        double hot = run("hot", SLOTS);
+
+        System.out.printf("hot / row: %.2f%n", hot / row);
+    }
+
+    //złożenie CLIENTS * ORDERS_PER_CLIENT zamówień tej samej książki; zwraca liczbę zamówień na sekundę
+    private double run(String name, int slots) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                BookshopApplication.class, VirtualThreadsLoadBenchmark.CommitLatency.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:derby:memory:" + name + ";create=true",
+                        "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver",
+                        "spring.jpa.hibernate.ddl-auto=create-drop")
+                .run();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            OrdersService ordersService = context.getBean(OrdersService.class);
+            Book book = new Book();
+            book.setTitle("Bestseller");
+            book.setAmount(CLIENTS * ORDERS_PER_CLIENT);
+            context.getBean(BooksService.class).save(book);
+            if (slots > 0) {
+                context.getBean(HotStock.class).enable(book.getId(), slots);
+            }
+
+            long start = System.nanoTime();
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                results.add(clients.submit(() -> {
+                    for (int j = 0; j < ORDERS_PER_CLIENT; j++) {
+                        Order order = new Order();
+                        order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 1));
+                        ordersService.placeOrder(order);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(0, (int) context.getBean(BooksService.class).find(book.getId()).getAmount());
+            double perSecond = CLIENTS * ORDERS_PER_CLIENT / seconds;
+            System.out.printf("%-4s %d clients: %8.1f orders/s%n", name, CLIENTS, perSecond);
+            return perSecond;
+        } finally {
+            clients.shutdownNow();
+            context.close();
+        }
+    }
+}
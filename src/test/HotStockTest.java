@@ -0,0 +1,193 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.model.StockAdjustment;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.HotStock;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.StockService;
+import net.stawrul.services.exceptions.OutOfStockException;
+import net.stawrul.services.exceptions.StockAdjustmentException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Zamówienia produktów w trybie "hot" (stan rozdzielony między liczniki cząstkowe) we wbudowanej bazie danych Derby.
+ */
+public class HotStockTest {
+
+    static ConfigurableApplicationContext context;
+    static BooksService booksService;
+    static OrdersService ordersService;
+    static StockService stockService;
+    static HotStock hotStock;
+
+    @BeforeClass
+    public static void startApplication() {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0")
+                .run();
+        booksService = context.getBean(BooksService.class);
+        ordersService = context.getBean(OrdersService.class);
+        stockService = context.getBean(StockService.class);
+        hotStock = context.getBean(HotStock.class);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void whenNoSingleSlotHasEnoughCopies_orderTakesCopiesFromSeveralSlots() {
+        //Arrange
+        Book book = newBook(10);
+        hotStock.enable(book.getId(), 4);
+
+        //Act
+        placeOrder(book, 3);
+        placeOrder(book, 7);
+
+        //Assert
+        assertEquals(0, (int) booksService.find(book.getId()).getAmount());
+        try {
+            placeOrder(book, 1);
+            fail("OutOfStockException expected");
+        } catch (OutOfStockException e) {
+            assertEquals(0, (int) booksService.find(book.getId()).getAmount());
+        }
+    }
+
+    @Test
+    public void whenManyClientsOrderHotBook_everyCopyIsSoldExactlyOnce() throws Exception {
+        //Arrange
+        Book book = newBook(40);
+        hotStock.enable(book.getId(), 8);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+
+        //Act
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(clients.submit(() -> {
+                int placed = 0;
+                for (int j = 0; j < 6; j++) {
+                    try {
+                        placeOrder(book, 1);
+                        placed++;
+                    } catch (OutOfStockException e) {
+                        //wszystkie sztuki zostały już sprzedane
+                    }
+                }
+                return placed;
+            }));
+        }
+        int placed = 0;
+        for (Future<Integer> result : results) {
+            placed += result.get(60, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+
+        //Assert
+        assertEquals(40, placed);
+        assertEquals(0, (int) booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenHotModeIsDisabled_copiesFromSlotsAndDeliveriesAreMovedBackToBook() {
+        //Arrange
+        Book book = newBook(10);
+        hotStock.enable(book.getId(), 3);
+        stockService.adjust(Collections.singletonList(new StockAdjustment(book.getId(), 5)));
+        placeOrder(book, 4);
+
+        //Act
+        boolean disabled = hotStock.disable(book.getId());
+
+        //Assert
+        assertTrue(disabled);
+        assertFalse(hotStock.isHot(book.getId()));
+        assertEquals(11, (int) booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenStockOfHotBookIsReduced_copiesAreTakenFromSlots() {
+        //Arrange
+        Book book = newBook(10);
+        hotStock.enable(book.getId(), 4);
+
+        //Act
+        stockService.adjust(Collections.singletonList(new StockAdjustment(book.getId(), -7)));
+
+        //Assert
+        assertEquals(3, (int) booksService.find(book.getId()).getAmount());
+        try {
+            stockService.adjust(Collections.singletonList(new StockAdjustment(book.getId(), -4)));
+            fail("StockAdjustmentException expected");
+        } catch (StockAdjustmentException e) {
+            assertEquals(Collections.singletonList(book.getId()), e.getProductIds());
+            assertEquals(3, (int) booksService.find(book.getId()).getAmount());
+        }
+    }
+
+    @Test
+    public void whenHotModeIsEnabledOnTwoNodes_slotsAreCreatedOnce() {
+        //Arrange
+        //dwie instancje aplikacji korzystające z jednej bazy danych - druga nie wie o slotach utworzonych przez pierwszą
+        String url = "spring.datasource.url=jdbc:derby:memory:hotStockNodes;create=true";
+        ConfigurableApplicationContext first = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0", url, "spring.jpa.hibernate.ddl-auto=create")
+                .run();
+        ConfigurableApplicationContext second = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0", url, "spring.jpa.hibernate.ddl-auto=none")
+                .run();
+        try {
+            Book book = new Book();
+            book.setTitle("Hot on two nodes");
+            book.setAmount(10);
+            first.getBean(BooksService.class).save(book);
+
+            //Act
+            boolean enabledOnFirst = first.getBean(HotStock.class).enable(book.getId(), 4);
+            boolean enabledOnSecond = second.getBean(HotStock.class).enable(book.getId(), 2);
+
+            //Assert
+            assertTrue(enabledOnFirst);
+            assertTrue(enabledOnSecond);
+            assertTrue(second.getBean(HotStock.class).isHot(book.getId()));
+            assertEquals(10, (int) second.getBean(BooksService.class).find(book.getId()).getAmount());
+        } finally {
+            second.close();
+            first.close();
+        }
+    }
+
+    private static Book newBook(int amount) {
+        Book book = new Book();
+        book.setTitle("Bestseller");
+        book.setAmount(amount);
+        booksService.save(book);
+        return book;
+    }
+
+    private static void placeOrder(Book book, int quantity) {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), quantity));
+        ordersService.placeOrder(order);
+    }
+}
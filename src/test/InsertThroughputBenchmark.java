@@ -0,0 +1,121 @@
+package net.stawrul;
+
+import net.stawrul.model.TimeOrderedUuid;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Porównanie wydajności wstawiania zamówień z losowymi identyfikatorami (UUID w wersji 4) i identyfikatorami
+ * uporządkowanymi w czasie ({@link TimeOrderedUuid}) w bazie Derby zapisywanej na dysku.
+ * <p>
+ * Tabele odpowiadają tabelom orders i order_lines (16-bajtowe klucze, indeks pozycji według zamówienia). Wynik jest
+ * podawany osobno dla kolejnych partii, ponieważ różnica rośnie wraz z rozmiarem indeksów - losowe klucze przestają
+ * mieścić się w pamięci podręcznej stron bazy danych.
+ * <p>
+ * Pomiar nie jest uruchamiany podczas zwykłego budowania (nazwa klasy nie kończy się na Test):
+ * mvn test -Dtest=InsertThroughputBenchmark
+ */
+public class InsertThroughputBenchmark {
+
+    static final int ORDERS = 200_000;
+    static final int LINES_PER_ORDER = 3;
+    static final int TRANSACTION_SIZE = 1_000;
+    static final int REPORT_EVERY = 50_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void insertThroughput() throws Exception {
+        double random = run("random (v4)", UUID::randomUUID);
+        double timeOrdered = run("time-ordered (v7)", TimeOrderedUuid::next);
+
+        System.out.printf("time-ordered / random: %.2f%n", timeOrdered / random);
+        assertTrue(timeOrdered > 0 && random > 0);
+    }
+
+    //wstawienie ORDERS zamówień do nowej bazy danych; zwraca średnią liczbę zamówień na sekundę
+    private double run(String name, Supplier<UUID> ids) throws SQLException {
+        String url = "jdbc:derby:" + folder.getRoot().toPath().resolve(name.replaceAll("\\W", "")) + ";create=true";
+        try (Connection connection = DriverManager.getConnection(url)) {
+            createTables(connection);
+            connection.setAutoCommit(false);
+
+            PreparedStatement insertOrder = connection.prepareStatement(
+                    "INSERT INTO orders (id, creation_date) VALUES (?, ?)");
+            PreparedStatement insertLine = connection.prepareStatement(
+                    "INSERT INTO order_lines (order_id, product_id, product_type, quantity) VALUES (?, ?, 'BOOK', 1)");
+
+            long start = System.nanoTime();
+            long windowStart = start;
+            for (int i = 1; i <= ORDERS; i++) {
+                byte[] orderId = bytes(ids.get());
+                insertOrder.setBytes(1, orderId);
+                insertOrder.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                insertOrder.addBatch();
+                for (int line = 0; line < LINES_PER_ORDER; line++) {
+                    insertLine.setBytes(1, orderId);
+                    insertLine.setBytes(2, bytes(UUID.randomUUID()));
+                    insertLine.addBatch();
+                }
+
+                if (i % TRANSACTION_SIZE == 0) {
+                    insertOrder.executeBatch();
+                    insertLine.executeBatch();
+                    connection.commit();
+                }
+                if (i % REPORT_EVERY == 0) {
+                    long now = System.nanoTime();
+                    System.out.printf("%-18s orders %7d-%7d: %8.0f orders/s%n", name, i - REPORT_EVERY + 1, i,
+                            REPORT_EVERY / ((now - windowStart) / 1e9));
+                    windowStart = now;
+                }
+            }
+
+            double perSecond = ORDERS / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("%-18s total: %8.0f orders/s%n", name, perSecond);
+            return perSecond;
+        } finally {
+            shutdown(url);
+        }
+    }
+
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE orders (id VARCHAR(16) FOR BIT DATA NOT NULL PRIMARY KEY, "
+                    + "creation_date TIMESTAMP)");
+            statement.execute("CREATE TABLE order_lines (order_id VARCHAR(16) FOR BIT DATA NOT NULL, "
+                    + "product_id VARCHAR(16) FOR BIT DATA NOT NULL, product_type VARCHAR(4) NOT NULL, "
+                    + "quantity INTEGER NOT NULL)");
+            statement.execute("CREATE INDEX order_lines_order_idx ON order_lines (order_id)");
+        }
+    }
+
+    private static void shutdown(String url) {
+        try {
+            DriverManager.getConnection(url.replace(";create=true", ";shutdown=true"));
+        } catch (SQLException e) {
+            //Derby zgłasza zamknięcie bazy danych wyjątkiem
+        }
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+}
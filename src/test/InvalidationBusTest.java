@@ -0,0 +1,146 @@
+package net.stawrul;
+
+import net.stawrul.invalidation.InvalidationBus;
+import net.stawrul.invalidation.InvalidationMessage;
+import net.stawrul.invalidation.InvalidationTransport;
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.CatalogSnapshots;
+import net.stawrul.services.HotStock;
+import net.stawrul.services.events.EntityChangedEvent;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Przekazywanie zmian między instancjami aplikacji przez magistralę unieważnień.
+ */
+public class InvalidationBusTest {
+
+    @Test
+    public void changeCommittedByOneNode_isVisibleInSnapshotAndHotStockOfAnotherNode() throws Exception {
+        //Arrange
+        //obie instancje korzystają z tej samej bazy danych (wbudowana baza Derby w pamięci), schemat tworzy pierwsza
+        ConfigurableApplicationContext first = start("spring.jpa.hibernate.ddl-auto=create-drop");
+        ConfigurableApplicationContext second = start("spring.jpa.hibernate.ddl-auto=none");
+        try {
+            CatalogSnapshots snapshots = second.getBean(CatalogSnapshots.class);
+            awaitTrue(() -> snapshots.get(Book.class) != null);
+            Book book = new Book();
+            book.setTitle("Invalidated-" + book.getId());
+            book.setAmount(4);
+
+            //Act
+            first.getBean(BooksService.class).save(book);
+            first.getBean(HotStock.class).enable(book.getId(), 2);
+
+            //Assert
+            awaitTrue(() -> new String(snapshots.get(Book.class).getJson(), StandardCharsets.UTF_8)
+                    .contains(book.getTitle()));
+            awaitTrue(() -> second.getBean(HotStock.class).isHot(book.getId()));
+        } finally {
+            second.close();
+            first.close();
+        }
+    }
+
+    @Test
+    public void whenMessagesAreLost_allEntitiesAreInvalidatedAndLateMessageIsIgnored() {
+        //Arrange
+        ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        InvalidationBus bus = new InvalidationBus(mock(InvalidationTransport.class));
+        bus.setApplicationEventPublisher(eventPublisher);
+        long peer = 42;
+        UUID id = UUID.randomUUID();
+
+        //Act
+        bus.receive(new InvalidationMessage(peer, 1, Book.class, id).encode());
+        bus.receive(new InvalidationMessage(peer, 3, Book.class, UUID.randomUUID()).encode());
+        bus.receive(new InvalidationMessage(peer, 2, Book.class, UUID.randomUUID()).encode());
+        bus.receive(new byte[]{1, 2, 3});
+
+        //Assert
+        ArgumentCaptor<Object> events = ArgumentCaptor.forClass(Object.class);
+        verify(eventPublisher, times(1 + InvalidationMessage.TYPES.size())).publishEvent(events.capture());
+        List<Object> published = events.getAllValues();
+        EntityChangedEvent change = (EntityChangedEvent) published.get(0);
+        assertEquals(Book.class, change.getEntityType());
+        assertEquals(id, change.getId());
+        assertTrue(change.isRemote());
+        for (Object event : published.subList(1, published.size())) {
+            assertNull(((EntityChangedEvent) event).getId());
+        }
+    }
+
+    @Test
+    public void changesCommittedConcurrently_areSentInVersionOrder() throws Exception {
+        //Arrange
+        List<Long> sent = new ArrayList<>();
+        InvalidationTransport transport = mock(InvalidationTransport.class);
+        doAnswer(invocation -> {
+            long version = InvalidationMessage.decode((byte[]) invocation.getArguments()[0]).getVersion();
+            //wysłanie trwa chwilę - bez wspólnej blokady inne wątki zdążyłyby w tym czasie pobrać kolejne numery
+            Thread.yield();
+            synchronized (sent) {
+                sent.add(version);
+            }
+            return null;
+        }).when(transport).send(any(byte[].class));
+        InvalidationBus bus = new InvalidationBus(transport);
+        ExecutorService committers = Executors.newFixedThreadPool(8);
+
+        //Act
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(committers.submit(() -> {
+                for (int j = 0; j < 250; j++) {
+                    bus.onEntityChanged(new EntityChangedEvent(Book.class, UUID.randomUUID()));
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        committers.shutdown();
+
+        //Assert
+        assertEquals(2000, sent.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertEquals(i + 1, (long) sent.get(i));
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String ddl) {
+        return new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        ddl,
+                        "bookshop.catalog.snapshot.enabled=true",
+                        "bookshop.invalidation.transport=loopback",
+                        "bookshop.invalidation.channel=InvalidationBusTest")
+                .run();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met within 10 s", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package net.stawrul;
+
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.HotStock;
+import net.stawrul.services.JournaledOrders;
+import net.stawrul.services.OrdersService;
+import net.stawrul.storage.OrderJournal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.*;
+
+/**
+ * Zapisywanie zamówień z dziennika w bazie danych (serwis zamówień zastąpiony atrapą, a przy ponownym uruchomieniu
+ * aplikacji - wbudowana baza danych Derby).
+ */
+public class JournaledOrdersTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    OrdersService ordersService = mock(OrdersService.class);
+    OrderJournal journal;
+    JournaledOrders journaledOrders;
+
+    @Before
+    public void openJournal() throws Exception {
+        journal = new OrderJournal(folder.getRoot().toPath(), 1024 * 1024);
+    }
+
+    @After
+    public void closeJournal() throws Exception {
+        if (journaledOrders != null) {
+            journaledOrders.shutdown();
+        }
+        journal.close();
+    }
+
+    @Test
+    public void orderFailingRepeatedly_isParkedWithoutBlockingLaterOrders_andRetriedLater() throws Exception {
+        //Arrange
+        Order poison = newOrder();
+        Order later = newOrder();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            if (invocation.getArguments()[0] == poison && failing.get()) {
+                throw new NullPointerException();
+            }
+            return null;
+        }).when(ordersService).placeOrder(any(Order.class));
+        journaledOrders = new JournaledOrders(ordersService, journal, 1, 3, 500);
+        journaledOrders.start();
+
+        //Act
+        journaledOrders.accept(poison);
+        journaledOrders.accept(later);
+
+        //Assert
+        awaitTrue(() -> journaledOrders.findPending(later.getId()) == null);
+        verify(ordersService, times(3)).placeOrder(same(poison));
+        assertNotNull(journaledOrders.findPending(poison.getId()));
+        assertFalse(journaledOrders.isRejected(poison.getId()));
+
+        failing.set(false);
+        awaitTrue(() -> journaledOrders.findPending(poison.getId()) == null);
+        assertFalse(journaledOrders.isRejected(poison.getId()));
+    }
+
+    @Test
+    public void replayedOrderAlreadyInPrimaryDatabase_isNotPlacedAgain() throws Exception {
+        //Arrange
+        Order order = newOrder();
+        journal.accepted(order);
+        journal.close();
+        journal = new OrderJournal(folder.getRoot().toPath(), 1024 * 1024);
+        AtomicBoolean readFromPrimary = new AtomicBoolean();
+        when(ordersService.find(order.getId())).thenAnswer(invocation -> {
+            readFromPrimary.set(ReadYourWrites.isRequested());
+            return order;
+        });
+
+        //Act
+        journaledOrders = new JournaledOrders(ordersService, journal, 1, 3, 500);
+        journaledOrders.start();
+
+        //Assert
+        awaitTrue(() -> journaledOrders.getPendingCount() == 0);
+        assertTrue(readFromPrimary.get());
+        verify(ordersService, never()).placeOrder(any(Order.class));
+    }
+
+    @Test
+    public void replayedOrderOfHotProduct_isPlacedFromSlotsAfterRestart() throws Exception {
+        //Arrange
+        //baza danych w pamięci istnieje do końca działania maszyny wirtualnej - pierwsza instancja aplikacji tworzy
+        //schemat i włącza tryb "hot" (stan książki przeniesiony do slotów, kolumna amount równa 0)
+        String url = "spring.datasource.url=jdbc:derby:memory:journalReplayTest;create=true";
+        Book book = new Book();
+        book.setTitle("Hot before restart");
+        book.setAmount(5);
+        ConfigurableApplicationContext before = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0", url, "spring.jpa.hibernate.ddl-auto=create")
+                .run();
+        try {
+            before.getBean(BooksService.class).save(book);
+            before.getBean(HotStock.class).enable(book.getId(), 2);
+        } finally {
+            before.close();
+        }
+        //zamówienie przyjęte do dziennika, ale niezapisane w bazie danych przed awarią
+        Path directory = folder.newFolder("hot").toPath();
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 2));
+        OrderJournal crashed = new OrderJournal(directory, 1024 * 1024);
+        crashed.accepted(order);
+        crashed.close();
+
+        //Act
+        ConfigurableApplicationContext restarted = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        url,
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "bookshop.journal.enabled=true",
+                        "bookshop.journal.dir=" + directory)
+                .run();
+        try {
+            JournaledOrders replaying = restarted.getBean(JournaledOrders.class);
+            awaitTrue(() -> replaying.getPendingCount() == 0);
+
+            //Assert
+            assertFalse(replaying.isRejected(order.getId()));
+            assertNotNull(restarted.getBean(OrdersService.class).find(order.getId()));
+            assertEquals(3, (int) restarted.getBean(BooksService.class).find(book.getId()).getAmount());
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private static Order newOrder() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ProductType.BOOK, UUID.randomUUID(), 1));
+        return order;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met within 10 s", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.stawrul;
+
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.storage.OrderArchive;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Zapis i odczyt zamówień w archiwum (plikach segmentów w katalogu tymczasowym).
+ */
+public class OrderArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void whenOrderAppended_findReturnsItsLines() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        Order order = newOrder();
+
+        //Act
+        Order archived;
+        try (OrderArchive archive = new OrderArchive(directory, 1024 * 1024)) {
+            archive.append(Collections.singletonList(order));
+            archived = archive.find(order.getId());
+        }
+
+        //Assert
+        assertEquals(order.getId(), archived.getId());
+        assertEquals(order.getCreationDate(), archived.getCreationDate());
+        assertEquals(order.getLines(), archived.getLines());
+    }
+
+    @Test
+    public void whenArchiveReopened_indexIsRebuiltFromAllSegments() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        Order first = newOrder();
+        Order second = newOrder();
+        //segment mieści tylko jeden rekord - drugie zamówienie trafia do nowego segmentu
+        try (OrderArchive archive = new OrderArchive(directory, 64)) {
+            archive.append(Arrays.asList(first, second));
+        }
+
+        //Act
+        try (OrderArchive archive = new OrderArchive(directory, 64)) {
+            //Assert
+            assertEquals(2, directory.toFile().list().length);
+            assertEquals(2, archive.size());
+            assertEquals(first.getLines(), archive.find(first.getId()).getLines());
+            assertEquals(second.getLines(), archive.find(second.getId()).getLines());
+            assertNull(archive.find(UUID.randomUUID()));
+        }
+    }
+
+    @Test
+    public void whenLastRecordIncomplete_itIsDiscardedAndAppendingContinues() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        Order complete = newOrder();
+        Order broken = newOrder();
+        try (OrderArchive archive = new OrderArchive(directory, 1024 * 1024)) {
+            archive.append(Arrays.asList(complete, broken));
+        }
+        File segment = directory.toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        Order next = newOrder();
+
+        //Act
+        try (OrderArchive archive = new OrderArchive(directory, 1024 * 1024)) {
+            archive.append(Collections.singletonList(next));
+
+            //Assert
+            assertNotNull(archive.find(complete.getId()));
+            assertNull(archive.find(broken.getId()));
+            assertEquals(next.getLines(), archive.find(next.getId()).getLines());
+        }
+    }
+
+    private static Order newOrder() {
+        Order order = Order.restore(UUID.randomUUID(), new Date());
+        order.getLines().add(new OrderLine(ProductType.BOOK, UUID.randomUUID(), 1));
+        order.getLines().add(new OrderLine(ProductType.BOOK, UUID.randomUUID(), 50));
+        order.getLines().add(new OrderLine(ProductType.FILM, UUID.randomUUID(), 2));
+        return order;
+    }
+}
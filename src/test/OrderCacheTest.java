@@ -0,0 +1,164 @@
+package net.stawrul;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrderCache;
+import net.stawrul.services.OrdersService;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pamięć podręczna złożonych zamówień.
+ */
+public class OrderCacheTest {
+
+    @Test
+    public void whenCapacityIsExceeded_leastRecentlyReadOrderIsRemoved() {
+        //Arrange
+        OrderCache cache = new OrderCache(new ObjectMapper(), 2);
+        Order first = new Order();
+        Order second = new Order();
+        Order third = new Order();
+        cache.put(first);
+        cache.put(second);
+
+        //Act
+        cache.get(first.getId());
+        cache.put(third);
+
+        //Assert
+        assertNotNull(cache.get(first.getId()));
+        assertNull(cache.get(second.getId()));
+        assertNotNull(cache.get(third.getId()));
+    }
+
+    @Test
+    public void whenCacheIsSegmented_totalNumberOfOrdersStaysWithinCapacity() {
+        //Arrange
+        OrderCache cache = new OrderCache(new ObjectMapper(), 1000);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            orders.add(new Order());
+        }
+        Order frequentlyRead = new Order();
+        cache.put(frequentlyRead);
+
+        //Act
+        for (Order order : orders) {
+            cache.put(order);
+            cache.get(frequentlyRead.getId());
+        }
+
+        //Assert
+        long cached = orders.stream().filter(order -> cache.get(order.getId()) != null).count();
+        assertTrue(String.valueOf(cached), cached > 900 && cached < 1000);
+        assertNotNull(cache.get(frequentlyRead.getId()));
+        assertNotNull(cache.get(orders.get(orders.size() - 1).getId()));
+    }
+
+    @Test
+    public void placedOrder_isServedWithoutDatabase() throws Exception {
+        //Arrange
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0")
+                .run();
+        try {
+            int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            Book book = new Book();
+            book.setAmount(2);
+            context.getBean(BooksService.class).save(book);
+            Order order = new Order();
+            order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 2));
+            context.getBean(OrdersService.class).placeOrder(order);
+
+            //zamówienie jest usuwane z bazy danych z pominięciem serwisów - odpowiedź może pochodzić tylko z pamięci
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            jdbcTemplate.update("DELETE FROM order_lines");
+            jdbcTemplate.update("DELETE FROM orders");
+
+            //Act
+            HttpURLConnection json = open(port, order, "application/json");
+            HttpURLConnection cbor = open(port, order, "application/cbor");
+
+            //Assert
+            assertEquals(200, json.getResponseCode());
+            String body = read(json.getInputStream());
+            assertTrue(body, body.startsWith("{\"id\":\"" + order.getId() + "\""));
+            assertTrue(body, body.contains("\"quantity\":2"));
+            //format inny niż JSON nie jest przechowywany w pamięci - zamówienie jest wyszukiwane w bazie danych
+            assertEquals(404, cbor.getResponseCode());
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test
+    public void orderPlacedInSeveralShards_isCachedWithCreationDate() throws Exception {
+        //Arrange
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.sharding.urls=jdbc:derby:memory:cacheShard0;create=true,"
+                                + "jdbc:derby:memory:cacheShard1;create=true",
+                        "bookshop.sharding.create-schema=true")
+                .run();
+        try {
+            Shards shards = context.getBean(Shards.class);
+            Order order = new Order();
+            for (int shard = 0; shard < 2; shard++) {
+                Book book = new Book();
+                while (shards.shardOf(book.getId()) != shard) {
+                    book = new Book();
+                }
+                book.setAmount(1);
+                context.getBean(BooksService.class).save(book);
+                order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 1));
+            }
+
+            //Act
+            context.getBean(OrdersService.class).placeOrder(order);
+
+            //Assert
+            Order stored = context.getBean(OrdersService.class).find(order.getId());
+            String cached = new String(context.getBean(OrderCache.class).get(order.getId()), StandardCharsets.UTF_8);
+            assertNotNull(stored.getCreationDate());
+            assertTrue(cached, cached.contains("\"creationDate\":" + stored.getCreationDate().getTime()));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static HttpURLConnection open(int port, Order order, String accept) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + port + "/orders/" + order.getId()).openConnection();
+        connection.setRequestProperty("Accept", accept);
+        return connection;
+    }
+
+    private static String read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = input.read(buffer); read > 0; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
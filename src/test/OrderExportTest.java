@@ -0,0 +1,116 @@
+package net.stawrul;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.stawrul.model.Book;
+import net.stawrul.model.Film;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.FilmsService;
+import net.stawrul.services.OrdersService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Eksport pozycji zamówień (GET /orders/export).
+ */
+public class OrderExportTest {
+
+    static ConfigurableApplicationContext context;
+    static RestTemplate rest = new RestTemplate();
+    static String base;
+
+    static Order before;
+    static Order after;
+    static Instant since;
+
+    @BeforeClass
+    public static void startApplication() throws Exception {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties("server.port=0")
+                .run();
+        base = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+
+        Book book = new Book();
+        book.setAmount(10);
+        context.getBean(BooksService.class).save(book);
+        Film film = new Film();
+        film.setAmount(10);
+        context.getBean(FilmsService.class).save(film);
+
+        before = new Order();
+        before.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 1));
+        context.getBean(OrdersService.class).placeOrder(before);
+        Thread.sleep(20);
+        since = Instant.now();
+        Thread.sleep(20);
+        after = new Order();
+        after.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 2));
+        after.getLines().add(new OrderLine(ProductType.FILM, film.getId(), 3));
+        context.getBean(OrdersService.class).placeOrder(after);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void csvExport_containsOneRecordPerLineOfOrdersPlacedSinceTimestamp() {
+        //Act
+        ResponseEntity<String> response = rest.getForEntity(base + "/orders/export?format=csv&since={since}",
+                String.class, since.toString());
+
+        //Assert
+        assertTrue(response.getHeaders().getContentType().toString().startsWith("text/csv"));
+        List<String> records = Arrays.asList(response.getBody().split("\n"));
+        assertEquals(3, records.size());
+        assertEquals("orderId,creationDate,productType,productId,quantity", records.get(0));
+        assertTrue(records.get(1), records.get(1).startsWith(after.getId() + ","));
+        assertTrue(records.get(1) + records.get(2), (records.get(1) + records.get(2)).contains(",FILM,"));
+        assertFalse(response.getBody().contains(before.getId().toString()));
+    }
+
+    @Test
+    public void ndjsonExport_withoutTimestamp_containsAllOrdersInPlacementOrder() throws Exception {
+        //Act
+        String body = rest.getForObject(base + "/orders/export", String.class);
+
+        //Assert
+        String[] records = body.split("\n");
+        assertEquals(3, records.length);
+        Map<?, ?> first = new ObjectMapper().readValue(records[0], Map.class);
+        assertEquals(before.getId().toString(), first.get("orderId"));
+        assertEquals("BOOK", first.get("productType"));
+        assertEquals(1, first.get("quantity"));
+        assertTrue(Instant.parse((String) first.get("creationDate")).isBefore(since));
+    }
+
+    @Test
+    public void unknownFormat_isRejected() {
+        try {
+            //Act
+            rest.getForObject(base + "/orders/export?format=xml", String.class);
+            fail("Expected 400 Bad Request");
+        } catch (HttpClientErrorException e) {
+            //Assert
+            assertEquals(400, e.getRawStatusCode());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package net.stawrul;
+
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import net.stawrul.storage.OrderJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+/**
+ * Zapis i odtwarzanie dziennika zamówień (pliki segmentów w katalogu tymczasowym).
+ */
+public class OrderJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void whenJournalReopened_onlyUnresolvedOrdersAreReplayed() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        Order applied = newOrder();
+        Order rejected = newOrder();
+        Order pending = newOrder();
+        OrderJournal journal = new OrderJournal(directory, 1024 * 1024);
+        journal.accepted(applied);
+        journal.accepted(rejected);
+        journal.accepted(pending);
+        journal.applied(applied.getId());
+        journal.rejected(rejected.getId());
+        journal.close();
+
+        //Act
+        OrderJournal reopened = new OrderJournal(directory, 1024 * 1024);
+
+        //Assert
+        List<Order> replayed = reopened.getReplayedOrders();
+        assertEquals(1, replayed.size());
+        assertEquals(pending.getId(), replayed.get(0).getId());
+        assertEquals(pending.getLines(), replayed.get(0).getLines());
+        assertTrue(reopened.getRejectedIds().contains(rejected.getId()));
+    }
+
+    @Test
+    public void whenAllOrdersOfSegmentResolved_segmentIsRemoved() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        //segment mieści tylko jeden rekord przyjęcia zamówienia
+        OrderJournal journal = new OrderJournal(directory, 100);
+        Order first = newOrder();
+        Order second = newOrder();
+        journal.accepted(first);
+        journal.accepted(second);
+
+        //Act
+        journal.applied(first.getId());
+        journal.applied(second.getId());
+
+        //Assert
+        assertEquals(1, directory.toFile().list().length);
+        assertTrue(new OrderJournal(directory, 100).getReplayedOrders().isEmpty());
+    }
+
+    @Test
+    public void whenOrdersAcceptedConcurrently_allAreReplayed() throws Exception {
+        //Arrange
+        Path directory = folder.getRoot().toPath();
+        OrderJournal journal = new OrderJournal(directory, 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Order> orders = new ArrayList<>();
+        List<Future<?>> results = new ArrayList<>();
+
+        //Act
+        for (int i = 0; i < 200; i++) {
+            Order order = newOrder();
+            orders.add(order);
+            results.add(executor.submit(() -> {
+                journal.accepted(order);
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        //Assert
+        List<UUID> replayed = new OrderJournal(directory, 1024 * 1024).getReplayedOrders().stream()
+                .map(Order::getId).collect(toList());
+        assertEquals(orders.size(), replayed.size());
+        assertTrue(replayed.containsAll(orders.stream().map(Order::getId).collect(toList())));
+    }
+
+    private static Order newOrder() {
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ProductType.BOOK, UUID.randomUUID(), 3));
+        return order;
+    }
+}
@@ -4,7 +4,11 @@ import net.stawrul.model.Book;
 import net.stawrul.model.CD;
 import net.stawrul.model.Film;
 import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.Product;
+import net.stawrul.model.ProductType;
 import net.stawrul.services.OrdersService;
+import net.stawrul.services.StockHolds;
 import net.stawrul.services.exceptions.*;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +17,11 @@ import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.times;
@@ -31,7 +40,7 @@ public class OrdersServiceTest {
         book.setAmount(0);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
+        stock(book);
 
         //przekazanie mocka do testowanego obiektu
         OrdersService ordersService = new OrdersService(em);
@@ -50,7 +59,7 @@ public class OrdersServiceTest {
         film.setAmount(0);
         order.getFilms().add(film);
 
-        Mockito.when(em.find(Film.class, film.getId())).thenReturn(film);
+        stock(film);
 
         //przekazanie mocka do testowanego obiektu
         OrdersService ordersService = new OrdersService(em);
@@ -69,7 +78,7 @@ public class OrdersServiceTest {
         cd.setAmount(0);
         order.getCds().add(cd);
 
-        Mockito.when(em.find(CD.class, cd.getId())).thenReturn(cd);
+        stock(cd);
 
         //przekazanie mocka do testowanego obiektu
         OrdersService ordersService = new OrdersService(em);
@@ -88,7 +97,7 @@ public class OrdersServiceTest {
         book.setAmount(1);
         order.getBooks().add(book);
 
-        Mockito.when(em.find(Book.class, book.getId())).thenReturn(book);
+        stock(book);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -110,7 +119,7 @@ public class OrdersServiceTest {
         film.setAmount(5);
         order.getFilms().add(film);
 
-        Mockito.when(em.find(Film.class, film.getId())).thenReturn(film);
+        stock(film);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -130,7 +139,7 @@ public class OrdersServiceTest {
         cd.setAmount(10);
         order.getCds().add(cd);
 
-        Mockito.when(em.find(CD.class, cd.getId())).thenReturn(cd);
+        stock(cd);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -153,8 +162,7 @@ public class OrdersServiceTest {
         order.getFilms().add(film);
         order.getCds().add(cd);
 
-        Mockito.when(em.find(Film.class, film.getId())).thenReturn(film);
-        Mockito.when(em.find(CD.class, cd.getId())).thenReturn(cd);
+        stock(film, cd);
 
         //przekazanie mocka do testowanego obiektu
         OrdersService ordersService = new OrdersService(em);
@@ -174,7 +182,7 @@ public class OrdersServiceTest {
         order.getBooks().add(b1);
         order.getBooks().add(b1);
 
-        Mockito.when(em.find(Book.class, b1.getId())).thenReturn(b1);
+        stock(b1);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -192,7 +200,7 @@ public class OrdersServiceTest {
         order.getFilms().add(f);
         order.getFilms().add(f);
 
-        Mockito.when(em.find(Film.class, f.getId())).thenReturn(f);
+        stock(f);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -210,7 +218,7 @@ public class OrdersServiceTest {
         order.getCds().add(cd);
         order.getCds().add(cd);
 
-        Mockito.when(em.find(CD.class, cd.getId())).thenReturn(cd);
+        stock(cd);
 
         OrdersService ordersService = new OrdersService(em);
 
@@ -219,6 +227,118 @@ public class OrdersServiceTest {
         //Assert - exception expected
     }
 
+    @Test(expected = OutOfStockException.class)
+    public void whenLastBookHeldByReservation_placeOrderThrowsOutOfStockEx() {
+        //Arrange
+        Order order = new Order();
+        Book book = new Book();
+        book.setAmount(1);
+        order.getBooks().add(book);
+
+        stock(book);
+
+        StockHolds stockHolds = new StockHolds();
+        stockHolds.tryHold(book.getId(), book.getAmount());
+        OrdersService ordersService = new OrdersService(em);
+        ordersService.setStockHolds(stockHolds);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert - exception expected
+    }
+
+    @Test
+    public void whenBookHeldByOwnReservation_placeOrderDecreasesAmount() {
+        //Arrange
+        Order order = new Order();
+        Book book = new Book();
+        book.setAmount(1);
+        order.getBooks().add(book);
+
+        stock(book);
+
+        StockHolds stockHolds = new StockHolds();
+        stockHolds.tryHold(book.getId(), book.getAmount());
+        OrdersService ordersService = new OrdersService(em);
+        ordersService.setStockHolds(stockHolds);
+
+        //Act
+        stockHolds.asOwner(Collections.singletonList(book.getId()), () -> {
+            ordersService.placeOrder(order);
+            return null;
+        });
+
+        //Assert
+        assertEquals(0, (int) book.getAmount());
+    }
+
+    @Test
+    public void whenOrderLineQuantityAvailable_placeOrderDecreasesAmountByQuantity() {
+        //Arrange
+        Order order = new Order();
+        Book book = new Book();
+        book.setAmount(60);
+        order.getLines().add(new OrderLine(ProductType.BOOK, book.getId(), 50));
+
+        stock(book);
+
+        OrdersService ordersService = new OrdersService(em);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert
+        assertEquals(10, (int) book.getAmount());
+        Mockito.verify(em, times(1)).persist(order);
+    }
+
+    @Test(expected = OutOfStockException.class)
+    public void whenOrderLineQuantityExceedsAmount_placeOrderThrowsOutOfStockEx() {
+        //Arrange
+        Order order = new Order();
+        Film film = new Film();
+        film.setAmount(2);
+        order.getLines().add(new OrderLine(ProductType.FILM, film.getId(), 3));
+
+        stock(film);
+
+        OrdersService ordersService = new OrdersService(em);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert - exception expected
+    }
+
+    @Test(expected = InvalidOrderLineException.class)
+    public void whenOrderLineWithoutProductId_placeOrderThrowsInvalidOrderLineEx() {
+        //Arrange
+        Order order = new Order();
+        order.getLines().add(new OrderLine(ProductType.BOOK, null, 1));
+
+        OrdersService ordersService = new OrdersService(em);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert - exception expected
+    }
+
+    @Test(expected = InvalidOrderLineException.class)
+    public void whenOrderLineWithoutType_placeOrderThrowsInvalidOrderLineEx() {
+        //Arrange
+        Order order = new Order();
+        order.getLines().add(new OrderLine(null, UUID.randomUUID(), 1));
+
+        OrdersService ordersService = new OrdersService(em);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert - exception expected
+    }
+
     @Test
     public void whenGivenLowercaseString_toUpperReturnsUppercase() {
 
@@ -231,4 +351,28 @@ public class OrdersServiceTest {
         //Assert
         assertEquals("ABCDEF", result);
     }
+
+    //atrapa warunkowego zmniejszenia stanu produktów w bazie danych (UPDATE ... SET amount = amount - :quantity
+    //WHERE id = :id AND amount >= :required) - zmiana jest wykonywana na podanych obiektach
+    private void stock(Product... products) {
+        Map<UUID, Product> byId = new HashMap<>();
+        for (Product product : products) {
+            byId.put(product.getId(), product);
+        }
+        Map<String, Object> parameters = new HashMap<>();
+        Query query = Mockito.mock(Query.class);
+        Mockito.when(em.createQuery(Mockito.anyString())).thenReturn(query);
+        Mockito.when(query.setParameter(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            parameters.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+            return query;
+        });
+        Mockito.when(query.executeUpdate()).thenAnswer(invocation -> {
+            Product product = byId.get(parameters.get("id"));
+            if (product == null || product.getAmount() < (Integer) parameters.get("required")) {
+                return 0;
+            }
+            product.setAmount(product.getAmount() - (Integer) parameters.get("quantity"));
+            return 1;
+        });
+    }
 }
@@ -0,0 +1,138 @@
+package net.stawrul;
+
+import net.stawrul.config.ReadReplicaConfiguration;
+import net.stawrul.datasource.ReadYourWrites;
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rozdzielenie odczytów i zapisów między dwie wbudowane bazy danych Derby - główną i replikę.
+ * <p>
+ * Replika nie jest synchronizowana z główną bazą danych, dzięki czemu każdy odczyt pokazuje, z której bazy pochodzi:
+ * książka zapisana tylko w replice jest widoczna wyłącznie dla odczytów z repliki, a książka zapisana przez
+ * aplikację - wyłącznie dla odczytów z głównej bazy danych.
+ */
+public class ReadReplicaTest {
+
+    static final String PRIMARY_URL = "jdbc:derby:memory:replicaTestPrimary;create=true";
+    static final String REPLICA_URL = "jdbc:derby:memory:replicaTestReplica;create=true";
+
+    static ConfigurableApplicationContext context;
+    static BooksService booksService;
+    static RestTemplate rest = new RestTemplate();
+    static String base;
+
+    static Book replicaOnly;
+
+    @BeforeClass
+    public static void startApplication() {
+        //schemat repliki i książka zapisana tylko w replice - przez osobną instancję aplikacji korzystającą z repliki
+        //jako jedynej bazy danych (baza danych w pamięci istnieje do końca działania maszyny wirtualnej)
+        ConfigurableApplicationContext replica = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + REPLICA_URL,
+                        "spring.jpa.hibernate.ddl-auto=create")
+                .run();
+        try {
+            replicaOnly = new Book();
+            replicaOnly.setTitle("Replica only");
+            replicaOnly.setAmount(1);
+            replica.getBean(BooksService.class).save(replicaOnly);
+        } finally {
+            replica.close();
+        }
+
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + PRIMARY_URL,
+                        "bookshop.datasource.replica.url=" + REPLICA_URL,
+                        "spring.jpa.hibernate.ddl-auto=create-drop")
+                .run();
+        booksService = context.getBean(BooksService.class);
+        base = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void readOnlyFind_isServedByReplica() {
+        //Act
+        Book found = booksService.find(replicaOnly.getId());
+
+        //Assert
+        assertNotNull(found);
+        assertEquals("Replica only", found.getTitle());
+    }
+
+    @Test
+    public void save_writesToPrimary() {
+        //Arrange
+        Book book = newBook();
+
+        //Act
+        booksService.save(book);
+
+        //Assert
+        //odczyt z repliki nie widzi nowej książki, a odczyt z wymuszonym użyciem głównej bazy danych - widzi
+        assertNull(booksService.find(book.getId()));
+        ReadYourWrites.request();
+        try {
+            assertNotNull(booksService.find(book.getId()));
+            assertNull(booksService.find(replicaOnly.getId()));
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+
+    @Test
+    public void requestWithReadYourWritesHeader_readsFromPrimary() {
+        //Arrange
+        Book book = newBook();
+        booksService.save(book);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ReadReplicaConfiguration.READ_YOUR_WRITES_HEADER, "true");
+
+        //Act
+        ResponseEntity<Book> fromPrimary = rest.exchange(base + "/books/{id}", HttpMethod.GET,
+                new HttpEntity<>(headers), Book.class, book.getId());
+        HttpStatus fromReplica;
+        try {
+            fromReplica = rest.getForEntity(base + "/books/{id}", Book.class, book.getId()).getStatusCode();
+        } catch (HttpClientErrorException e) {
+            fromReplica = e.getStatusCode();
+        }
+
+        //Assert
+        assertEquals(HttpStatus.OK, fromPrimary.getStatusCode());
+        assertEquals(book.getId(), fromPrimary.getBody().getId());
+        assertEquals(HttpStatus.NOT_FOUND, fromReplica);
+    }
+
+    private static Book newBook() {
+        Book book = new Book();
+        book.setTitle("Primary only");
+        book.setAmount(1);
+        return book;
+    }
+}
@@ -0,0 +1,170 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.Reservation;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.ReservationsService;
+import net.stawrul.services.StockHolds;
+import net.stawrul.services.exceptions.OutOfStockException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rezerwacje produktów - zatrzymywanie sztuk, wygasanie rezerwacji i zamiana rezerwacji w zamówienie (wbudowana baza
+ * danych Derby, rezerwacje ważne 1 s).
+ */
+public class ReservationsServiceTest {
+
+    static ConfigurableApplicationContext context;
+    static ReservationsService reservationsService;
+    static BooksService booksService;
+    static OrdersService ordersService;
+    static StockHolds stockHolds;
+
+    @BeforeClass
+    public static void startApplication() {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.reservations.ttl-seconds=1",
+                        "bookshop.reservations.tick-millis=20")
+                .run();
+        reservationsService = context.getBean(ReservationsService.class);
+        booksService = context.getBean(BooksService.class);
+        ordersService = context.getBean(OrdersService.class);
+        stockHolds = context.getBean(StockHolds.class);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void heldBook_isUnavailableToOthers_untilReservationExpires() throws Exception {
+        //Arrange
+        Book book = newBook(1);
+        Reservation reservation = reservationsService.reserve(reservationOf(book));
+
+        //Act
+        boolean orderRejected = rejected(() -> ordersService.placeOrder(orderOf(book)));
+        boolean reservationRejected = rejected(() -> reservationsService.reserve(reservationOf(book)));
+        awaitTrue(() -> reservationsService.find(reservation.getId()) == null);
+        ordersService.placeOrder(orderOf(book));
+
+        //Assert
+        assertTrue(orderRejected);
+        assertTrue(reservationRejected);
+        assertEquals(0, stockHolds.heldByOthers(book.getId()));
+        assertEquals(0, (int) booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void checkout_placesOrderFromHeldStockAndReleasesHold() {
+        //Arrange
+        Book book = newBook(1);
+        Reservation reservation = reservationsService.reserve(reservationOf(book));
+
+        //Act
+        Order order = reservationsService.checkout(reservation.getId());
+
+        //Assert
+        assertNotNull(ordersService.find(order.getId()));
+        assertEquals(0, (int) booksService.find(book.getId()).getAmount());
+        assertEquals(0, stockHolds.heldByOthers(book.getId()));
+        assertNull(reservationsService.find(reservation.getId()));
+        assertNull(reservationsService.checkout(reservation.getId()));
+    }
+
+    @Test
+    public void checkoutOfExpiredReservation_placesNoOrder() throws Exception {
+        //Arrange
+        Book book = newBook(1);
+        Reservation reservation = reservationsService.reserve(reservationOf(book));
+        awaitTrue(() -> reservationsService.find(reservation.getId()) == null);
+
+        //Act
+        Order order = reservationsService.checkout(reservation.getId());
+
+        //Assert
+        assertNull(order);
+        assertEquals(1, (int) booksService.find(book.getId()).getAmount());
+    }
+
+    @Test
+    public void whenCheckoutRejected_heldStockIsReleased() {
+        //Arrange
+        Book book = newBook(1);
+        Reservation reservation = reservationsService.reserve(reservationOf(book));
+        //stan magazynu zmniejszony poza sklepem - zamówienie z rezerwacji nie może zostać zrealizowane
+        book.setAmount(0);
+        booksService.save(book);
+
+        //Act
+        boolean checkoutRejected = rejected(() -> reservationsService.checkout(reservation.getId()));
+
+        //Assert
+        assertTrue(checkoutRejected);
+        assertEquals(0, stockHolds.heldByOthers(book.getId()));
+        assertNull(reservationsService.find(reservation.getId()));
+    }
+
+    @Test
+    public void bookWithoutAmount_cannotBeReserved() {
+        //Arrange
+        Book book = newBook(null);
+
+        //Act
+        boolean reservationRejected = rejected(() -> reservationsService.reserve(reservationOf(book)));
+
+        //Assert
+        assertTrue(reservationRejected);
+        assertEquals(0, stockHolds.heldByOthers(book.getId()));
+    }
+
+    private static Book newBook(Integer amount) {
+        Book book = new Book();
+        book.setTitle("Reserved");
+        book.setAmount(amount);
+        booksService.save(book);
+        return book;
+    }
+
+    private static Reservation reservationOf(Book book) {
+        Reservation reservation = new Reservation();
+        reservation.getBooks().add(book);
+        return reservation;
+    }
+
+    private static Order orderOf(Book book) {
+        Order order = new Order();
+        order.getBooks().add(book);
+        return order;
+    }
+
+    private static boolean rejected(Runnable action) {
+        try {
+            action.run();
+            return false;
+        } catch (OutOfStockException e) {
+            return true;
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met within 10 s", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.stawrul;
+
+import net.stawrul.datasource.Shards;
+import net.stawrul.model.Book;
+import net.stawrul.model.Order;
+import net.stawrul.model.StockAdjustment;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.OrdersService;
+import net.stawrul.services.StockService;
+import net.stawrul.services.exceptions.OutOfStockException;
+import net.stawrul.services.exceptions.StockAdjustmentException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Składanie zamówień przy podziale magazynu na dwie wbudowane bazy danych Derby.
+ */
+public class ShardedOrdersTest {
+
+    static ConfigurableApplicationContext context;
+    static Shards shards;
+    static BooksService booksService;
+    static OrdersService ordersService;
+    static StockService stockService;
+
+    @BeforeClass
+    public static void startApplication() {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.sharding.urls=jdbc:derby:memory:shard0;create=true,jdbc:derby:memory:shard1;create=true",
+                        "bookshop.sharding.create-schema=true")
+                .run();
+        shards = context.getBean(Shards.class);
+        booksService = context.getBean(BooksService.class);
+        ordersService = context.getBean(OrdersService.class);
+        stockService = context.getBean(StockService.class);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void whenBooksInDifferentShards_placeOrderDecreasesAmountInBothShards() {
+        //Arrange
+        Book first = newBookInShard(0, 1);
+        Book second = newBookInShard(1, 1);
+        Order order = new Order();
+        order.getBooks().add(first);
+        order.getBooks().add(second);
+
+        //Act
+        ordersService.placeOrder(order);
+
+        //Assert
+        assertEquals(0, (int) booksService.find(first.getId()).getAmount());
+        assertEquals(0, (int) booksService.find(second.getId()).getAmount());
+        assertEquals(2, ordersService.find(order.getId()).getLines().size());
+    }
+
+    @Test
+    public void whenBookInSecondShardNotAvailable_placeOrderRestoresFirstShard() {
+        //Arrange
+        Book available = newBookInShard(0, 3);
+        Book missing = newBookInShard(1, 0);
+        Order order = new Order();
+        order.getBooks().add(available);
+        order.getBooks().add(missing);
+
+        //Act
+        try {
+            ordersService.placeOrder(order);
+            fail("OutOfStockException expected");
+        } catch (OutOfStockException e) {
+            //Assert
+            assertEquals(3, (int) booksService.find(available.getId()).getAmount());
+            assertNull(ordersService.find(order.getId()));
+        }
+    }
+
+    @Test
+    public void whenStockAdjustmentFailsInSecondShard_firstShardIsRestored() {
+        //Arrange
+        Book first = newBookInShard(0, 3);
+        Book second = newBookInShard(1, 1);
+
+        //Act
+        try {
+            stockService.adjust(Arrays.asList(
+                    new StockAdjustment(first.getId(), 10),
+                    new StockAdjustment(second.getId(), -2)));
+            fail("StockAdjustmentException expected");
+        } catch (StockAdjustmentException e) {
+            //Assert
+            assertEquals(Collections.singletonList(second.getId()), e.getProductIds());
+            assertEquals(3, (int) booksService.find(first.getId()).getAmount());
+            assertEquals(1, (int) booksService.find(second.getId()).getAmount());
+        }
+    }
+
+    private static Book newBookInShard(int shard, int amount) {
+        Book book = new Book();
+        while (shards.shardOf(book.getId()) != shard) {
+            book = new Book();
+        }
+        book.setTitle("Sharded book");
+        book.setAmount(amount);
+        booksService.save(book);
+        return book;
+    }
+}
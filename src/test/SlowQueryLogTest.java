@@ -0,0 +1,80 @@
+package net.stawrul;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rejestrowanie czasów zapytań SQL wykonywanych podczas obsługi żądań (GET /admin/slow-queries).
+ */
+public class SlowQueryLogTest {
+
+    static ConfigurableApplicationContext context;
+    static RestTemplate rest = new RestTemplate();
+    static String base;
+
+    @BeforeClass
+    public static void startApplication() {
+        //próg 0 ms - każde zapytanie jest "wolne"
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.slow-queries.enabled=true",
+                        "bookshop.slow-queries.threshold-millis=0",
+                        "bookshop.slow-queries.capacity=1000",
+                        "bookshop.slow-queries.plans=true")
+                .run();
+        base = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void statementsIssuedByRequests_areShownWithEndpointBindShapesAndPlans() {
+        //Arrange
+        UUID id = UUID.randomUUID();
+        rest.postForLocation(base + "/books", Collections.singletonMap("id", id));
+        rest.getForObject(base + "/books/" + id, String.class);
+
+        //Act
+        Map<?, ?> result = rest.getForObject(base + "/admin/slow-queries?limit=1000", Map.class);
+
+        //Assert
+        assertEquals(0, ((Number) result.get("thresholdMillis")).intValue());
+        Map<?, ?> insert = find((List<?>) result.get("slowest"), "insert into book", "POST /books");
+        assertTrue((String) insert.get("binds"), ((String) insert.get("binds")).contains("binary(16)"));
+        assertTrue(((String) insert.get("plan")).startsWith("Statement Name"));
+
+        find((List<?>) result.get("slowest"), "from book", "GET /books/{id}");
+        Map<?, ?> stats = find((List<?>) result.get("statements"), "insert into book", null);
+        assertEquals(1, ((Number) stats.get("count")).intValue());
+    }
+
+    //pierwsze zapytanie zawierające podany fragment, wykonane przez podaną akcję (null - dowolną)
+    private static Map<?, ?> find(List<?> statements, String fragment, String endpoint) {
+        for (Object statement : statements) {
+            Map<?, ?> map = (Map<?, ?>) statement;
+            if (((String) map.get("sql")).toLowerCase().contains(fragment)
+                    && (endpoint == null || endpoint.equals(map.get("endpoint")))) {
+                return map;
+            }
+        }
+        fail("No statement containing " + fragment + " issued by " + endpoint + " in " + statements);
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package net.stawrul;
+
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pomiar czasu uruchamiania aplikacji w profilu "fast".
+ * <p>
+ * Czas bezwzględny zależy od maszyny i od tego, czy maszyna wirtualna jest już rozgrzana (pierwsze uruchomienie trwa
+ * kilka razy dłużej), dlatego punktem odniesienia jest czas uruchomienia bez profilu "fast" mierzony w tym samym teście.
+ * Po rozgrzaniu oba warianty są uruchamiane na przemian, a porównywane są najkrótsze czasy. Test kończy się błędem (a
+ * więc przerywa budowanie), jeśli stosunek czasów przekroczy wartość właściwości startup.max.ratio z pliku pom.xml -
+ * np. gdy zmiana konfiguracji zniesie przyspieszenie profilu "fast".
+ */
+public class StartupTimeTest {
+
+    static final int ROUNDS = 3;
+
+    @Test
+    public void fastProfileStartsFasterThanDefault() {
+        //Arrange
+        double limit = Double.parseDouble(System.getProperty("startup.max.ratio", "0.9"));
+        startupMillis("default", "warmup");
+        startupMillis("fast", "warmup");
+
+        //Act
+        long baseline = Long.MAX_VALUE;
+        long fast = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            baseline = Math.min(baseline, startupMillis("default", "default" + round));
+            fast = Math.min(fast, startupMillis("fast", "fast" + round));
+        }
+
+        //Assert
+        double ratio = (double) fast / baseline;
+        System.out.printf("Czas uruchomienia: profil fast %d ms, bez profilu %d ms (%.2f)%n", fast, baseline, ratio);
+        assertTrue(String.format("Czas uruchomienia w profilu fast (%d ms) przekracza %.2f czasu bez profilu (%d ms)",
+                fast, limit, baseline), ratio <= limit);
+    }
+
+    private static long startupMillis(String profile, String database) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BookshopApplication.class)
+                .profiles(profile)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:derby:memory:startup-" + database + ";create=true",
+                        "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver");
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = builder.run();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        context.close();
+        return elapsed;
+    }
+}
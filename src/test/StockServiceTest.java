@@ -0,0 +1,104 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.model.Film;
+import net.stawrul.model.StockAdjustment;
+import net.stawrul.services.BooksService;
+import net.stawrul.services.FilmsService;
+import net.stawrul.services.StockService;
+import net.stawrul.services.exceptions.StockAdjustmentException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Wsadowe zmiany stanu magazynu we wbudowanej bazie danych Derby.
+ */
+public class StockServiceTest {
+
+    static ConfigurableApplicationContext context;
+    static BooksService booksService;
+    static FilmsService filmsService;
+    static StockService stockService;
+
+    @BeforeClass
+    public static void startApplication() {
+        context = new SpringApplicationBuilder(BookshopApplication.class)
+                .properties(
+                        "server.port=0",
+                        "bookshop.stock.batch-size=100")
+                .run();
+        booksService = context.getBean(BooksService.class);
+        filmsService = context.getBean(FilmsService.class);
+        stockService = context.getBean(StockService.class);
+    }
+
+    @AfterClass
+    public static void stopApplication() {
+        context.close();
+    }
+
+    @Test
+    public void whenDeliveryContainsBooksAndFilms_amountsAreIncreasedInSeveralBatches() {
+        //Arrange
+        List<Book> books = new ArrayList<>();
+        List<StockAdjustment> adjustments = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Book book = new Book();
+            book.setTitle("Delivered book " + i);
+            book.setAmount(i);
+            booksService.save(book);
+            books.add(book);
+            adjustments.add(new StockAdjustment(book.getId(), 10));
+        }
+        Film film = new Film();
+        film.setAmount(1);
+        filmsService.save(film);
+        adjustments.add(new StockAdjustment(film.getId(), -1));
+
+        //Act
+        stockService.adjust(adjustments);
+
+        //Assert
+        for (int i = 0; i < books.size(); i++) {
+            assertEquals(i + 10, (int) booksService.find(books.get(i).getId()).getAmount());
+        }
+        assertEquals(0, (int) filmsService.find(film.getId()).getAmount());
+    }
+
+    @Test
+    public void whenAmountWouldBecomeNegativeOrProductIsMissing_noAmountIsChanged() {
+        //Arrange
+        Book delivered = new Book();
+        delivered.setAmount(5);
+        booksService.save(delivered);
+        Book soldOut = new Book();
+        soldOut.setAmount(1);
+        booksService.save(soldOut);
+        UUID missing = UUID.randomUUID();
+
+        //Act
+        try {
+            stockService.adjust(Arrays.asList(
+                    new StockAdjustment(delivered.getId(), 100),
+                    new StockAdjustment(soldOut.getId(), -2),
+                    new StockAdjustment(missing, 1)));
+            fail("StockAdjustmentException expected");
+        } catch (StockAdjustmentException e) {
+            //Assert
+            assertEquals(new HashSet<>(Arrays.asList(soldOut.getId(), missing)), new HashSet<>(e.getProductIds()));
+            assertEquals(5, (int) booksService.find(delivered.getId()).getAmount());
+            assertEquals(1, (int) booksService.find(soldOut.getId()).getAmount());
+        }
+    }
+}
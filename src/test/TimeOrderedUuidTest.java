@@ -0,0 +1,64 @@
+package net.stawrul;
+
+import net.stawrul.model.TimeOrderedUuid;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Identyfikatory uporządkowane w czasie (UUID w wersji 7).
+ */
+public class TimeOrderedUuidTest {
+
+    @Test
+    public void whenManyIdsAreGenerated_theyAreStrictlyIncreasingAlsoAsBytes() {
+        //Arrange
+        UUID previous = TimeOrderedUuid.next();
+
+        for (int i = 0; i < 100_000; i++) {
+            //Act
+            UUID id = TimeOrderedUuid.next();
+
+            //Assert
+            assertTrue(id.compareTo(previous) > 0);
+            assertTrue(compareUnsigned(bytes(id), bytes(previous)) > 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void generatedId_hasVersion7AndCreationTime() {
+        //Arrange
+        long before = System.currentTimeMillis();
+
+        //Act
+        UUID id = TimeOrderedUuid.next();
+
+        //Assert
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long timestamp = id.getMostSignificantBits() >>> 16;
+        //generator może nieznacznie wyprzedzać zegar po wyczerpaniu licznika (np. w poprzednim teście)
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1000);
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int result = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,186 @@
+package net.stawrul;
+
+import net.stawrul.model.Book;
+import net.stawrul.services.BooksService;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Przepustowość składania zamówień (POST /orders) przy wielu jednoczesnych klientach - w puli wątków Tomcata
+ * ograniczonej do POOL_THREADS wątków oraz w wątkach wirtualnych (bookshop.virtual-threads.enabled=true).
+ * <p>
+ * Zatwierdzenie transakcji w bazie danych jest sztucznie wydłużone o COMMIT_LATENCY_MILLIS (jak przy zdalnej bazie
+ * danych), a każdy klient zamawia inną książkę, więc żądania nie czekają na siebie w bazie danych. W puli wątków
+ * przepustowość jest ograniczona do około POOL_THREADS / opóźnienie; w wątkach wirtualnych rośnie z liczbą klientów
+ * (aż do wykorzystania procesora), bez zmian w kodzie serwisów.
+ * <p>
+ * Wątki wirtualne wymagają JDK 21 - na starszym JDK oba przebiegi korzystają z puli wątków. Pomiar nie jest
+ * uruchamiany podczas zwykłego budowania (nazwa klasy nie kończy się na Test):
+ * mvn test -Pvirtual-threads -Dtest=VirtualThreadsLoadBenchmark -Djvm=$JDK21/bin/java
+ */
+public class VirtualThreadsLoadBenchmark {
+
+    static final int CLIENTS = 200;
+    static final int REQUESTS_PER_CLIENT = 5;
+    static final int POOL_THREADS = 20;
+    static final long COMMIT_LATENCY_MILLIS = 200;
+
+    @Test
+    public void ordersThroughput() throws Exception {
+        double pool = run("pool", false);
+        double virtual = run("virtual", true);
+
+        System.out.printf("virtual threads / thread pool: %.2f%n", virtual / pool);
+    }
+
+    //wykonanie CLIENTS * REQUESTS_PER_CLIENT żądań; zwraca liczbę zamówień na sekundę
+    private double run(String name, boolean virtualThreads) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                BookshopApplication.class, CommitLatency.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.max-threads=" + POOL_THREADS,
+                        "bookshop.virtual-threads.enabled=" + virtualThreads,
+                        "spring.datasource.url=jdbc:derby:memory:" + name + ";create=true",
+                        "spring.datasource.driver-class-name=org.apache.derby.jdbc.EmbeddedDriver",
+                        "spring.datasource.tomcat.max-active=" + (CLIENTS + POOL_THREADS),
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        //ograniczenie liczby zamówień w toku nie jest przedmiotem pomiaru
+                        "bookshop.orders.admission.initial-limit=" + CLIENTS,
+                        "bookshop.orders.admission.min-limit=" + CLIENTS,
+                        "bookshop.orders.admission.max-limit=" + CLIENTS)
+                .run();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            BooksService booksService = context.getBean(BooksService.class);
+            List<Future<String>> bookIds = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                Book book = new Book();
+                book.setTitle("Book " + i);
+                book.setAmount(REQUESTS_PER_CLIENT);
+                bookIds.add(clients.submit(() -> {
+                    booksService.save(book);
+                    return book.getId().toString();
+                }));
+            }
+
+            List<String> ids = new ArrayList<>();
+            for (Future<String> bookId : bookIds) {
+                ids.add(bookId.get());
+            }
+
+            long start = System.nanoTime();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (String id : ids) {
+                results.add(clients.submit(() -> placeOrders(port, id)));
+            }
+            int placed = 0;
+            for (Future<Integer> result : results) {
+                placed += result.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(CLIENTS * REQUESTS_PER_CLIENT, placed);
+            double perSecond = placed / seconds;
+            System.out.printf("%-8s %d clients: %8.0f orders/s (Java %s)%n",
+                    name, CLIENTS, perSecond, System.getProperty("java.version"));
+            return perSecond;
+        } finally {
+            clients.shutdownNow();
+            context.close();
+        }
+    }
+
+    //złożenie REQUESTS_PER_CLIENT zamówień na jedną sztukę książki; zwraca liczbę przyjętych zamówień
+    private static int placeOrders(int port, String bookId) throws Exception {
+        byte[] body = ("{\"lines\":[{\"type\":\"BOOK\",\"productId\":\"" + bookId + "\",\"quantity\":1}]}")
+                .getBytes(StandardCharsets.UTF_8);
+        int placed = 0;
+        for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/orders")
+                    .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body);
+            }
+            if (connection.getResponseCode() == 201) {
+                placed++;
+            }
+            connection.disconnect();
+        }
+        return placed;
+    }
+
+    /**
+     * Opóźnienie zatwierdzania transakcji w bazie danych.
+     * <p>
+     * Klasa nie ma adnotacji @Configuration, aby nie trafiała do skanowania komponentów pozostałych testów.
+     */
+    public static class CommitLatency {
+
+        @Bean
+        public static BeanPostProcessor commitLatencyPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource)) {
+                        return bean;
+                    }
+                    return proxy(DataSource.class, bean, (dataSource, method, args) -> {
+                        Object result = invoke(method, bean, args);
+                        return result instanceof Connection
+                                ? proxy(Connection.class, result, (connection, connectionMethod, connectionArgs) -> {
+                                    if (connectionMethod.getName().equals("commit")) {
+                                        Thread.sleep(COMMIT_LATENCY_MILLIS);
+                                    }
+                                    return invoke(connectionMethod, result, connectionArgs);
+                                })
+                                : result;
+                    });
+                }
+            };
+        }
+
+        private static Object proxy(Class<?> type, Object target, InvocationHandler handler) {
+            return Proxy.newProxyInstance(CommitLatency.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package net.stawrul;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.stawrul.model.Book;
+import net.stawrul.model.CD;
+import net.stawrul.model.Film;
+import net.stawrul.model.Order;
+import net.stawrul.model.OrderLine;
+import net.stawrul.model.ProductType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Porównanie formatów JSON, CBOR i Smile: rozmiar danych oraz czas serializacji i deserializacji dużego katalogu
+ * książek i dużego zamówienia.
+ * <p>
+ * Pomiar nie jest uruchamiany podczas zwykłego budowania (nazwa klasy nie kończy się na Test):
+ * mvn test -Dtest=WireFormatBenchmark
+ */
+public class WireFormatBenchmark {
+
+    static final int CATALOG_SIZE = 10_000;
+    static final int ORDER_SIZE = 1_000;
+    static final int WARMUP = 20;
+    static final int ITERATIONS = 50;
+
+    final Map<String, ObjectMapper> formats = new LinkedHashMap<>();
+
+    public WireFormatBenchmark() {
+        formats.put("JSON", new ObjectMapper());
+        formats.put("CBOR", new ObjectMapper(new CBORFactory()));
+        formats.put("Smile", new ObjectMapper(new SmileFactory()));
+    }
+
+    @Test
+    public void catalog() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            Book book = new Book();
+            book.setTitle("Book title number " + i);
+            book.setAmount(i % 50);
+            books.add(book);
+        }
+        measure("Katalog (" + CATALOG_SIZE + " książek)", books, Book[].class);
+    }
+
+    @Test
+    public void order() throws Exception {
+        Order order = new Order();
+        order.prePersist();
+        //listy books, films i cds są tylko wejściem żądania (nie są zapisywane w JSON) - zamówienie składa się z pozycji
+        for (int i = 0; i < ORDER_SIZE; i++) {
+            order.getLines().add(new OrderLine(ProductType.BOOK, new Book().getId(), 1 + i % 3));
+            order.getLines().add(new OrderLine(ProductType.FILM, new Film().getId(), 1));
+            order.getLines().add(new OrderLine(ProductType.CD, new CD().getId(), 2));
+        }
+        measure("Zamówienie (" + 3 * ORDER_SIZE + " pozycji)", order, Order.class);
+    }
+
+    private void measure(String name, Object value, Class<?> type) throws Exception {
+        System.out.println(name);
+        System.out.printf("%-6s %12s %16s %16s%n", "format", "bajty", "zapis [us]", "odczyt [us]");
+
+        long jsonBytes = 0;
+        for (Map.Entry<String, ObjectMapper> format : formats.entrySet()) {
+            ObjectMapper mapper = format.getValue();
+            JavaType javaType = mapper.constructType(type);
+            byte[] bytes = mapper.writeValueAsBytes(value);
+
+            for (int i = 0; i < WARMUP; i++) {
+                mapper.readValue(mapper.writeValueAsBytes(value), javaType);
+            }
+
+            long writeNanos = 0, readNanos = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                bytes = mapper.writeValueAsBytes(value);
+                writeNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                mapper.readValue(bytes, javaType);
+                readNanos += System.nanoTime() - start;
+            }
+
+            System.out.printf("%-6s %12d %16d %16d%n", format.getKey(), bytes.length,
+                    writeNanos / ITERATIONS / 1000, readNanos / ITERATIONS / 1000);
+            if (jsonBytes == 0) {
+                jsonBytes = bytes.length;
+            } else {
+                assertTrue(format.getKey() + " nie jest mniejszy niż JSON", bytes.length < jsonBytes);
+            }
+        }
+        System.out.println();
+    }
+}